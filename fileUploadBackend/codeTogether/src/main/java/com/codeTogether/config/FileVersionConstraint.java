@@ -0,0 +1,129 @@
+package com.codeTogether.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+// Databases created before uk_file_name_version can hold several rows with the same version of
+// a file: a file deleted and uploaded again started over at version 1, so its next update wrote
+// a second -1. ddl-auto=update can't add the constraint over them and only logs a warning.
+// At startup the rows of such files are renumbered in the order they were written, the
+// constraint is added if it is missing, and the application refuses to start without it.
+@Component
+public class FileVersionConstraint {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileVersionConstraint.class);
+    private static final String TABLE = "project_files";
+    private static final String CONSTRAINT = "uk_file_name_version";
+    private static final Set<String> COLUMNS = Set.of("file_name", "version");
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @PostConstruct
+    void check() throws SQLException {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.executeWithoutResult(status -> renumberDuplicates());
+        if (constraintPresent()) {
+            return;
+        }
+        LOGGER.warn("Unique constraint {} on {} is missing, adding it", CONSTRAINT, TABLE);
+        try {
+            transaction.executeWithoutResult(status -> entityManager.createNativeQuery("alter table " + TABLE
+                    + " add constraint " + CONSTRAINT + " unique (file_name, version)").executeUpdate());
+        } catch (RuntimeException e) {
+            throw new IllegalStateException("Could not add unique constraint " + CONSTRAINT + " on " + TABLE
+                    + " (file_name, version); add it manually before starting the application", e);
+        }
+        if (!constraintPresent()) {
+            throw new IllegalStateException("Unique constraint " + CONSTRAINT + " on " + TABLE + " (file_name, version) is missing");
+        }
+    }
+
+    // Numbers the rows of each file with a repeated version 1..n by id, which is the order they
+    // were written in. The newest active row stays active as version n, every other row becomes
+    // a previous version.
+    private void renumberDuplicates() {
+        List<String> fileNames = entityManager.createQuery("select f.fileName from FileData f where f.fileName is not null"
+                        + " group by f.fileName, f.version having count(f) > 1", String.class)
+                .getResultList().stream().distinct().toList();
+        for (String fileName : fileNames) {
+            List<Object[]> rows = entityManager.createQuery("select f.id, f.version from FileData f"
+                            + " where f.fileName = :fileName order by f.id", Object[].class)
+                    .setParameter("fileName", fileName)
+                    .getResultList();
+            Object[] active = null;
+            for (Object[] row : rows) {
+                if ((Integer) row[1] > 0) {
+                    active = row;
+                }
+            }
+            LOGGER.warn("{} had rows with the same version, renumbering its {} rows in the order they were written",
+                    fileName, rows.size());
+            int version = 0;
+            for (Object[] row : rows) {
+                if (row != active) {
+                    setVersion(fileName, row, -++version);
+                }
+            }
+            if (active != null) {
+                setVersion(fileName, active, version + 1);
+            }
+        }
+    }
+
+    // Versions are visible to users, so every change is logged
+    private void setVersion(String fileName, Object[] row, int version) {
+        if ((Integer) row[1] == version) {
+            return;
+        }
+        LOGGER.warn("Renumbered {} (id {}) from version {} to {}", fileName, row[0], row[1], version);
+        entityManager.createQuery("update FileData f set f.version = :version where f.id = :id")
+                .setParameter("version", version)
+                .setParameter("id", row[0])
+                .executeUpdate();
+    }
+
+    // Any unique index over exactly (file_name, version) counts, whatever the database named it
+    private boolean constraintPresent() throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            DatabaseMetaData metaData = connection.getMetaData();
+            String table = metaData.storesUpperCaseIdentifiers() ? TABLE.toUpperCase(Locale.ROOT) : TABLE;
+            Map<String, Set<String>> uniqueIndexes = new HashMap<>();
+            try (ResultSet indexes = metaData.getIndexInfo(connection.getCatalog(), connection.getSchema(), table, true, false)) {
+                while (indexes.next()) {
+                    String index = indexes.getString("INDEX_NAME");
+                    String column = indexes.getString("COLUMN_NAME");
+                    if (index != null && column != null) {
+                        uniqueIndexes.computeIfAbsent(index, name -> new HashSet<>()).add(column.toLowerCase(Locale.ROOT));
+                    }
+                }
+            }
+            return uniqueIndexes.containsValue(COLUMNS);
+        }
+    }
+}
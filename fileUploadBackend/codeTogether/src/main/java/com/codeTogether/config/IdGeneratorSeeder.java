@@ -0,0 +1,66 @@
+package com.codeTogether.config;
+
+import com.codeTogether.entity.IdGenerators;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import java.util.Map;
+
+// Tables created before ids moved to table generators already hold IDENTITY-assigned ids.
+// Before anything is inserted, each generator row is moved past the table's highest id so
+// the pooled blocks it hands out can't collide with existing rows.
+@Component
+public class IdGeneratorSeeder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IdGeneratorSeeder.class);
+
+    // Generator key -> table whose ids it generates
+    private static final Map<String, String> GENERATED_TABLES = Map.of(
+            "project_files", "project_files",
+            "task", "task");
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @PostConstruct
+    void seed() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        GENERATED_TABLES.forEach((key, table) -> transaction.executeWithoutResult(status -> seed(key, table)));
+    }
+
+    private void seed(String key, String table) {
+        long maxId = ((Number) entityManager.createNativeQuery("select coalesce(max(id), 0) from " + table)
+                .getSingleResult()).longValue();
+        // The pooled optimizer hands out the ALLOCATION_SIZE ids ending at the stored value
+        long floor = maxId + IdGenerators.ALLOCATION_SIZE + 1;
+        int updated = entityManager.createNativeQuery("update " + IdGenerators.TABLE + " set " + IdGenerators.VALUE_COLUMN
+                        + " = ?1 where " + IdGenerators.KEY_COLUMN + " = ?2 and " + IdGenerators.VALUE_COLUMN + " < ?1")
+                .setParameter(1, floor)
+                .setParameter(2, key)
+                .executeUpdate();
+        if (updated == 0 && ((Number) entityManager.createNativeQuery("select count(*) from " + IdGenerators.TABLE
+                        + " where " + IdGenerators.KEY_COLUMN + " = ?1")
+                .setParameter(1, key)
+                .getSingleResult()).longValue() == 0) {
+            entityManager.createNativeQuery("insert into " + IdGenerators.TABLE + " (" + IdGenerators.KEY_COLUMN + ", "
+                            + IdGenerators.VALUE_COLUMN + ") values (?1, ?2)")
+                    .setParameter(1, key)
+                    .setParameter(2, floor)
+                    .executeUpdate();
+            updated = 1;
+        }
+        if (updated == 1) {
+            LOGGER.info("Id generator {} starts above {}", key, maxId);
+        }
+    }
+}
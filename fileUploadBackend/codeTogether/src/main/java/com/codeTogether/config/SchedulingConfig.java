@@ -0,0 +1,11 @@
+package com.codeTogether.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+// Background jobs: checkpoints of live editing sessions, expiry of chunked uploads,
+// reconciliation of the uploads/ mirror, compaction of the pack segments and version retention
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -0,0 +1,23 @@
+package com.codeTogether.config;
+
+import com.codeTogether.controller.UploadAdmissionInterceptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+// Admission control for the endpoints that take whole files in one request, and for chunked
+// uploads, whose chunks and commits are uploads of their own
+@Configuration
+public class UploadAdmissionConfig implements WebMvcConfigurer {
+
+    @Autowired
+    private UploadAdmissionInterceptor uploadAdmissionInterceptor;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(uploadAdmissionInterceptor)
+                .addPathPatterns("/api/files/upload", "/api/files/fileUpload", "/api/files/fileUpload/batch",
+                        "/api/files/update/**", "/api/files/chunked/**");
+    }
+}
@@ -0,0 +1,23 @@
+package com.codeTogether.config;
+
+import com.codeTogether.controller.EditSocketHandler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+
+// Live editing endpoint, see EditSocketHandler
+@Configuration
+@EnableWebSocket
+public class WebSocketConfig implements WebSocketConfigurer {
+
+    @Autowired
+    private EditSocketHandler editSocketHandler;
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        registry.addHandler(editSocketHandler, "/ws/edit")
+                .setAllowedOrigins("http://localhost:5173");
+    }
+}
@@ -0,0 +1,16 @@
+package com.codeTogether.config;
+
+import com.codeTogether.util.ZlibPool;
+import org.springframework.context.annotation.Configuration;
+
+import jakarta.annotation.PreDestroy;
+
+// Frees the native zlib memory held by pooled Deflaters/Inflaters when the context closes
+@Configuration
+public class ZlibPoolConfig {
+
+    @PreDestroy
+    public void shutdown() {
+        ZlibPool.shutdown();
+    }
+}
@@ -0,0 +1,81 @@
+package com.codeTogether.controller;
+
+import com.codeTogether.entity.FileData;
+import com.codeTogether.service.ChunkedUploads;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+// Resumable uploads: create a session with the total size, PUT the bytes in chunks at their
+// offsets (in any order, also concurrently), check which ranges are still missing after an
+// interruption, then commit to store the file as a new version.
+@RestController
+@RequestMapping("/api/files/chunked")
+public class ChunkedUploadController {
+
+    @Autowired
+    private ChunkedUploads chunkedUploads;
+
+    // Endpoint to start an upload session
+    @CrossOrigin(origins = "http://localhost:5173")
+    @PostMapping
+    public ResponseEntity<ChunkedUploads.UploadStatus> create(
+            @RequestParam("fileName") String fileName,
+            @RequestParam(value = "fileType", required = false) String fileType,
+            @RequestParam("totalSize") long totalSize,
+            @RequestParam("uploadedBy") String uploadedBy,
+            @RequestParam("role") String role,
+            @RequestParam("projectFolder") String projectFolder) throws IOException {
+        try {
+            return new ResponseEntity<>(chunkedUploads.create(fileName, fileType, totalSize, uploadedBy, role, projectFolder),
+                    HttpStatus.CREATED);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    // Endpoint to upload one chunk; the request body is written as-is at offset
+    @CrossOrigin(origins = "http://localhost:5173")
+    @PutMapping("/{uploadId}")
+    public ResponseEntity<ChunkedUploads.UploadStatus> writeChunk(
+            @PathVariable String uploadId,
+            @RequestParam("offset") long offset,
+            InputStream body) throws IOException {
+        try {
+            return new ResponseEntity<>(chunkedUploads.writeChunk(uploadId, offset, body), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    // Endpoint to check progress and the ranges still missing
+    @CrossOrigin(origins = "http://localhost:5173")
+    @GetMapping("/{uploadId}")
+    public ResponseEntity<ChunkedUploads.UploadStatus> status(@PathVariable String uploadId) {
+        return new ResponseEntity<>(chunkedUploads.status(uploadId), HttpStatus.OK);
+    }
+
+    // Endpoint to store the completed upload as a new version of the file
+    @CrossOrigin(origins = "http://localhost:5173")
+    @PostMapping("/{uploadId}/commit")
+    public ResponseEntity<FileData> commit(@PathVariable String uploadId) throws IOException {
+        try {
+            return new ResponseEntity<>(chunkedUploads.commit(uploadId), HttpStatus.OK);
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage(), e);
+        }
+    }
+
+    // Endpoint to abandon an upload and free its staging file
+    @CrossOrigin(origins = "http://localhost:5173")
+    @DeleteMapping("/{uploadId}")
+    public ResponseEntity<Void> cancel(@PathVariable String uploadId) throws IOException {
+        chunkedUploads.cancel(uploadId);
+        return ResponseEntity.noContent().build();
+    }
+}
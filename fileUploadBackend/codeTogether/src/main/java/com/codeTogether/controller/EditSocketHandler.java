@@ -0,0 +1,88 @@
+package com.codeTogether.controller;
+
+import com.codeTogether.service.EditSessions;
+import com.codeTogether.util.TextOperation;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+// WebSocket endpoint for live editing: /ws/edit?file=<fileName>&user=<name>. Clients send
+// {"type":"operation","revision":n,"operation":[...]} with an ot.js operation made against
+// revision n and receive snapshot, ack, operation, joined, left, checkpoint and error messages.
+@Component
+public class EditSocketHandler extends TextWebSocketHandler {
+
+    private static final String FILE_ATTRIBUTE = "fileName";
+
+    @Autowired
+    private EditSessions editSessions;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${storage.edit.max-message-bytes:1048576}")
+    private int maxMessageBytes;
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        session.setTextMessageSizeLimit(maxMessageBytes);
+        Map<String, List<String>> params = UriComponentsBuilder.fromUri(session.getUri()).build(true).getQueryParams();
+        String fileName = decode(params.get("file"));
+        String user = decode(params.get("user"));
+        if (fileName == null || user == null) {
+            editSessions.sendError(session, "file and user query parameters are required");
+            session.close(CloseStatus.BAD_DATA);
+            return;
+        }
+        try {
+            editSessions.join(fileName, user, session);
+            session.getAttributes().put(FILE_ATTRIBUTE, fileName);
+        } catch (RuntimeException e) {
+            editSessions.sendError(session, e.getMessage());
+            session.close(CloseStatus.BAD_DATA);
+        }
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+        String fileName = (String) session.getAttributes().get(FILE_ATTRIBUTE);
+        try {
+            JsonNode json = objectMapper.readTree(message.getPayload());
+            if (!"operation".equals(json.path("type").asText()) || !json.path("revision").canConvertToInt()
+                    || !json.path("operation").isArray()) {
+                throw new IllegalArgumentException("Expected {\"type\":\"operation\",\"revision\":n,\"operation\":[...]}");
+            }
+            List<?> components = objectMapper.convertValue(json.get("operation"), List.class);
+            editSessions.edit(fileName, session, json.get("revision").asInt(), TextOperation.fromJson(components));
+        } catch (Exception e) {
+            editSessions.sendError(session, e.getMessage());
+        }
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        String fileName = (String) session.getAttributes().get(FILE_ATTRIBUTE);
+        if (fileName != null) {
+            editSessions.leave(fileName, session);
+        }
+    }
+
+    private static String decode(List<String> values) {
+        if (values == null || values.isEmpty() || values.get(0) == null || values.get(0).isBlank()) {
+            return null;
+        }
+        return URLDecoder.decode(values.get(0), StandardCharsets.UTF_8);
+    }
+}
@@ -1,225 +1,664 @@
-package com.codeTogether.controller;
-
-import com.codeTogether.entity.FileData;
-import com.codeTogether.service.StorageService;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
-import org.springframework.web.bind.annotation.*;
-import org.springframework.web.multipart.MultipartFile;
-import org.apache.commons.io.FilenameUtils;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.springframework.http.MediaType;
-
-import java.io.File;
-import java.io.IOException;
-import java.net.URLDecoder;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
-
-@RestController
-@CrossOrigin(origins = "http://localhost:5173")
-@RequestMapping("/api/files")
-public class FileController {
-
-    private static final Logger LOGGER = LoggerFactory.getLogger(FileController.class);
-    private static final Path PUBLIC_DIR = Paths.get(System.getProperty("user.dir"), "public");
-
-    @Autowired
-    private StorageService storageService;
-
-    @CrossOrigin(origins = "http://localhost:5173")
-    @PostMapping(value = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    public String upload(@RequestParam("files[]") List<MultipartFile> files) throws IOException {
-        for (MultipartFile file : files) {
-            String fileName = FilenameUtils.separatorsToSystem(file.getOriginalFilename());
-            Path filePath = PUBLIC_DIR.resolve(fileName);
-            if (Files.notExists(filePath.getParent())) {
-                Files.createDirectories(filePath.getParent());
-            }
-            try (var inputStream = file.getInputStream()) {
-                Files.copy(inputStream, filePath, StandardCopyOption.REPLACE_EXISTING);
-            }
-            LOGGER.info("write file: [{}] {}", file.getSize(), filePath);
-        }
-        return "ok";
-    }
-
-    @CrossOrigin(origins = "http://localhost:5173")
-    @GetMapping("/folders")
-    public List<String> listFolders() throws IOException {
-        List<String> folderAndFilesList = new ArrayList<>();
-        try (Stream<Path> paths = Files.walk(PUBLIC_DIR)) {
-            folderAndFilesList = paths
-                    .map(PUBLIC_DIR::relativize)
-                    .map(Path::toString)
-                    .map(s -> s.replace(File.separator, "/"))
-                    .filter(s -> !s.isEmpty())
-                    .collect(Collectors.toList());
-        }
-        return folderAndFilesList;
-    }
-
-    @CrossOrigin(origins = "http://localhost:5173")
-    @GetMapping("/foldersOnly")
-    public List<String> listFoldersOnly() throws IOException {
-        List<String> folderList = new ArrayList<>();
-        try (Stream<Path> paths = Files.walk(PUBLIC_DIR)) {
-            folderList = paths.filter(Files::isDirectory)
-                    .map(PUBLIC_DIR::relativize)
-                    .map(Path::toString)
-                    .map(s -> s.replace(File.separator, "/"))
-                    .filter(s -> !s.isEmpty())
-                    .collect(Collectors.toList());
-        }
-        return folderList;
-    }
-
-    @CrossOrigin(origins = "http://localhost:5173")
-    @GetMapping("/folders/**")
-    public List<String> getFilesAndSubdirectoriesInFolder(@PathVariable String folderName) throws IOException {
-        List<String> filesAndSubdirectories = new ArrayList<>();
-        Path folderPath = PUBLIC_DIR.resolve(folderName);
-        if (Files.exists(folderPath) && Files.isDirectory(folderPath)) {
-            try (Stream<Path> paths = Files.walk(folderPath)) {
-                filesAndSubdirectories = paths.map(folderPath::relativize)
-                        .map(Path::toString)
-                        .map(s -> s.replace(File.separator, "/"))
-                        .filter(s -> !s.isEmpty())
-                        .collect(Collectors.toList());
-            }
-        } else {
-            throw new IOException("Folder does not exist or is not a directory");
-        }
-        return filesAndSubdirectories;
-    }
-
-    // Endpoint to upload a file with version control
-    @CrossOrigin(origins = "http://localhost:5173")
-    @PostMapping("/fileUpload")
-    public ResponseEntity<FileData> uploadFile(
-            @RequestParam("file") MultipartFile file,
-            @RequestParam("uploadedBy") String uploadedBy,
-            @RequestParam("role") String role,
-            @RequestParam("projectFolder") String projectFolder) throws IOException {
-        FileData savedFile = storageService.uploadFile(file, uploadedBy, role, projectFolder);
-        return new ResponseEntity<>(savedFile, HttpStatus.OK);
-    }
-
-    // Endpoint to get all active files (version > 0)
-    @CrossOrigin(origins = "http://localhost:5173")
-    @GetMapping("/all")
-    public ResponseEntity<List<FileData>> getAllActiveFiles() {
-        List<FileData> files = storageService.getActiveFiles();
-        return new ResponseEntity<>(files, HttpStatus.OK);
-    }
-
-    // Endpoint to download a file by its active version
-    @CrossOrigin(origins = "http://localhost:5173")
-    @GetMapping("/download/{fileName}")
-    public ResponseEntity<byte[]> downloadFile(@PathVariable String fileName) throws IOException {
-        byte[] fileData = storageService.downloadFile(fileName);
-        return ResponseEntity.ok(fileData);
-    }
-
-    // Endpoint to delete a file by its active version
-    @CrossOrigin(origins = "http://localhost:5173")
-    @DeleteMapping("/delete/{fileName}")
-    public ResponseEntity<String> deleteFile(@PathVariable String fileName) {
-        try {
-            String decodedFileName = URLDecoder.decode(fileName, StandardCharsets.UTF_8);
-            storageService.deleteFile(decodedFileName);
-            return new ResponseEntity<>("File deleted successfully: " + decodedFileName, HttpStatus.OK);
-        } catch (Exception e) {
-            return new ResponseEntity<>("Error deleting file: " + e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
-        }
-    }
-
-    // Endpoint to update a file (version control applies)
-    @CrossOrigin(origins = "http://localhost:5173")
-    @PutMapping("/update/{fileName}")
-    public ResponseEntity<FileData> updateFile(
-            @PathVariable String fileName,
-            @RequestParam("file") MultipartFile file,
-            @RequestParam("uploadedBy") String uploadedBy,
-            @RequestParam("projectFolder") String projectFolder) throws IOException {
-        FileData updatedFile = storageService.updateFile(file, fileName, uploadedBy, projectFolder);
-        return new ResponseEntity<>(updatedFile, HttpStatus.OK);
-    }
-    
-    // Endpoint to download a specific version of a file (previous version)
-    @CrossOrigin(origins = "http://localhost:5173")
-    @GetMapping("/download/previous/{fileName}/{version}")
-    public ResponseEntity<byte[]> downloadPreviousVersion(
-            @PathVariable String fileName,
-            @PathVariable int version) throws IOException {
-        byte[] fileData = storageService.downloadFileByVersion(fileName, version);
-        return ResponseEntity.ok(fileData);
-    }
-
-    // Endpoint for rollback: restore a previous version as the active version.
-    @CrossOrigin(origins = "http://localhost:5173")
-    @PutMapping("/rollback/{fileName}/{version}")
-    public ResponseEntity<FileData> rollbackFile(
-            @PathVariable String fileName,
-            @PathVariable int version) throws IOException {
-        FileData rolledBackFile = storageService.rollbackFile(fileName, version);
-        return new ResponseEntity<>(rolledBackFile, HttpStatus.OK);
-    }
-
-    // Endpoint to create a folder
-    @CrossOrigin(origins = "http://localhost:5173")
-    @PostMapping("/folder/create")
-    public ResponseEntity<String> createFolder(@RequestParam("folderName") String folderName) {
-        boolean isCreated = storageService.createFolder(folderName);
-        if (isCreated) {
-            return new ResponseEntity<>("Folder created successfully", HttpStatus.CREATED);
-        } else {
-            return new ResponseEntity<>("Failed to create folder", HttpStatus.BAD_REQUEST);
-        }
-    }
-
-    // Endpoint to view files in a folder
-    @CrossOrigin(origins = "http://localhost:5173")
-    @GetMapping("/folder/{folderName}")
-    public ResponseEntity<List<FileData>> viewFolder(@PathVariable String folderName) {
-        List<FileData> filesInFolder = storageService.getAllFilesInFolder(folderName);
-        return new ResponseEntity<>(filesInFolder, HttpStatus.OK);
-    }
-
-    // Endpoint to delete a folder
-    @CrossOrigin(origins = "http://localhost:5173")
-    @DeleteMapping("/folder/delete/{folderName}")
-    public ResponseEntity<String> deleteFolder(@PathVariable String folderName) {
-        boolean isDeleted = storageService.deleteFolder(folderName);
-        if (isDeleted) {
-            return new ResponseEntity<>("Folder deleted successfully", HttpStatus.OK);
-        } else {
-            return new ResponseEntity<>("Failed to delete folder", HttpStatus.BAD_REQUEST);
-        }
-    }
-
-    // Endpoint to get previous versions of a specific file (version < 0)
-    @CrossOrigin(origins = "http://localhost:5173")
-    @GetMapping("/previous/{fileName}")
-    public ResponseEntity<List<FileData>> getPreviousVersions(@PathVariable String fileName) {
-        List<FileData> previousVersions = storageService.getPreviousVersions(fileName);
-        return new ResponseEntity<>(previousVersions, HttpStatus.OK);
-    }
-
-    // Endpoint to get all previous versions of all files (version < 0)
-    @CrossOrigin(origins = "http://localhost:5173")
-    @GetMapping("/previous")
-    public ResponseEntity<List<FileData>> getAllPreviousVersions() {
-        List<FileData> previousVersions = storageService.getAllPreviousVersions();
-        return new ResponseEntity<>(previousVersions, HttpStatus.OK);
-    }
-}
+package com.codeTogether.controller;
+
+import com.codeTogether.entity.FileData;
+import com.codeTogether.repository.FileMetadata;
+import com.codeTogether.service.CodecStats;
+import com.codeTogether.service.ContentCache;
+import com.codeTogether.service.DeltaStorage;
+import com.codeTogether.service.DiskMirror;
+import com.codeTogether.service.FolderIndex;
+import com.codeTogether.service.HistoryCompactor;
+import com.codeTogether.service.PackCompactor;
+import com.codeTogether.service.ParallelUploads;
+import com.codeTogether.service.ProjectExport;
+import com.codeTogether.service.SearchIndex;
+import com.codeTogether.service.StorageMetrics;
+import com.codeTogether.service.StorageService;
+import com.codeTogether.service.UploadAdmission;
+import com.codeTogether.service.VersionDiffs;
+import com.codeTogether.util.FileUtils;
+import com.codeTogether.util.TextPatch;
+import com.codeTogether.util.ZlibPool;
+import jakarta.servlet.http.HttpServletRequest;
+import org.apache.catalina.Globals;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.PatternSyntaxException;
+
+@RestController
+@CrossOrigin(origins = "http://localhost:5173")
+@RequestMapping("/api/files")
+public class FileController {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileController.class);
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final Path PUBLIC_DIR = FolderIndex.ROOT;
+    private static final int MAX_SEARCH_HITS = 1000;
+    private static final int MAX_DIFF_CONTEXT = 100;
+
+    @Autowired
+    private StorageService storageService;
+
+    @Autowired
+    private DeltaStorage deltaStorage;
+
+    @Autowired
+    private CodecStats codecStats;
+
+    @Autowired
+    private FolderIndex folderIndex;
+
+    @Autowired
+    private ParallelUploads parallelUploads;
+
+    @Autowired
+    private ContentCache contentCache;
+
+    @Autowired
+    private SearchIndex searchIndex;
+
+    @Autowired
+    private StorageMetrics storageMetrics;
+
+    @Autowired
+    private UploadAdmission uploadAdmission;
+
+    @Autowired
+    private ProjectExport projectExport;
+
+    @Autowired
+    private DiskMirror diskMirror;
+
+    @Autowired
+    private PackCompactor packCompactor;
+
+    @Autowired
+    private VersionDiffs versionDiffs;
+
+    @Autowired
+    private HistoryCompactor historyCompactor;
+
+    @CrossOrigin(origins = "http://localhost:5173")
+    @PostMapping(value = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<List<ParallelUploads.FileResult>> upload(@RequestParam("files[]") List<MultipartFile> files) {
+        return batchResponse(parallelUploads.run(files, this::writePublicFile));
+    }
+
+    // Each file is written to a temp file next to its target and moved into place, so readers
+    // never see a partial file and two files with the same name in one batch can't interleave
+    private long writePublicFile(MultipartFile file) throws IOException {
+        String fileName = FilenameUtils.separatorsToSystem(file.getOriginalFilename());
+        Path filePath = PUBLIC_DIR.resolve(fileName).normalize();
+        if (!filePath.startsWith(PUBLIC_DIR)) {
+            throw new IOException("Invalid file path: " + file.getOriginalFilename());
+        }
+        Files.createDirectories(filePath.getParent());
+        Path tempPath = Files.createTempFile(filePath.getParent(), "." + filePath.getFileName(), ".part");
+        try {
+            long bytes;
+            try (var inputStream = file.getInputStream()) {
+                bytes = Files.copy(inputStream, tempPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.move(tempPath, filePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOGGER.debug("write file: [{}] {}", bytes, filePath);
+            folderIndex.refresh(filePath);
+            return bytes;
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    // 200 when every file was stored, 207 Multi-Status when some failed
+    private ResponseEntity<List<ParallelUploads.FileResult>> batchResponse(List<ParallelUploads.FileResult> results) {
+        boolean allStored = results.stream().allMatch(result -> ParallelUploads.OK.equals(result.status()));
+        return new ResponseEntity<>(results, allStored ? HttpStatus.OK : HttpStatus.MULTI_STATUS);
+    }
+
+    // Folder listings are served from the in-memory FolderIndex. The ETag changes only when
+    // something below the listed folder changes, so polling clients mostly get a 304.
+    @CrossOrigin(origins = "http://localhost:5173")
+    @GetMapping("/folders")
+    public ResponseEntity<List<String>> listFolders(@RequestParam(value = "depth", required = false) Integer depth,
+                                                    WebRequest request) {
+        return listing("", depth, false, request);
+    }
+
+    @CrossOrigin(origins = "http://localhost:5173")
+    @GetMapping("/foldersOnly")
+    public ResponseEntity<List<String>> listFoldersOnly(@RequestParam(value = "depth", required = false) Integer depth,
+                                                        WebRequest request) {
+        return listing("", depth, true, request);
+    }
+
+    @CrossOrigin(origins = "http://localhost:5173")
+    @GetMapping("/folders/{*folderName}")
+    public ResponseEntity<List<String>> getFilesAndSubdirectoriesInFolder(
+            @PathVariable String folderName,
+            @RequestParam(value = "depth", required = false) Integer depth,
+            WebRequest request) throws IOException {
+        if (folderIndex.etag(folderName).isEmpty()) {
+            throw new IOException("Folder does not exist or is not a directory");
+        }
+        return listing(folderName, depth, false, request);
+    }
+
+    // Subtree with per-node size (total size for folders) and last-modified time
+    @CrossOrigin(origins = "http://localhost:5173")
+    @GetMapping("/tree")
+    public ResponseEntity<FolderIndex.TreeEntry> getTree(
+            @RequestParam(value = "path", required = false) String path,
+            @RequestParam(value = "depth", required = false) Integer depth,
+            WebRequest request) {
+        Optional<String> etag = folderIndex.etag(path);
+        if (etag.isEmpty()) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        if (request.checkNotModified(etag.get())) {
+            return null;
+        }
+        return folderIndex.tree(path, depth)
+                .map(tree -> ResponseEntity.ok().eTag(etag.get()).body(tree))
+                .orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND));
+    }
+
+    // The ETag is read before the listing so a concurrent change can only make it stale, never ahead
+    private ResponseEntity<List<String>> listing(String folder, Integer depth, boolean directoriesOnly, WebRequest request) {
+        Optional<String> etag = folderIndex.etag(folder);
+        if (etag.isEmpty()) {
+            return ResponseEntity.ok(List.of());
+        }
+        if (request.checkNotModified(etag.get())) {
+            return null;
+        }
+        return folderIndex.list(folder, depth, directoriesOnly)
+                .map(paths -> ResponseEntity.ok().eTag(etag.get()).body(paths))
+                .orElseGet(() -> ResponseEntity.ok(List.of()));
+    }
+
+    // Endpoint to upload a file with version control
+    @CrossOrigin(origins = "http://localhost:5173")
+    @PostMapping("/fileUpload")
+    public ResponseEntity<FileData> uploadFile(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam("uploadedBy") String uploadedBy,
+            @RequestParam("role") String role,
+            @RequestParam("projectFolder") String projectFolder) throws IOException {
+        FileData savedFile = storageService.uploadFile(file, uploadedBy, role, projectFolder);
+        return new ResponseEntity<>(savedFile, HttpStatus.OK);
+    }
+
+    // Endpoint to upload several files with version control; files are stored in parallel
+    // and the response has one result per file
+    @CrossOrigin(origins = "http://localhost:5173")
+    @PostMapping(value = "/fileUpload/batch", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<List<ParallelUploads.FileResult>> uploadFiles(
+            @RequestParam("files[]") List<MultipartFile> files,
+            @RequestParam("uploadedBy") String uploadedBy,
+            @RequestParam("role") String role,
+            @RequestParam("projectFolder") String projectFolder) {
+        return batchResponse(storageService.uploadFiles(files, uploadedBy, role, projectFolder));
+    }
+
+    // Endpoint to get metadata of all active files (version > 0); pass size (and the
+    // X-Next-Cursor value of the previous page as cursor) to page through large listings
+    @CrossOrigin(origins = "http://localhost:5173")
+    @GetMapping("/all")
+    public ResponseEntity<List<FileMetadata>> getAllActiveFiles(
+            @RequestParam(value = "cursor", required = false) Long cursor,
+            @RequestParam(value = "size", required = false) Integer size) {
+        return page(storageService.getActiveFiles(cursor, size), size);
+    }
+
+    // Endpoint to download a file by its active version
+    @CrossOrigin(origins = "http://localhost:5173")
+    @GetMapping("/download/{fileName}")
+    public ResponseEntity<StreamingResponseBody> downloadFile(
+            @PathVariable String fileName,
+            @RequestHeader HttpHeaders requestHeaders,
+            HttpServletRequest request) throws IOException {
+        return streamContent(storageService.getActiveFile(fileName), requestHeaders, request);
+    }
+
+    // Endpoint to delete a file by its active version
+    @CrossOrigin(origins = "http://localhost:5173")
+    @DeleteMapping("/delete/{fileName}")
+    public ResponseEntity<String> deleteFile(@PathVariable String fileName) {
+        try {
+            String decodedFileName = URLDecoder.decode(fileName, StandardCharsets.UTF_8);
+            storageService.deleteFile(decodedFileName);
+            return new ResponseEntity<>("File deleted successfully: " + decodedFileName, HttpStatus.OK);
+        } catch (Exception e) {
+            return new ResponseEntity<>("Error deleting file: " + e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    // Endpoint to update a file (version control applies)
+    @CrossOrigin(origins = "http://localhost:5173")
+    @PutMapping("/update/{fileName}")
+    public ResponseEntity<FileData> updateFile(
+            @PathVariable String fileName,
+            @RequestParam("file") MultipartFile file,
+            @RequestParam("uploadedBy") String uploadedBy,
+            @RequestParam("projectFolder") String projectFolder) throws IOException {
+        FileData updatedFile = storageService.updateFile(file, fileName, uploadedBy, projectFolder);
+        return new ResponseEntity<>(updatedFile, HttpStatus.OK);
+    }
+    
+    // Body of a patch request: the active version the change was made against, and either a
+    // unified diff or a list of range edits (character offsets into that version)
+    public record PatchRequest(int baseVersion, String uploadedBy, String diff, List<TextPatch.Edit> edits) {
+    }
+
+    // Endpoint to update a text file by sending only the change. Answers 409 if baseVersion is
+    // no longer the active version and 422 if the patch doesn't apply to it.
+    @CrossOrigin(origins = "http://localhost:5173")
+    @PatchMapping("/update/{fileName}")
+    public ResponseEntity<FileData> patchFile(
+            @PathVariable String fileName,
+            @RequestBody PatchRequest request) throws IOException {
+        try {
+            FileData updatedFile = storageService.patchFile(fileName, request.baseVersion(),
+                    new TextPatch.Patch(request.diff(), request.edits()), request.uploadedBy());
+            return new ResponseEntity<>(updatedFile, HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY, e.getMessage(), e);
+        }
+    }
+
+    // Endpoint to download a specific version of a file (previous version)
+    @CrossOrigin(origins = "http://localhost:5173")
+    @GetMapping("/download/previous/{fileName}/{version}")
+    public ResponseEntity<StreamingResponseBody> downloadPreviousVersion(
+            @PathVariable String fileName,
+            @PathVariable int version,
+            @RequestHeader HttpHeaders requestHeaders,
+            HttpServletRequest request) throws IOException {
+        return streamContent(storageService.getFileVersion(fileName, version), requestHeaders, request);
+    }
+
+    // Endpoint to compare two versions of a file (versions as in /download/previous; without
+    // "to" the active version). Answers with the line diff as hunks, or only whether the
+    // content differs for binary and very large files.
+    @CrossOrigin(origins = "http://localhost:5173")
+    @GetMapping("/diff/{fileName}")
+    public ResponseEntity<VersionDiffs.VersionDiff> diffVersions(
+            @PathVariable String fileName,
+            @RequestParam("from") int fromVersion,
+            @RequestParam(value = "to", required = false) Integer toVersion,
+            @RequestParam(value = "context", defaultValue = "3") int context) throws IOException {
+        return new ResponseEntity<>(versionDiffs.diff(fileName, fromVersion, toVersion, clampContext(context)), HttpStatus.OK);
+    }
+
+    // The same comparison as a unified diff, which PATCH /update/{fileName} accepts
+    @CrossOrigin(origins = "http://localhost:5173")
+    @GetMapping(value = "/diff/{fileName}", params = "format=unified")
+    public ResponseEntity<String> diffVersionsUnified(
+            @PathVariable String fileName,
+            @RequestParam("from") int fromVersion,
+            @RequestParam(value = "to", required = false) Integer toVersion,
+            @RequestParam(value = "context", defaultValue = "3") int context) throws IOException {
+        VersionDiffs.VersionDiff diff = versionDiffs.diff(fileName, fromVersion, toVersion, clampContext(context));
+        String body = diff.diff() != null ? diff.diff().unified("a/" + fileName, "b/" + fileName)
+                : diff.identical() ? "" : "Binary files a/" + fileName + " and b/" + fileName + " differ\n";
+        return ResponseEntity.ok().contentType(MediaType.TEXT_PLAIN).body(body);
+    }
+
+    private static int clampContext(int context) {
+        return Math.max(0, Math.min(context, MAX_DIFF_CONTEXT));
+    }
+
+    // Endpoint for rollback: restore a previous version as the active version.
+    @CrossOrigin(origins = "http://localhost:5173")
+    @PutMapping("/rollback/{fileName}/{version}")
+    public ResponseEntity<FileData> rollbackFile(
+            @PathVariable String fileName,
+            @PathVariable int version) throws IOException {
+        FileData rolledBackFile = storageService.rollbackFile(fileName, version);
+        return new ResponseEntity<>(rolledBackFile, HttpStatus.OK);
+    }
+
+    // Endpoint to create a folder
+    @CrossOrigin(origins = "http://localhost:5173")
+    @PostMapping("/folder/create")
+    public ResponseEntity<String> createFolder(@RequestParam("folderName") String folderName) {
+        boolean isCreated = storageService.createFolder(folderName);
+        if (isCreated) {
+            return new ResponseEntity<>("Folder created successfully", HttpStatus.CREATED);
+        } else {
+            return new ResponseEntity<>("Failed to create folder", HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    // Endpoint to view files in a folder
+    @CrossOrigin(origins = "http://localhost:5173")
+    @GetMapping("/folder/{folderName}")
+    public ResponseEntity<List<FileMetadata>> viewFolder(
+            @PathVariable String folderName,
+            @RequestParam(value = "cursor", required = false) Long cursor,
+            @RequestParam(value = "size", required = false) Integer size) {
+        return page(storageService.getAllFilesInFolder(folderName, cursor, size), size);
+    }
+
+    // Endpoint to delete a folder
+    @CrossOrigin(origins = "http://localhost:5173")
+    @DeleteMapping("/folder/delete/{folderName}")
+    public ResponseEntity<String> deleteFolder(@PathVariable String folderName) {
+        boolean isDeleted = storageService.deleteFolder(folderName);
+        if (isDeleted) {
+            return new ResponseEntity<>("Folder deleted successfully", HttpStatus.OK);
+        } else {
+            return new ResponseEntity<>("Failed to delete folder", HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    // Endpoint to get previous versions of a specific file (version < 0)
+    @CrossOrigin(origins = "http://localhost:5173")
+    @GetMapping("/previous/{fileName}")
+    public ResponseEntity<List<FileMetadata>> getPreviousVersions(
+            @PathVariable String fileName,
+            @RequestParam(value = "cursor", required = false) Long cursor,
+            @RequestParam(value = "size", required = false) Integer size) {
+        return page(storageService.getPreviousVersions(fileName, cursor, size), size);
+    }
+
+    // Endpoint to download a project folder with its subfolders as a ZIP archive, streamed while
+    // it is written: the active files, or with date (yyyy-MM-dd) the files as of the end of that day
+    @CrossOrigin(origins = "http://localhost:5173")
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportProject(
+            @RequestParam("projectFolder") String projectFolder,
+            @RequestParam(value = "date", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+        String folderName = projectFolder.substring(projectFolder.lastIndexOf('/') + 1);
+        String archiveName = (folderName.isEmpty() ? "export" : folderName) + (date != null ? "-" + date : "") + ".zip";
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename(archiveName).build().toString())
+                .body(out -> projectExport.write(projectFolder, date, out));
+    }
+
+    // Endpoint to get all previous versions of all files (version < 0)
+    @CrossOrigin(origins = "http://localhost:5173")
+    @GetMapping("/previous")
+    public ResponseEntity<List<FileMetadata>> getAllPreviousVersions(
+            @RequestParam(value = "cursor", required = false) Long cursor,
+            @RequestParam(value = "size", required = false) Integer size) {
+        return page(storageService.getAllPreviousVersions(cursor, size), size);
+    }
+
+    // Endpoint to report how much delta storage saves and what reconstruction costs per delta depth
+    @CrossOrigin(origins = "http://localhost:5173")
+    @GetMapping("/storage/delta-stats")
+    public ResponseEntity<Map<String, Object>> getDeltaStats() {
+        return new ResponseEntity<>(deltaStorage.getStats(), HttpStatus.OK);
+    }
+
+    // A full page carries the id of its last row as the cursor for the next one. Pages are
+    // capped, so a full page is one of the capped size, not necessarily the requested one.
+    private static ResponseEntity<List<FileMetadata>> page(List<FileMetadata> files, Integer size) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (size != null && !files.isEmpty() && files.size() >= StorageService.effectivePageSize(size)) {
+            response.header(NEXT_CURSOR_HEADER, String.valueOf(files.get(files.size() - 1).getId()));
+        }
+        return response.body(files);
+    }
+
+    // Endpoint to search the active versions of all text files; q is a literal unless regex=true.
+    // Returns up to limit matching lines, optionally only from one project folder.
+    @CrossOrigin(origins = "http://localhost:5173")
+    @GetMapping("/search")
+    public ResponseEntity<SearchIndex.SearchResult> search(
+            @RequestParam("q") String query,
+            @RequestParam(value = "regex", defaultValue = "false") boolean regex,
+            @RequestParam(value = "caseSensitive", defaultValue = "true") boolean caseSensitive,
+            @RequestParam(value = "projectFolder", required = false) String projectFolder,
+            @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        if (query.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Query must not be empty");
+        }
+        try {
+            return new ResponseEntity<>(searchIndex.search(query, regex, caseSensitive, projectFolder,
+                    Math.max(1, Math.min(limit, MAX_SEARCH_HITS))), HttpStatus.OK);
+        } catch (PatternSyntaxException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    // Endpoint to report upload throughput and CPU cost per compression codec
+    @CrossOrigin(origins = "http://localhost:5173")
+    @GetMapping("/storage/codec-stats")
+    public ResponseEntity<List<CodecStats.CodecSummary>> getCodecStats() {
+        return new ResponseEntity<>(codecStats.summaries(), HttpStatus.OK);
+    }
+
+    // Endpoint to report how many pooled deflaters, inflaters and buffers were created and reused
+    @CrossOrigin(origins = "http://localhost:5173")
+    @GetMapping("/storage/zlib-pool-stats")
+    public ResponseEntity<ZlibPool.Stats> getZlibPoolStats() {
+        return new ResponseEntity<>(ZlibPool.stats(), HttpStatus.OK);
+    }
+
+    // Endpoint to report hit rate, evictions and bytes held by the hot-file content cache
+    @CrossOrigin(origins = "http://localhost:5173")
+    @GetMapping("/storage/cache-stats")
+    public ResponseEntity<ContentCache.Summary> getCacheStats() {
+        return new ResponseEntity<>(contentCache.summary(), HttpStatus.OK);
+    }
+
+    // Endpoint to report in-flight upload bytes, queued uploads and rejections by admission control
+    @CrossOrigin(origins = "http://localhost:5173")
+    @GetMapping("/storage/admission-stats")
+    public ResponseEntity<UploadAdmission.Summary> getAdmissionStats() {
+        return new ResponseEntity<>(uploadAdmission.summary(), HttpStatus.OK);
+    }
+
+    // Endpoint to report what the last history compaction deleted; 204 before the first run
+    @CrossOrigin(origins = "http://localhost:5173")
+    @GetMapping("/storage/retention-stats")
+    public ResponseEntity<HistoryCompactor.Report> getRetentionStats() {
+        return historyCompactor.lastReport().map(ResponseEntity::ok).orElseGet(() -> ResponseEntity.noContent().build());
+    }
+
+    // Endpoint to report the size of each pack segment and how many of its bytes are still referenced
+    @CrossOrigin(origins = "http://localhost:5173")
+    @GetMapping("/storage/pack-stats")
+    public ResponseEntity<PackCompactor.Summary> getPackStats() {
+        return new ResponseEntity<>(packCompactor.summary(), HttpStatus.OK);
+    }
+
+    // Streams the content from the hot-file cache. Active versions too large to cache are sent
+    // from their uploads/ mirror when it is verified in sync; other content is inflated from
+    // storage directly into the response. A single byte range is answered with 206; multiple
+    // ranges fall back to the full content.
+    private ResponseEntity<StreamingResponseBody> streamContent(FileData fileData, HttpHeaders requestHeaders,
+                                                                HttpServletRequest request) throws IOException {
+        MediaType mediaType = resolveMediaType(fileData.getFileType());
+        ContentCache.Entry cached = storageService.getCachedContent(fileData).orElse(null);
+        DiskMirror.Verified mirror = cached == null ? diskMirror.find(fileData).orElse(null) : null;
+        if (!requestHeaders.containsKey(HttpHeaders.RANGE) && mirror == null) {
+            ResponseEntity<StreamingResponseBody> compressed =
+                    passThroughCompressed(fileData, cached, requestHeaders.getFirst(HttpHeaders.ACCEPT_ENCODING), mediaType);
+            if (compressed != null) {
+                return compressed;
+            }
+        }
+        long contentLength = cached != null ? cached.content().length
+                : mirror != null ? mirror.size() : storageService.getContentLength(fileData);
+        List<HttpRange> ranges;
+        try {
+            ranges = requestHeaders.getRange();
+        } catch (IllegalArgumentException e) {
+            ranges = List.of();
+        }
+        if (ranges.size() == 1) {
+            HttpRange range = ranges.get(0);
+            long start = range.getRangeStart(contentLength);
+            long end = range.getRangeEnd(contentLength);
+            if (start >= contentLength || start > end) {
+                return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                        .header(HttpHeaders.CONTENT_RANGE, "bytes */" + contentLength)
+                        .build();
+            }
+            long length = end - start + 1;
+            storageMetrics.recordDownload(length);
+            ResponseEntity.BodyBuilder partial = ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                    .contentType(mediaType)
+                    .contentLength(length)
+                    .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + contentLength);
+            return withContent(partial, request, fileData, cached, mirror, start, length);
+        }
+        storageMetrics.recordDownload(contentLength);
+        ResponseEntity.BodyBuilder full = ResponseEntity.ok()
+                .contentType(mediaType)
+                .contentLength(contentLength)
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        return withContent(full, request, fileData, cached, mirror, 0, contentLength);
+    }
+
+    private ResponseEntity<StreamingResponseBody> withContent(ResponseEntity.BodyBuilder response, HttpServletRequest request,
+                                                              FileData fileData, ContentCache.Entry cached,
+                                                              DiskMirror.Verified mirror, long offset, long length) {
+        if (mirror == null) {
+            return response.body(out -> writeContent(fileData, cached, offset, length, out));
+        }
+        if (Boolean.TRUE.equals(request.getAttribute(Globals.SENDFILE_SUPPORTED_ATTR))) {
+            Optional<Path> link = diskMirror.link(mirror);
+            if (link.isPresent()) {
+                // Tomcat sends the file once the handler returns, with sendfile (FileChannel.transferTo
+                // to the socket), so the content passes through neither the heap nor the database
+                request.setAttribute(Globals.SENDFILE_FILENAME_ATTR, link.get().toString());
+                request.setAttribute(Globals.SENDFILE_FILE_START_ATTR, offset);
+                request.setAttribute(Globals.SENDFILE_FILE_END_ATTR, offset + length);
+                return response.build();
+            }
+        }
+        return response.body(out -> {
+            Optional<FileChannel> channel = diskMirror.open(mirror);
+            if (channel.isEmpty()) {
+                // Replaced since it was verified; the version's content is still in storage
+                writeContent(fileData, null, offset, length, out);
+                return;
+            }
+            try (FileChannel in = channel.get()) {
+                FileUtils.transfer(in, offset, length, out);
+            }
+        });
+    }
+
+    private void writeContent(FileData fileData, ContentCache.Entry cached, long offset, long length, OutputStream out) throws IOException {
+        if (cached != null) {
+            out.write(cached.content(), (int) offset, (int) length);
+        } else {
+            storageService.writeContent(fileData, offset, length, out);
+        }
+    }
+
+    // Sends the stored deflate data as-is when the client accepts it, skipping inflation on the
+    // server. gzip needs the CRC32 recorded at upload; otherwise the zlib stream goes out as "deflate".
+    // Returns null when the client or the stored representation doesn't allow it.
+    private ResponseEntity<StreamingResponseBody> passThroughCompressed(FileData fileData, ContentCache.Entry cached,
+                                                                        String acceptEncoding, MediaType mediaType) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        // A cached entry already records whether the stored data can be passed through
+        Optional<StorageService.CompressedContent> stored = cached != null
+                ? Optional.ofNullable(cached.zlibData()).map(zlibData -> new StorageService.CompressedContent(ByteBuffer.wrap(zlibData), cached.crc32()))
+                : storageService.findCompressedContent(fileData);
+        if (stored.isEmpty()) {
+            return null;
+        }
+        StorageService.CompressedContent zlibData = stored.get();
+        Long crc32 = zlibData.crc32();
+        if (crc32 != null && fileData.getFileSize() != null && acceptsCoding(acceptEncoding, "gzip")) {
+            long originalSize = fileData.getFileSize();
+            long gzipLength = FileUtils.gzipLength(zlibData.length());
+            storageMetrics.recordDownload(gzipLength);
+            return ResponseEntity.ok()
+                    .contentType(mediaType)
+                    .contentLength(gzipLength)
+                    .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                    .body(out -> FileUtils.writeGzip(zlibData.open(), zlibData.length(), crc32, originalSize, out));
+        }
+        if (acceptsCoding(acceptEncoding, "deflate")) {
+            storageMetrics.recordDownload(zlibData.length());
+            return ResponseEntity.ok()
+                    .contentType(mediaType)
+                    .contentLength(zlibData.length())
+                    .header(HttpHeaders.CONTENT_ENCODING, "deflate")
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                    .body(out -> FileUtils.copy(zlibData.open(), out, zlibData.length()));
+        }
+        return null;
+    }
+
+    // True if the Accept-Encoding header lists the coding (or *) without q=0
+    private static boolean acceptsCoding(String acceptEncoding, String coding) {
+        for (String part : acceptEncoding.split(",")) {
+            String[] params = part.trim().split(";");
+            String name = params[0].trim();
+            if (!name.equalsIgnoreCase(coding) && !name.equals("*")) {
+                continue;
+            }
+            boolean rejected = false;
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        rejected = Double.parseDouble(param.substring(2)) <= 0;
+                    } catch (NumberFormatException e) {
+                        rejected = true;
+                    }
+                }
+            }
+            if (!rejected) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static MediaType resolveMediaType(String fileType) {
+        if (fileType == null || fileType.isBlank()) {
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
+        try {
+            return MediaType.parseMediaType(fileType);
+        } catch (InvalidMediaTypeException e) {
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
+    }
+}
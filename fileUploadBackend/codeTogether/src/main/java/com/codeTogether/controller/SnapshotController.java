@@ -0,0 +1,74 @@
+package com.codeTogether.controller;
+
+import com.codeTogether.entity.ProjectSnapshot;
+import com.codeTogether.service.ProjectSnapshots;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.util.List;
+
+// Project snapshots: record the active version of every file of a project folder, list and
+// compare snapshots, and restore a whole snapshot in one batch.
+@RestController
+@RequestMapping("/api/snapshots")
+public class SnapshotController {
+
+    @Autowired
+    private ProjectSnapshots projectSnapshots;
+
+    // Endpoint to take a snapshot of a project folder and its subfolders
+    @CrossOrigin(origins = "http://localhost:5173")
+    @PostMapping
+    public ResponseEntity<ProjectSnapshot> create(
+            @RequestParam("projectFolder") String projectFolder,
+            @RequestParam(value = "name", required = false) String name,
+            @RequestParam(value = "createdBy", required = false) String createdBy) throws IOException {
+        try {
+            return new ResponseEntity<>(projectSnapshots.create(projectFolder, name, createdBy), HttpStatus.CREATED);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    // Endpoint to list the snapshots of a project folder, newest first
+    @CrossOrigin(origins = "http://localhost:5173")
+    @GetMapping
+    public ResponseEntity<List<ProjectSnapshot>> list(@RequestParam("projectFolder") String projectFolder) {
+        return new ResponseEntity<>(projectSnapshots.list(projectFolder), HttpStatus.OK);
+    }
+
+    // Endpoint to get a snapshot with the version of each file
+    @CrossOrigin(origins = "http://localhost:5173")
+    @GetMapping("/{snapshotId}")
+    public ResponseEntity<ProjectSnapshots.SnapshotDetails> get(@PathVariable long snapshotId) {
+        return new ResponseEntity<>(projectSnapshots.get(snapshotId), HttpStatus.OK);
+    }
+
+    // Endpoint to compare a snapshot with another one, or with the current state without "to"
+    @CrossOrigin(origins = "http://localhost:5173")
+    @GetMapping("/{snapshotId}/diff")
+    public ResponseEntity<List<ProjectSnapshots.Change>> diff(
+            @PathVariable long snapshotId,
+            @RequestParam(value = "to", required = false) Long toSnapshotId) {
+        return new ResponseEntity<>(projectSnapshots.diff(snapshotId, toSnapshotId), HttpStatus.OK);
+    }
+
+    // Endpoint to restore the project folder to the snapshot
+    @CrossOrigin(origins = "http://localhost:5173")
+    @PostMapping("/{snapshotId}/restore")
+    public ResponseEntity<ProjectSnapshots.RestoreResult> restore(@PathVariable long snapshotId) throws IOException {
+        return new ResponseEntity<>(projectSnapshots.restore(snapshotId), HttpStatus.OK);
+    }
+
+    // Endpoint to delete a snapshot
+    @CrossOrigin(origins = "http://localhost:5173")
+    @DeleteMapping("/{snapshotId}")
+    public ResponseEntity<Void> delete(@PathVariable long snapshotId) {
+        projectSnapshots.delete(snapshotId);
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -0,0 +1,46 @@
+package com.codeTogether.controller;
+
+import com.codeTogether.service.UploadAdmission;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.cors.CorsUtils;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+// Runs each upload request through UploadAdmission before its body is read; multipart
+// requests are resolved lazily, so a waiting or rejected upload holds no part of its content.
+// Uploads are counted per the X-Uploaded-By header, or per client address without it (the
+// uploadedBy form field is in the body, which isn't read yet). CORS preflights carry no body
+// and pass straight through, so they never wait behind the uploads they precede.
+@Component
+public class UploadAdmissionInterceptor implements HandlerInterceptor {
+
+    public static final String UPLOADED_BY_HEADER = "X-Uploaded-By";
+    private static final String TICKET_ATTRIBUTE = UploadAdmissionInterceptor.class.getName() + ".ticket";
+
+    @Autowired
+    private UploadAdmission uploadAdmission;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        if (CorsUtils.isPreFlightRequest(request)) {
+            return true;
+        }
+        String user = request.getHeader(UPLOADED_BY_HEADER);
+        if (user == null || user.isBlank()) {
+            user = request.getRemoteAddr();
+        }
+        request.setAttribute(TICKET_ATTRIBUTE, uploadAdmission.acquire(user, request.getContentLengthLong()));
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Object ticket = request.getAttribute(TICKET_ATTRIBUTE);
+        if (ticket != null) {
+            request.removeAttribute(TICKET_ATTRIBUTE);
+            uploadAdmission.release((UploadAdmission.Ticket) ticket);
+        }
+    }
+}
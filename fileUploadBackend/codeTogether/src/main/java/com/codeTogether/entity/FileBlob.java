@@ -0,0 +1,83 @@
+package com.codeTogether.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import jakarta.persistence.*;
+
+// Compressed file content stored once per distinct SHA-256 and shared by every
+// FileData version that has the same bytes. The stored bytes live either in the content
+// column or, with the pack backend, in a record of a pack segment file (see PackStore).
+@Entity
+@Table(name = "file_blobs")
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class FileBlob {
+
+    @Id
+    @Column(length = 64)
+    private String hash;
+
+    // Null when the bytes are kept in a pack segment
+    @Lob
+    @Column(name = "content", length = Integer.MAX_VALUE)
+    private byte[] content;
+
+    // Location of the stored bytes in the pack segments: segment number, offset of the record
+    // and length of its payload. All null when they are in the content column.
+    private Integer packSegment;
+
+    private Long packOffset;
+
+    private Integer packLength;
+
+    private long originalSize;
+
+    // CRC32 of the uncompressed content, needed to serve the stored deflate data as gzip
+    private Long crc32;
+
+    // Codec the full content was compressed with (see CompressionCodec); null means deflate
+    @Column(length = 16)
+    private String codec;
+
+    // Size of the content compressed as a full copy
+    private long compressedSize;
+
+    // FULL blobs hold the compressed content itself; DELTA blobs hold a compressed delta
+    // against baseHash and keep a reference on that base blob. Null means FULL.
+    @Enumerated(EnumType.STRING)
+    @Column(length = 8)
+    private Encoding encoding;
+
+    @Column(length = 64)
+    private String baseHash;
+
+    // Size of the stored delta when encoding is DELTA
+    private Long deltaSize;
+
+    // Length of the longest chain of delta blobs encoded against this blob, directly or through
+    // each other. Only grows: a chain shortened by a materialize or delete keeps counting.
+    private int deltaHeight;
+
+    // Number of FileData rows pointing at this blob; the blob is deleted when it drops to zero
+    private int refCount;
+
+    // When the row was inserted, in epoch millis; null for rows from before it was recorded
+    private Long createdAt;
+
+    public boolean isDelta() {
+        return encoding == Encoding.DELTA;
+    }
+
+    public boolean isPacked() {
+        return packSegment != null;
+    }
+
+    public enum Encoding {
+        FULL, DELTA
+    }
+}
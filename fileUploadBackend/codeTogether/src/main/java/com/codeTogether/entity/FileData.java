@@ -1,38 +1,57 @@
-package com.codeTogether.entity;
-
-import lombok.AllArgsConstructor;
-import lombok.Builder;
-import lombok.Data;
-import lombok.NoArgsConstructor;
-
-import jakarta.persistence.*;
-
-@Entity
-@Table(name = "project_files", indexes = {
-    @Index(name = "idx_file_name_version", columnList = "fileName, version")
-})
-@Data
-@AllArgsConstructor
-@NoArgsConstructor
-@Builder
-public class FileData {
-
-    @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
-    private Long id;
-
-    private String fileName;
-    private String fileType;
-    private String uploadedBy;
-    private String role;
-    private String projectFolder;
-
-    @Lob
-    @Column(name = "file_content", length = 1000)
-    private byte[] fileContent;
-
-    private String uploadDate;
-
-    // New field for version control
-    private int version;
-}
+package com.codeTogether.entity;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import jakarta.persistence.*;
+
+@Entity
+@Table(name = "project_files", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_file_name_version", columnNames = {"fileName", "version"})
+}, indexes = {
+    @Index(name = "idx_project_folder_id", columnList = "projectFolder, id"),
+    @Index(name = "idx_content_hash", columnList = "contentHash")
+})
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class FileData {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "project_files_id")
+    @TableGenerator(name = "project_files_id", table = IdGenerators.TABLE, pkColumnName = IdGenerators.KEY_COLUMN,
+            valueColumnName = IdGenerators.VALUE_COLUMN, pkColumnValue = "project_files",
+            allocationSize = IdGenerators.ALLOCATION_SIZE)
+    private Long id;
+
+    private String fileName;
+    private String fileType;
+    private String uploadedBy;
+    private String role;
+    private String projectFolder;
+
+    @Lob
+    @Column(name = "file_content", length = 1000)
+    private byte[] fileContent;
+
+    private String uploadDate;
+
+    // Original (uncompressed) size and SHA-256 of the content, computed during ingest
+    private Long fileSize;
+
+    @Column(length = 64)
+    private String contentHash;
+
+    // New field for version control
+    private int version;
+
+    // Optimistic lock: a concurrent writer that superseded the same active row fails instead of overwriting it.
+    // Internal to persistence, so it stays out of API responses
+    @Version
+    @JsonIgnore
+    private long lockVersion;
+}
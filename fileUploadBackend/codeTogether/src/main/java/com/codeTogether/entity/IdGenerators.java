@@ -0,0 +1,15 @@
+package com.codeTogether.entity;
+
+// Ids come from pooled table generators instead of IDENTITY columns: Hibernate can't batch
+// inserts whose ids are only known after the insert, and MySQL has no sequences. Each
+// table's next block of ALLOCATION_SIZE ids is reserved with one update of its row in TABLE.
+public final class IdGenerators {
+
+    public static final String TABLE = "id_generators";
+    public static final String KEY_COLUMN = "entity";
+    public static final String VALUE_COLUMN = "next_val";
+    public static final int ALLOCATION_SIZE = 50;
+
+    private IdGenerators() {
+    }
+}
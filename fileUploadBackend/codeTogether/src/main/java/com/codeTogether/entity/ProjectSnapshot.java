@@ -0,0 +1,34 @@
+package com.codeTogether.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import jakarta.persistence.*;
+
+// The state of a project folder (with its subfolders) at one point: which version of each
+// file was active. The versions themselves are listed as SnapshotEntry rows.
+@Entity
+@Table(name = "project_snapshots", indexes = {
+    @Index(name = "idx_snapshot_project_folder_id", columnList = "projectFolder, id")
+})
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ProjectSnapshot {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "project_snapshots_id")
+    @TableGenerator(name = "project_snapshots_id", table = IdGenerators.TABLE, pkColumnName = IdGenerators.KEY_COLUMN,
+            valueColumnName = IdGenerators.VALUE_COLUMN, pkColumnValue = "project_snapshots",
+            allocationSize = IdGenerators.ALLOCATION_SIZE)
+    private Long id;
+
+    private String projectFolder;
+    private String name;
+    private String createdBy;
+    private String createdAt;
+    private int fileCount;
+}
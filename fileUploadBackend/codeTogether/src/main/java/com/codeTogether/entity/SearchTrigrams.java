@@ -0,0 +1,31 @@
+package com.codeTogether.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import jakarta.persistence.*;
+
+// Trigrams of one distinct content (by SHA-256), kept so the search index can be rebuilt
+// on startup without reading and inflating every file again
+@Entity
+@Table(name = "search_trigrams")
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class SearchTrigrams {
+
+    @Id
+    @Column(length = 64)
+    private String contentHash;
+
+    // Ascending trigrams, delta-encoded (see Trigrams.encode); empty for content that isn't indexed
+    @Lob
+    @Column(name = "trigrams", length = Integer.MAX_VALUE)
+    private byte[] trigrams;
+
+    // False for binary or oversized content, which is never searched
+    private boolean text;
+}
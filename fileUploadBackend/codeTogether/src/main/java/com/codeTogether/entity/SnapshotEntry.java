@@ -0,0 +1,41 @@
+package com.codeTogether.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import jakarta.persistence.*;
+
+// One file of a ProjectSnapshot: the version that was active and what a restore needs to make
+// it active again. Each entry holds a reference on the content blob, so the content outlives
+// the version row if history is compacted.
+@Entity
+@Table(name = "snapshot_entries", indexes = {
+    @Index(name = "idx_snapshot_entry_file", columnList = "snapshotId, fileName")
+})
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class SnapshotEntry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "snapshot_entries_id")
+    @TableGenerator(name = "snapshot_entries_id", table = IdGenerators.TABLE, pkColumnName = IdGenerators.KEY_COLUMN,
+            valueColumnName = IdGenerators.VALUE_COLUMN, pkColumnValue = "snapshot_entries",
+            allocationSize = IdGenerators.ALLOCATION_SIZE)
+    private Long id;
+
+    private Long snapshotId;
+    private String fileName;
+    private String projectFolder;
+    private String fileType;
+    private String uploadedBy;
+    private String role;
+    private int version;
+    private Long fileSize;
+
+    @Column(length = 64)
+    private String contentHash;
+}
@@ -0,0 +1,145 @@
+package com.codeTogether.repository;
+
+import com.codeTogether.entity.FileBlob;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import jakarta.persistence.LockModeType;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface FileBlobRepository extends JpaRepository<FileBlob, String> {
+
+    @Modifying
+    @Query("update FileBlob b set b.refCount = b.refCount + 1 where b.hash = :hash")
+    int incrementRefCount(@Param("hash") String hash);
+
+    // One statement for a whole batch of references; hashes appearing count times in the batch
+    @Modifying
+    @Query("update FileBlob b set b.refCount = b.refCount + :count where b.hash in :hashes")
+    int addRefCount(@Param("hashes") Collection<String> hashes, @Param("count") int count);
+
+    @Query("select b.hash from FileBlob b where b.hash in :hashes")
+    List<String> findExistingHashes(@Param("hashes") Collection<String> hashes);
+
+    @Modifying
+    @Query("update FileBlob b set b.refCount = b.refCount - 1 where b.hash = :hash and b.refCount > 0")
+    int decrementRefCount(@Param("hash") String hash);
+
+    @Modifying
+    @Query("delete from FileBlob b where b.hash = :hash and b.refCount <= 0")
+    int deleteIfUnreferenced(@Param("hash") String hash);
+
+    // Rows left without references, e.g. by a commit that failed after inserting them
+    @Query("select b.hash from FileBlob b where b.refCount <= 0 and (b.createdAt is null or b.createdAt < :cutoff) order by b.hash")
+    List<String> findUnreferencedBefore(@Param("cutoff") long cutoff, Limit limit);
+
+    // Replace a full blob's content with a delta against baseHash; no-op if it is already a delta.
+    // The delta is either passed as bytes or already appended to a pack segment at the location.
+    @Modifying
+    @Query("update FileBlob b set b.content = :delta, b.packSegment = :packSegment, b.packOffset = :packOffset, "
+            + "b.packLength = :packLength, b.deltaSize = :deltaSize, b.baseHash = :baseHash, "
+            + "b.encoding = com.codeTogether.entity.FileBlob.Encoding.DELTA "
+            + "where b.hash = :hash and (b.encoding is null or b.encoding = com.codeTogether.entity.FileBlob.Encoding.FULL)")
+    int storeAsDelta(@Param("hash") String hash, @Param("baseHash") String baseHash,
+                     @Param("delta") byte[] delta, @Param("deltaSize") long deltaSize, @Param("packSegment") Integer packSegment,
+                     @Param("packOffset") Long packOffset, @Param("packLength") Integer packLength);
+
+    @Modifying
+    @Query("update FileBlob b set b.deltaHeight = :height where b.hash = :hash and b.deltaHeight < :height")
+    int raiseDeltaHeight(@Param("hash") String hash, @Param("height") int height);
+
+    // Turn a delta blob back into a full copy of its content, given as bytes or as a pack location
+    @Modifying
+    @Query("update FileBlob b set b.content = :content, b.packSegment = :packSegment, b.packOffset = :packOffset, "
+            + "b.packLength = :packLength, b.codec = :codec, b.compressedSize = :compressedSize, "
+            + "b.deltaSize = null, b.baseHash = null, b.encoding = com.codeTogether.entity.FileBlob.Encoding.FULL "
+            + "where b.hash = :hash and b.encoding = com.codeTogether.entity.FileBlob.Encoding.DELTA")
+    int storeAsFull(@Param("hash") String hash, @Param("content") byte[] content, @Param("codec") String codec,
+                    @Param("compressedSize") long compressedSize, @Param("packSegment") Integer packSegment,
+                    @Param("packOffset") Long packOffset, @Param("packLength") Integer packLength);
+
+    // Bytes referenced per pack segment, for finding segments that are mostly garbage
+    @Query("select b.packSegment as segment, count(b) as records, sum(b.packLength) as payloadBytes "
+            + "from FileBlob b where b.packSegment is not null group by b.packSegment")
+    List<PackUsage> getPackUsage();
+
+    @Query("select b.hash as hash, b.packOffset as packOffset, b.packLength as packLength from FileBlob b "
+            + "where b.packSegment = :segment and b.hash > :afterHash order by b.hash")
+    List<PackedRecord> findPackedRecords(@Param("segment") int segment, @Param("afterHash") String afterHash, Limit limit);
+
+    long countByPackSegment(Integer packSegment);
+
+    // Point a blob at the copy of its record; no-op if the blob changed or went away meanwhile
+    @Modifying
+    @Query("update FileBlob b set b.packSegment = :newSegment, b.packOffset = :newOffset "
+            + "where b.hash = :hash and b.packSegment = :segment and b.packOffset = :offset")
+    int movePacked(@Param("hash") String hash, @Param("segment") int segment, @Param("offset") long offset,
+                   @Param("newSegment") int newSegment, @Param("newOffset") long newOffset);
+
+    @Query("select b.hash from FileBlob b where b.packSegment is null and b.hash > :afterHash order by b.hash")
+    List<String> findUnpackedHashes(@Param("afterHash") String afterHash, Limit limit);
+
+    // Locks the rows so that re-encoding by DeltaStorage waits until their content has moved
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select b from FileBlob b where b.hash in :hashes and b.packSegment is null")
+    List<FileBlob> findUnpackedForUpdate(@Param("hashes") Collection<String> hashes);
+
+    // Where a full blob coded with codec (null meaning deflate) keeps its data, without loading the content column
+    @Query("select b.packSegment as packSegment, b.packOffset as packOffset, b.packLength as packLength, "
+            + "b.compressedSize as compressedSize, b.crc32 as crc32 from FileBlob b where b.hash = :hash "
+            + "and (b.encoding is null or b.encoding = com.codeTogether.entity.FileBlob.Encoding.FULL) "
+            + "and (b.codec is null or b.codec = :codec)")
+    Optional<FullBlob> findFull(@Param("hash") String hash, @Param("codec") String codec);
+
+    // Content column of a full blob; empty once it has been re-encoded or moved to a pack segment
+    @Query("select b.content from FileBlob b where b.hash = :hash and b.packSegment is null "
+            + "and (b.encoding is null or b.encoding = com.codeTogether.entity.FileBlob.Encoding.FULL)")
+    Optional<byte[]> findFullContent(@Param("hash") String hash);
+
+    @Query("select count(b) as blobs, coalesce(sum(b.compressedSize), 0) as fullBytes, "
+            + "coalesce(sum(b.deltaSize), 0) as deltaBytes from FileBlob b "
+            + "where b.encoding = com.codeTogether.entity.FileBlob.Encoding.DELTA")
+    DeltaTotals getDeltaTotals();
+
+    interface PackUsage {
+        int getSegment();
+
+        long getRecords();
+
+        long getPayloadBytes();
+    }
+
+    interface PackedRecord {
+        String getHash();
+
+        long getPackOffset();
+
+        int getPackLength();
+    }
+
+    interface FullBlob {
+        Integer getPackSegment();
+
+        Long getPackOffset();
+
+        Integer getPackLength();
+
+        long getCompressedSize();
+
+        Long getCrc32();
+    }
+
+    interface DeltaTotals {
+        long getBlobs();
+
+        long getFullBytes();
+
+        long getDeltaBytes();
+    }
+}
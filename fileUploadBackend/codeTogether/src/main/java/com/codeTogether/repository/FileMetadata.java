@@ -0,0 +1,25 @@
+package com.codeTogether.repository;
+
+// Closed projection of FileData without the content column, used by the listing endpoints
+public interface FileMetadata {
+
+    Long getId();
+
+    String getFileName();
+
+    String getFileType();
+
+    String getUploadedBy();
+
+    String getRole();
+
+    String getProjectFolder();
+
+    String getUploadDate();
+
+    Long getFileSize();
+
+    String getContentHash();
+
+    int getVersion();
+}
@@ -0,0 +1,11 @@
+package com.codeTogether.repository;
+
+import com.codeTogether.entity.ProjectSnapshot;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+
+public interface ProjectSnapshotRepository extends JpaRepository<ProjectSnapshot, Long> {
+
+    List<ProjectSnapshot> findByProjectFolderOrderByIdDesc(String projectFolder);
+}
@@ -0,0 +1,15 @@
+package com.codeTogether.repository;
+
+import com.codeTogether.entity.SearchTrigrams;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface SearchTrigramsRepository extends JpaRepository<SearchTrigrams, String> {
+
+    // Without loading the row first, as deleteById would
+    @Modifying
+    @Query("delete from SearchTrigrams t where t.contentHash = :hash")
+    int deleteByHash(@Param("hash") String hash);
+}
@@ -0,0 +1,18 @@
+package com.codeTogether.repository;
+
+import com.codeTogether.entity.SnapshotEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface SnapshotEntryRepository extends JpaRepository<SnapshotEntry, Long> {
+
+    List<SnapshotEntry> findBySnapshotIdOrderByFileNameAsc(Long snapshotId);
+
+    @Modifying
+    @Query("delete from SnapshotEntry e where e.snapshotId = :snapshotId")
+    int deleteBySnapshotId(@Param("snapshotId") Long snapshotId);
+}
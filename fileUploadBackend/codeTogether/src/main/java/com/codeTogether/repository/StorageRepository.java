@@ -1,29 +1,88 @@
-package com.codeTogether.repository;
-
-import com.codeTogether.entity.FileData;
-import org.springframework.data.jpa.repository.JpaRepository;
-
-import java.util.List;
-import java.util.Optional;
-
-public interface StorageRepository extends JpaRepository<FileData, Long> {
-
-    Optional<FileData> findByFileName(String fileName);
-
-    Optional<FileData> findByFileNameAndVersionGreaterThan(String fileName, int version);
-
-    List<FileData> findByFileNameAndVersionLessThan(String fileName, int version);
-
-    List<FileData> findByVersionGreaterThan(int version);
-
-    List<FileData> findByVersionLessThan(int version);
-
-    // New method: find a file record by its name and exact version
-    Optional<FileData> findByFileNameAndVersion(String fileName, int version);
-
-    List<FileData> findByProjectFolder(String projectFolder);
-
-    void deleteByFileName(String fileName);
-
-    void deleteByProjectFolder(String folderName);
-}
+package com.codeTogether.repository;
+
+import com.codeTogether.entity.FileData;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface StorageRepository extends JpaRepository<FileData, Long> {
+
+    Optional<FileData> findByFileName(String fileName);
+
+    Optional<FileData> findByFileNameAndVersionGreaterThan(String fileName, int version);
+
+    List<FileData> findByFileNameAndVersionLessThan(String fileName, int version);
+
+    List<FileData> findByVersionGreaterThan(int version);
+
+    List<FileData> findByVersionLessThan(int version);
+
+    // New method: find a file record by its name and exact version
+    Optional<FileData> findByFileNameAndVersion(String fileName, int version);
+
+    List<FileData> findByProjectFolder(String projectFolder);
+
+    boolean existsByProjectFolder(String projectFolder);
+
+    boolean existsByContentHashAndVersionGreaterThan(String contentHash, int version);
+
+    // Metadata-only listings with keyset pagination: rows after the id cursor, in id order
+    List<FileMetadata> findMetadataByVersionGreaterThanAndIdGreaterThanOrderByIdAsc(int version, Long afterId, Limit limit);
+
+    List<FileMetadata> findMetadataByVersionLessThanAndIdGreaterThanOrderByIdAsc(int version, Long afterId, Limit limit);
+
+    List<FileMetadata> findMetadataByFileNameAndVersionLessThanAndIdGreaterThanOrderByIdAsc(String fileName, int version, Long afterId, Limit limit);
+
+    List<FileMetadata> findMetadataByProjectFolderAndIdGreaterThanOrderByIdAsc(String projectFolder, Long afterId, Limit limit);
+
+    Optional<FileMetadata> findMetadataByFileNameAndVersionGreaterThan(String fileName, int version);
+
+    // Rows in the subfolders of a folder (projectFolder starting with "<folder>/"), for exports
+    List<FileMetadata> findMetadataByProjectFolderStartingWithAndIdGreaterThanOrderByIdAsc(String prefix, Long afterId, Limit limit);
+
+    List<FileMetadata> findMetadataByProjectFolderAndVersionGreaterThanAndIdGreaterThanOrderByIdAsc(String projectFolder, int version,
+                                                                                                    Long afterId, Limit limit);
+
+    List<FileMetadata> findMetadataByProjectFolderStartingWithAndVersionGreaterThanAndIdGreaterThanOrderByIdAsc(String prefix, int version,
+                                                                                                                Long afterId, Limit limit);
+
+    List<FileMetadata> findMetadataByProjectFolderAndVersionLessThanAndIdGreaterThanOrderByIdAsc(String projectFolder, int version,
+                                                                                                 Long afterId, Limit limit);
+
+    // Files that have previous versions, in name order after the cursor
+    @Query("select distinct f.fileName from FileData f where f.version < 0 and f.fileName > :afterName order by f.fileName")
+    List<String> findFileNamesWithPreviousVersions(@Param("afterName") String afterName, Limit limit);
+
+    // Project folders whose previous versions add up to more than maxBytes of original content
+    @Query("select f.projectFolder as projectFolder, sum(f.fileSize) as bytes from FileData f where f.version < 0 "
+            + "group by f.projectFolder having sum(f.fileSize) > :maxBytes")
+    List<FolderBytes> findFoldersWithPreviousBytesOver(@Param("maxBytes") long maxBytes);
+
+    interface FolderBytes {
+        String getProjectFolder();
+
+        long getBytes();
+    }
+
+    List<FileData> findByFileNameInAndVersionGreaterThan(Collection<String> fileNames, int version);
+
+    // Highest version number each file has had, active or previous; files without versions are left out
+    @Query("select f.fileName as fileName, max(abs(f.version)) as maxVersion from FileData f "
+            + "where f.fileName in :fileNames group by f.fileName")
+    List<MaxVersion> findMaxVersions(@Param("fileNames") Collection<String> fileNames);
+
+    interface MaxVersion {
+        String getFileName();
+
+        int getMaxVersion();
+    }
+
+    void deleteByFileName(String fileName);
+
+    void deleteByProjectFolder(String folderName);
+}
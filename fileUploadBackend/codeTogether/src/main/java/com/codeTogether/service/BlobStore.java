@@ -0,0 +1,426 @@
+package com.codeTogether.service;
+
+import com.codeTogether.entity.FileBlob;
+import com.codeTogether.repository.FileBlobRepository;
+import com.codeTogether.repository.SearchTrigramsRepository;
+import com.codeTogether.util.CompressionCodec;
+import com.codeTogether.util.ContentIngest;
+import com.codeTogether.util.DeltaCodec;
+import com.codeTogether.util.FileUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.PersistenceException;
+import jakarta.transaction.Transactional;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+// Content-addressed store for compressed file content. Every FileData version that
+// points at a blob holds one reference; the blob row goes away with the last one.
+// New content goes to the row's content column, or with storage.blob.backend=pack to a
+// PackStore segment with only its location in the row; either kind of row can be read.
+@Service
+public class BlobStore {
+
+    @Autowired
+    private FileBlobRepository blobRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private DeltaStats deltaStats;
+
+    @Autowired
+    private PackStore packStore;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private CompressionPolicy compressionPolicy;
+
+    @Autowired
+    private SearchTrigramsRepository trigramsRepository;
+
+    // database or pack
+    @Value("${storage.blob.backend:database}")
+    private String backend;
+
+    private TransactionTemplate insertTransaction;
+
+    @PostConstruct
+    void init() {
+        if (!backend.equals("database") && !backend.equals("pack")) {
+            throw new IllegalArgumentException("Unknown storage.blob.backend: " + backend);
+        }
+        insertTransaction = new TransactionTemplate(transactionManager);
+        insertTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    // Take a reference on the blob for hash, storing the compressed bytes only if no blob has that hash yet.
+    // The row is created unreferenced in its own transaction (before this transaction takes any locks on
+    // file_blobs) so that two uploads of the same new content don't collide on the primary key; the
+    // reference is then taken in the caller's transaction. A row left unreferenced because that
+    // transaction failed is deleted by HistoryCompactor's sweep after a grace period.
+    @Transactional
+    public void acquire(String hash, byte[] compressed, String codec, long originalSize, long crc32) {
+        if (!blobRepository.existsById(hash)) {
+            insertUnreferenced(hash, compressed, codec, originalSize, crc32);
+        }
+        if (blobRepository.incrementRefCount(hash) != 1) {
+            // An unreferenced row swept since it was found; stored again
+            insertUnreferenced(hash, compressed, codec, originalSize, crc32);
+            retain(hash);
+        }
+    }
+
+    private void insertUnreferenced(String hash, byte[] compressed, String codec, long originalSize, long crc32) {
+        FileBlob blob = newBlob(hash, codec, originalSize, crc32, compressed.length);
+        if (usesPacks()) {
+            pack(blob, packStore.append(hash, compressed));
+        } else {
+            blob.setContent(compressed);
+        }
+        insertUnreferenced(List.of(blob), Map.of());
+    }
+
+    // acquire() for ingested content, whose compressed bytes are copied from its file
+    @Transactional
+    public void acquire(ContentIngest.Result content) {
+        acquireAll(List.of(content));
+    }
+
+    // acquire() for a batch of ingested contents: existence is checked with one query, new blobs
+    // are inserted as one JDBC batch and references are taken with one update per distinct count
+    @Transactional
+    public void acquireAll(List<ContentIngest.Result> contents) {
+        Map<String, ContentIngest.Result> byHash = new LinkedHashMap<>();
+        Map<String, Integer> references = new HashMap<>();
+        for (ContentIngest.Result content : contents) {
+            byHash.putIfAbsent(content.sha256(), content);
+            references.merge(content.sha256(), 1, Integer::sum);
+        }
+        Set<String> missing = new LinkedHashSet<>(byHash.keySet());
+        blobRepository.findExistingHashes(byHash.keySet()).forEach(missing::remove);
+        insertUnreferenced(missing, byHash);
+        Set<String> swept = addReferences(references);
+        if (!swept.isEmpty()) {
+            // Unreferenced rows swept since they were found; stored again
+            insertUnreferenced(swept, byHash);
+            Map<String, Integer> retry = new HashMap<>();
+            swept.forEach(hash -> retry.put(hash, references.get(hash)));
+            requireAll(addReferences(retry));
+        }
+    }
+
+    private void insertUnreferenced(Set<String> missing, Map<String, ContentIngest.Result> byHash) {
+        if (!missing.isEmpty()) {
+            List<FileBlob> blobs = new ArrayList<>();
+            Map<String, Path> files = new LinkedHashMap<>();
+            for (String hash : missing) {
+                ContentIngest.Result content = byHash.get(hash);
+                blobs.add(newBlob(hash, content.codecId(), content.size(), content.crc32(), content.compressedSize()));
+                files.put(hash, content.compressed());
+            }
+            if (usesPacks()) {
+                // One forced append for the whole batch
+                Map<String, PackStore.Location> locations = packStore.appendFiles(files);
+                blobs.forEach(blob -> pack(blob, locations.get(blob.getHash())));
+                files.clear();
+            }
+            if (!insertUnreferenced(blobs, files)) {
+                // Some were inserted concurrently; insert the rest one at a time
+                blobs.forEach(blob -> insertUnreferenced(List.of(blob), files));
+            }
+        }
+    }
+
+    // retain() for many hashes, one reference per occurrence, e.g. for the versions of a snapshot
+    @Transactional
+    public void retainAll(Collection<String> hashes) {
+        Map<String, Integer> references = new HashMap<>();
+        for (String hash : hashes) {
+            references.merge(hash, 1, Integer::sum);
+        }
+        requireAll(addReferences(references));
+    }
+
+    // One update per distinct count; returns the hashes that have no blob
+    private Set<String> addReferences(Map<String, Integer> references) {
+        Map<Integer, List<String>> hashesByCount = new HashMap<>();
+        references.forEach((hash, count) -> hashesByCount.computeIfAbsent(count, c -> new ArrayList<>()).add(hash));
+        Set<String> notFound = new LinkedHashSet<>();
+        hashesByCount.forEach((count, hashes) -> {
+            if (blobRepository.addRefCount(hashes, count) != hashes.size()) {
+                notFound.addAll(hashes);
+                blobRepository.findExistingHashes(hashes).forEach(notFound::remove);
+            }
+        });
+        return notFound;
+    }
+
+    private static void requireAll(Set<String> notFound) {
+        if (!notFound.isEmpty()) {
+            throw new RuntimeException("Content blob not found while taking references: " + notFound);
+        }
+    }
+
+    // Inserts unreferenced rows in a separate transaction; false if any of them already existed.
+    // Content in contentFiles is streamed into the rows' content column after they are inserted.
+    private boolean insertUnreferenced(List<FileBlob> blobs, Map<String, Path> contentFiles) {
+        try {
+            insertTransaction.executeWithoutResult(status -> {
+                blobs.forEach(entityManager::persist);
+                entityManager.flush();
+                for (FileBlob blob : blobs) {
+                    Path file = contentFiles.get(blob.getHash());
+                    if (file != null) {
+                        writeContent(blob.getHash(), file, blob.getCompressedSize());
+                    }
+                }
+            });
+            return true;
+        } catch (DataIntegrityViolationException | PersistenceException e) {
+            // Inserted concurrently by another upload of the same content
+            return false;
+        }
+    }
+
+    // Handed to the driver as a stream, so the content isn't read onto the heap here
+    private void writeContent(String hash, Path file, long length) {
+        try (InputStream in = Files.newInputStream(file)) {
+            jdbcTemplate.update("update file_blobs set content = ? where hash = ?", statement -> {
+                statement.setBinaryStream(1, in, length);
+                statement.setString(2, hash);
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read compressed content of " + hash, e);
+        }
+    }
+
+    private static FileBlob newBlob(String hash, String codec, long originalSize, long crc32, long compressedSize) {
+        return FileBlob.builder()
+                .hash(hash)
+                .originalSize(originalSize)
+                .crc32(crc32)
+                .codec(codec)
+                .compressedSize(compressedSize)
+                .createdAt(System.currentTimeMillis())
+                .encoding(FileBlob.Encoding.FULL)
+                .refCount(0)
+                .build();
+    }
+
+    public boolean usesPacks() {
+        return backend.equals("pack");
+    }
+
+    static void pack(FileBlob blob, PackStore.Location location) {
+        blob.setContent(null);
+        blob.setPackSegment(location.segment());
+        blob.setPackOffset(location.offset());
+        blob.setPackLength(location.length());
+    }
+
+    // The stored bytes of the blob (compressed content, or the compressed delta of a delta blob)
+    public byte[] payload(FileBlob blob) {
+        return blob.isPacked() ? packStore.readBytes(blob.getHash(), location(blob)) : blob.getContent();
+    }
+
+    private static PackStore.Location location(FileBlob blob) {
+        return new PackStore.Location(blob.getPackSegment(), blob.getPackOffset(), blob.getPackLength());
+    }
+
+    // Take another reference on an existing blob, e.g. when a rollback points a new version at old content
+    @Transactional
+    public void retain(String hash) {
+        if (blobRepository.incrementRefCount(hash) != 1) {
+            throw new RuntimeException("Content blob not found: " + hash);
+        }
+    }
+
+    // Deletes up to limit blobs that nothing references and that were inserted before cutoff, e.g.
+    // ones inserted for a version whose commit then failed. Returns the hashes deleted.
+    @Transactional
+    public List<String> deleteUnreferencedBefore(long cutoff, int limit) {
+        List<String> deleted = new ArrayList<>();
+        for (String hash : blobRepository.findUnreferencedBefore(cutoff, Limit.of(limit))) {
+            String baseHash = blobRepository.findById(hash).map(FileBlob::getBaseHash).orElse(null);
+            if (blobRepository.deleteIfUnreferenced(hash) == 1) {
+                trigramsRepository.deleteByHash(hash);
+                deleted.add(hash);
+                if (baseHash != null) {
+                    release(baseHash);
+                }
+            }
+        }
+        return deleted;
+    }
+
+    // Drop a reference and delete the blob once nothing points at it. A deleted delta
+    // blob in turn releases the base it was encoded against.
+    @Transactional
+    public void release(String hash) {
+        String baseHash = blobRepository.findById(hash).map(FileBlob::getBaseHash).orElse(null);
+        blobRepository.decrementRefCount(hash);
+        if (blobRepository.deleteIfUnreferenced(hash) == 1) {
+            // The search index keeps the trigrams of content by hash
+            trigramsRepository.deleteByHash(hash);
+            if (baseHash != null) {
+                release(baseHash);
+            }
+        }
+    }
+
+    public boolean exists(String hash) {
+        return blobRepository.existsById(hash);
+    }
+
+    public Optional<FileBlob> find(String hash) {
+        return blobRepository.findById(hash);
+    }
+
+    // Stored data of a full blob coded with codec, for passing it on without decoding it. Packed data
+    // is a slice of the mapped segment; data in the content column is read onto the heap, so only
+    // when it is at most maxColumnBytes. Empty for deltas, other codecs and larger column content.
+    public Optional<StoredData> findStoredData(String hash, String codec, long maxColumnBytes) {
+        Optional<FileBlobRepository.FullBlob> full = blobRepository.findFull(hash, codec);
+        if (full.isEmpty()) {
+            return Optional.empty();
+        }
+        FileBlobRepository.FullBlob blob = full.get();
+        if (blob.getPackSegment() != null) {
+            PackStore.Location location = new PackStore.Location(blob.getPackSegment(), blob.getPackOffset(), blob.getPackLength());
+            return Optional.of(new StoredData(packStore.read(hash, location), blob.getCrc32()));
+        }
+        // A size of 0 was never recorded
+        if (blob.getCompressedSize() <= 0 || blob.getCompressedSize() > maxColumnBytes) {
+            return Optional.empty();
+        }
+        return blobRepository.findFullContent(hash).map(content -> new StoredData(ByteBuffer.wrap(content), blob.getCrc32()));
+    }
+
+    public record StoredData(ByteBuffer data, Long crc32) {
+    }
+
+    // Uncompressed content as a stream; full blobs are inflated lazily, deltas are reconstructed up front
+    public InputStream openContent(String hash) {
+        FileBlob blob = load(hash);
+        if (blob.isDelta()) {
+            return new ByteArrayInputStream(readContent(hash));
+        }
+        CompressionCodec codec = CompressionCodec.forId(blob.getCodec());
+        if (!blob.isPacked()) {
+            return codec.openDecompressed(blob.getContent());
+        }
+        try {
+            // Inflated straight from the mapped segment
+            return codec.decompress(packStore.open(hash, location(blob)));
+        } catch (IOException e) {
+            throw new RuntimeException("Error decompressing file", e);
+        }
+    }
+
+    // Uncompressed content, applying the chain of deltas down to the nearest full blob
+    public byte[] readContent(String hash) {
+        long start = System.nanoTime();
+        Deque<byte[]> deltas = new ArrayDeque<>();
+        FileBlob blob = load(hash);
+        while (blob.isDelta()) {
+            deltas.push(payload(blob));
+            blob = load(blob.getBaseHash());
+        }
+        int depth = deltas.size();
+        byte[] content = CompressionCodec.forId(blob.getCodec()).decompress(payload(blob), blob.getOriginalSize());
+        while (!deltas.isEmpty()) {
+            content = DeltaCodec.apply(content, FileUtils.decompressFile(deltas.pop()));
+        }
+        if (depth > 0) {
+            deltaStats.recordReconstruction(depth, System.nanoTime() - start);
+        }
+        return content;
+    }
+
+    // Re-encode a full blob as a delta against another full blob, which it then keeps a reference on.
+    // The chains resting on the blob now continue through it into the base.
+    @Transactional
+    public boolean storeAsDelta(String hash, String baseHash, byte[] compressedDelta) {
+        if (load(baseHash).isDelta()) {
+            return false;
+        }
+        int height = load(hash).getDeltaHeight() + 1;
+        int stored;
+        if (usesPacks()) {
+            PackStore.Location location = packStore.append(hash, compressedDelta);
+            stored = blobRepository.storeAsDelta(hash, baseHash, null, compressedDelta.length,
+                    location.segment(), location.offset(), location.length());
+        } else {
+            stored = blobRepository.storeAsDelta(hash, baseHash, compressedDelta, compressedDelta.length, null, null, null);
+        }
+        if (stored == 1) {
+            retain(baseHash);
+            blobRepository.raiseDeltaHeight(baseHash, height);
+            return true;
+        }
+        return false;
+    }
+
+    // Turn a delta blob back into a full copy, e.g. when a rollback makes it the active content again
+    @Transactional
+    public boolean materialize(String hash) {
+        FileBlob blob = load(hash);
+        if (!blob.isDelta()) {
+            return false;
+        }
+        CompressionCodec codec = compressionPolicy.defaultCodec();
+        byte[] compressed = codec.compress(readContent(hash));
+        int stored;
+        if (usesPacks()) {
+            PackStore.Location location = packStore.append(hash, compressed);
+            stored = blobRepository.storeAsFull(hash, null, codec.id(), compressed.length,
+                    location.segment(), location.offset(), location.length());
+        } else {
+            stored = blobRepository.storeAsFull(hash, compressed, codec.id(), compressed.length, null, null, null);
+        }
+        if (stored == 1) {
+            release(blob.getBaseHash());
+            return true;
+        }
+        return false;
+    }
+
+    private FileBlob load(String hash) {
+        return blobRepository.findById(hash)
+                .orElseThrow(() -> new RuntimeException("Content blob not found: " + hash));
+    }
+}
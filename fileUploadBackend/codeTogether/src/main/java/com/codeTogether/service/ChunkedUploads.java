@@ -0,0 +1,305 @@
+package com.codeTogether.service;
+
+import com.codeTogether.entity.FileData;
+import com.codeTogether.util.ZlibPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Resumable uploads of large files. A session owns a staging file of the declared size;
+// chunks are written into it at their offsets (several at once if the client likes) and
+// the received ranges are tracked, so after a dropped connection only the missing ranges
+// are sent again. Commit stores the staged content as a new version like a normal upload.
+// Sessions live in memory and expire after session-ttl-ms without activity. Each one holds an
+// open staging file until then, so their number is capped globally and per user, and the
+// declared size is capped by max-total-size.
+@Service
+public class ChunkedUploads {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChunkedUploads.class);
+    private static final Path STAGING_DIR = Paths.get("uploads", ".chunked");
+
+    @Autowired
+    private StorageService storageService;
+
+    @Value("${storage.chunked.session-ttl-ms:86400000}")
+    private long sessionTtlMillis;
+
+    @Value("${storage.chunked.max-sessions:256}")
+    private int maxSessions;
+
+    @Value("${storage.chunked.max-user-sessions:8}")
+    private int maxUserSessions;
+
+    @Value("${storage.chunked.max-total-size:10737418240}")
+    private long maxTotalSize;
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+    public record Range(long start, long end) {
+    }
+
+    public record UploadStatus(String uploadId, String fileName, long totalSize, long receivedBytes,
+                               List<Range> missing, long expiresAt) {
+    }
+
+    @ResponseStatus(HttpStatus.NOT_FOUND)
+    public static class UploadNotFoundException extends RuntimeException {
+
+        public UploadNotFoundException(String uploadId) {
+            super("Upload session not found or expired: " + uploadId);
+        }
+    }
+
+    @ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+    public static class TooManySessionsException extends RuntimeException {
+
+        public TooManySessionsException(String message) {
+            super(message);
+        }
+    }
+
+    private static class Session {
+        final String id;
+        final String fileName;
+        final String fileType;
+        final long totalSize;
+        final String uploadedBy;
+        final String role;
+        final String projectFolder;
+        final Path stagingFile;
+        final FileChannel channel;
+        // Chunk writes share the lock; commit, cancel and expiry take it exclusively
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        // Received ranges as start -> end, merged and non-overlapping; guarded by this
+        final TreeMap<Long, Long> received = new TreeMap<>();
+        volatile long lastActivity = System.currentTimeMillis();
+        boolean finished;
+
+        Session(String id, String fileName, String fileType, long totalSize, String uploadedBy, String role,
+                String projectFolder, Path stagingFile, FileChannel channel) {
+            this.id = id;
+            this.fileName = fileName;
+            this.fileType = fileType;
+            this.totalSize = totalSize;
+            this.uploadedBy = uploadedBy;
+            this.role = role;
+            this.projectFolder = projectFolder;
+            this.stagingFile = stagingFile;
+            this.channel = channel;
+        }
+
+        synchronized void addRange(long start, long end) {
+            Map.Entry<Long, Long> before = received.floorEntry(start);
+            if (before != null && before.getValue() >= start) {
+                start = before.getKey();
+                end = Math.max(end, before.getValue());
+            }
+            Map.Entry<Long, Long> next = received.ceilingEntry(start);
+            while (next != null && next.getKey() <= end) {
+                end = Math.max(end, next.getValue());
+                received.remove(next.getKey());
+                next = received.ceilingEntry(start);
+            }
+            received.put(start, end);
+        }
+
+        synchronized UploadStatus status(long ttlMillis) {
+            List<Range> missing = new ArrayList<>();
+            long receivedBytes = 0;
+            long position = 0;
+            for (Map.Entry<Long, Long> range : received.entrySet()) {
+                if (range.getKey() > position) {
+                    missing.add(new Range(position, range.getKey()));
+                }
+                receivedBytes += range.getValue() - range.getKey();
+                position = range.getValue();
+            }
+            if (position < totalSize) {
+                missing.add(new Range(position, totalSize));
+            }
+            return new UploadStatus(id, fileName, totalSize, receivedBytes, missing, lastActivity + ttlMillis);
+        }
+    }
+
+    @PostConstruct
+    void init() throws IOException {
+        // Sessions don't survive a restart, so staging files left behind are unreachable
+        FileSystemUtils.deleteRecursively(STAGING_DIR);
+        Files.createDirectories(STAGING_DIR);
+    }
+
+    public UploadStatus create(String fileName, String fileType, long totalSize, String uploadedBy, String role,
+                               String projectFolder) throws IOException {
+        if (fileName == null || fileName.isBlank() || totalSize < 0) {
+            throw new IllegalArgumentException("A file name and a non-negative total size are required");
+        }
+        if (totalSize > maxTotalSize) {
+            throw new IllegalArgumentException("Total size " + totalSize + " exceeds the limit of " + maxTotalSize + " bytes");
+        }
+        String id = UUID.randomUUID().toString();
+        Path stagingFile = STAGING_DIR.resolve(id + ".part");
+        // Checked and added together, so concurrent creates can't overshoot the limits
+        synchronized (sessions) {
+            if (sessions.size() >= maxSessions) {
+                throw new TooManySessionsException("Too many upload sessions are open, try again later");
+            }
+            if (sessions.values().stream().filter(open -> open.uploadedBy.equals(uploadedBy)).count() >= maxUserSessions) {
+                throw new TooManySessionsException(uploadedBy + " already has " + maxUserSessions
+                        + " upload sessions open; commit or cancel one first");
+            }
+            FileChannel channel = FileChannel.open(stagingFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            Session session = new Session(id, fileName, fileType, totalSize, uploadedBy, role, projectFolder, stagingFile, channel);
+            sessions.put(id, session);
+            return session.status(sessionTtlMillis);
+        }
+    }
+
+    // Writes the request body at offset with positional writes, so chunks of one upload can be
+    // written concurrently. The range only counts as received once the whole body is written.
+    public UploadStatus writeChunk(String uploadId, long offset, InputStream body) throws IOException {
+        Session session = find(uploadId);
+        if (offset < 0 || offset > session.totalSize) {
+            throw new IllegalArgumentException("Offset " + offset + " is outside the upload of " + session.totalSize + " bytes");
+        }
+        session.lock.readLock().lock();
+        byte[] buffer = ZlibPool.borrowBuffer();
+        try {
+            if (session.finished) {
+                throw new UploadNotFoundException(uploadId);
+            }
+            long position = offset;
+            ByteBuffer chunk = ByteBuffer.wrap(buffer);
+            int n;
+            while ((n = body.read(buffer)) != -1) {
+                if (position + n > session.totalSize) {
+                    throw new IllegalArgumentException("Chunk at offset " + offset + " extends past the upload of "
+                            + session.totalSize + " bytes");
+                }
+                chunk.clear().limit(n);
+                while (chunk.hasRemaining()) {
+                    position += session.channel.write(chunk, position);
+                }
+                session.lastActivity = System.currentTimeMillis();
+            }
+            if (position > offset) {
+                session.addRange(offset, position);
+            }
+            return session.status(sessionTtlMillis);
+        } finally {
+            ZlibPool.releaseBuffer(buffer);
+            session.lock.readLock().unlock();
+        }
+    }
+
+    public UploadStatus status(String uploadId) {
+        return find(uploadId).status(sessionTtlMillis);
+    }
+
+    // Stores the staged file as a new version once every byte has been received
+    public FileData commit(String uploadId) throws IOException {
+        Session session = find(uploadId);
+        session.lock.writeLock().lock();
+        try {
+            if (session.finished) {
+                throw new UploadNotFoundException(uploadId);
+            }
+            UploadStatus status = session.status(sessionTtlMillis);
+            if (!status.missing().isEmpty()) {
+                throw new IllegalStateException("Upload is incomplete, missing " + status.missing());
+            }
+            session.channel.force(false);
+            FileData saved;
+            try (InputStream in = Files.newInputStream(session.stagingFile)) {
+                saved = storageService.uploadFile(in, session.fileName, session.fileType, session.uploadedBy,
+                        session.role, session.projectFolder);
+            }
+            discard(session);
+            return saved;
+        } finally {
+            session.lock.writeLock().unlock();
+        }
+    }
+
+    public void cancel(String uploadId) throws IOException {
+        Session session = find(uploadId);
+        session.lock.writeLock().lock();
+        try {
+            discard(session);
+        } finally {
+            session.lock.writeLock().unlock();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${storage.chunked.expiry-check-ms:60000}")
+    public void expireSessions() {
+        long cutoff = System.currentTimeMillis() - sessionTtlMillis;
+        for (Session session : sessions.values()) {
+            if (session.lastActivity >= cutoff || !session.lock.writeLock().tryLock()) {
+                continue;
+            }
+            try {
+                if (session.lastActivity < cutoff) {
+                    LOGGER.info("Upload session {} for {} expired", session.id, session.fileName);
+                    discard(session);
+                }
+            } catch (IOException e) {
+                LOGGER.warn("Could not remove the staging file of upload session {}", session.id, e);
+            } finally {
+                session.lock.writeLock().unlock();
+            }
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        for (Session session : sessions.values()) {
+            try {
+                session.channel.close();
+            } catch (IOException e) {
+                LOGGER.debug("Could not close the staging file of upload session {}", session.id, e);
+            }
+        }
+    }
+
+    private Session find(String uploadId) {
+        Session session = sessions.get(uploadId);
+        if (session == null) {
+            throw new UploadNotFoundException(uploadId);
+        }
+        return session;
+    }
+
+    // Called with the session's write lock held
+    private void discard(Session session) throws IOException {
+        session.finished = true;
+        sessions.remove(session.id, session);
+        session.channel.close();
+        Files.deleteIfExists(session.stagingFile);
+    }
+}
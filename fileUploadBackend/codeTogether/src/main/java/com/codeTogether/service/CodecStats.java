@@ -0,0 +1,52 @@
+package com.codeTogether.service;
+
+import com.codeTogether.util.ContentIngest;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Upload throughput and CPU cost per compression codec
+@Component
+public class CodecStats {
+
+    public record CodecSummary(String codec, long uploads, long bytesIn, long bytesOut, double compressionRatio,
+                               double compressMBPerSecond, double cpuMillisPerMB) {
+    }
+
+    private static class Recorder {
+        final LongAdder uploads = new LongAdder();
+        final LongAdder bytesIn = new LongAdder();
+        final LongAdder bytesOut = new LongAdder();
+        final LongAdder compressNanos = new LongAdder();
+        final LongAdder cpuNanos = new LongAdder();
+    }
+
+    private final Map<String, Recorder> byCodec = new ConcurrentSkipListMap<>();
+
+    public void record(ContentIngest.Result result) {
+        Recorder recorder = byCodec.computeIfAbsent(result.codecId(), id -> new Recorder());
+        recorder.uploads.increment();
+        recorder.bytesIn.add(result.size());
+        recorder.bytesOut.add(result.compressedSize());
+        recorder.compressNanos.add(result.compressNanos());
+        recorder.cpuNanos.add(result.cpuNanos());
+    }
+
+    public List<CodecSummary> summaries() {
+        List<CodecSummary> result = new ArrayList<>();
+        byCodec.forEach((codec, recorder) -> {
+            double megabytes = recorder.bytesIn.sum() / (1024.0 * 1024.0);
+            long bytesIn = recorder.bytesIn.sum();
+            long compressNanos = recorder.compressNanos.sum();
+            result.add(new CodecSummary(codec, recorder.uploads.sum(), bytesIn, recorder.bytesOut.sum(),
+                    bytesIn == 0 ? 0 : (double) recorder.bytesOut.sum() / bytesIn,
+                    compressNanos == 0 ? 0 : megabytes / (compressNanos / 1e9),
+                    megabytes == 0 ? 0 : recorder.cpuNanos.sum() / 1e6 / megabytes));
+        });
+        return result;
+    }
+}
@@ -0,0 +1,114 @@
+package com.codeTogether.service;
+
+import com.codeTogether.util.CompressionCodec;
+import com.codeTogether.util.DeflateCodec;
+import com.codeTogether.util.Lz4Codec;
+import com.codeTogether.util.NoneCodec;
+import com.codeTogether.util.ZlibPool;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+// Picks the codec for an upload: already-compressed formats (by content type or extension)
+// are stored as-is, other content is probed by deflating its first block at the fastest
+// level, and only content that actually shrinks goes through the configured codec.
+@Component
+public class CompressionPolicy {
+
+    private static final Set<String> COMPRESSED_EXTENSIONS = Set.of(
+            "png", "jpg", "jpeg", "gif", "webp", "avif", "heic", "ico",
+            "zip", "jar", "war", "ear", "gz", "tgz", "bz2", "xz", "zst", "7z", "rar", "lz4",
+            "mp3", "mp4", "m4a", "aac", "ogg", "opus", "webm", "mov", "avi", "mkv",
+            "woff", "woff2", "pdf", "docx", "xlsx", "pptx", "odt", "apk");
+
+    private static final Set<String> COMPRESSED_TYPES = Set.of(
+            "application/zip", "application/gzip", "application/x-gzip", "application/java-archive",
+            "application/x-7z-compressed", "application/x-rar-compressed", "application/x-bzip2",
+            "application/x-xz", "application/zstd", "application/pdf", "font/woff", "font/woff2");
+
+    // Codec for compressible content: deflate or lz4
+    @Value("${storage.compression.codec:deflate}")
+    private String defaultCodecId;
+
+    @Value("${storage.compression.deflate-level:6}")
+    private int deflateLevel;
+
+    // Content whose probe block doesn't compress below this ratio is stored uncompressed
+    @Value("${storage.compression.probe-max-ratio:0.9}")
+    private double probeMaxRatio;
+
+    private CompressionCodec defaultCodec;
+
+    @PostConstruct
+    void init() {
+        defaultCodec = switch (defaultCodecId) {
+            case DeflateCodec.ID -> new DeflateCodec(deflateLevel);
+            case Lz4Codec.ID -> Lz4Codec.INSTANCE;
+            case NoneCodec.ID -> NoneCodec.INSTANCE;
+            default -> throw new IllegalArgumentException("Unknown storage.compression.codec: " + defaultCodecId);
+        };
+    }
+
+    // Codec for compressible content written outside an upload, e.g. a delta blob made full again
+    public CompressionCodec defaultCodec() {
+        return defaultCodec;
+    }
+
+    // Level for deflate data that must stay deflate whatever the codec, e.g. delta payloads
+    public int deflateLevel() {
+        return deflateLevel;
+    }
+
+    public CompressionCodec choose(String contentType, String fileName, byte[] firstBlock) {
+        if (isCompressedFormat(contentType, fileName) || !probeCompresses(firstBlock)) {
+            return NoneCodec.INSTANCE;
+        }
+        return defaultCodec;
+    }
+
+    // Also how VersionDiffs recognizes binary files without reading them
+    static boolean isCompressedFormat(String contentType, String fileName) {
+        if (contentType != null) {
+            String type = contentType.toLowerCase(Locale.ROOT);
+            int parameters = type.indexOf(';');
+            if (parameters >= 0) {
+                type = type.substring(0, parameters).trim();
+            }
+            if (COMPRESSED_TYPES.contains(type)
+                    || (type.startsWith("image/") && !type.equals("image/svg+xml") && !type.equals("image/bmp"))
+                    || type.startsWith("video/") || type.startsWith("audio/")) {
+                return true;
+            }
+        }
+        if (fileName != null) {
+            int dot = fileName.lastIndexOf('.');
+            return dot >= 0 && COMPRESSED_EXTENSIONS.contains(fileName.substring(dot + 1).toLowerCase(Locale.ROOT));
+        }
+        return false;
+    }
+
+    private boolean probeCompresses(byte[] block) {
+        if (block.length < 256) {
+            // Too small to judge; compressing it is cheap either way
+            return true;
+        }
+        Deflater deflater = ZlibPool.borrowDeflater(Deflater.BEST_SPEED);
+        byte[] out = ZlibPool.borrowBuffer();
+        try {
+            deflater.setInput(block);
+            deflater.finish();
+            int compressedLength = 0;
+            while (!deflater.finished() && compressedLength < out.length) {
+                compressedLength += deflater.deflate(out, compressedLength, out.length - compressedLength);
+            }
+            return deflater.finished() && compressedLength < block.length * probeMaxRatio;
+        } finally {
+            ZlibPool.releaseBuffer(out);
+            ZlibPool.releaseDeflater(deflater, Deflater.BEST_SPEED);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.codeTogether.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+// Decompressed content of recently downloaded versions, so hot files are served without
+// reading the blob from the database and inflating it again. Bounded by total bytes with
+// Caffeine's W-TinyLFU eviction; files larger than max-entry-bytes are never cached.
+// Entries are keyed by (fileName, version) and evicted when a commit changes that version.
+@Component
+public class ContentCache {
+
+    // Per-entry bookkeeping counted on top of the content bytes
+    private static final int ENTRY_OVERHEAD = 128;
+
+    @Value("${storage.cache.max-bytes:67108864}")
+    private long maxBytes;
+
+    @Value("${storage.cache.max-entry-bytes:4194304}")
+    private long maxEntryBytes;
+
+    private Cache<Key, Entry> cache;
+
+    public record Key(String fileName, int version) {
+    }
+
+    // content is the full decompressed file; zlibData/crc32 are the stored deflate stream when
+    // it can be passed through to clients, otherwise null
+    public record Entry(byte[] content, byte[] zlibData, Long crc32) {
+
+        int weight() {
+            return ENTRY_OVERHEAD + content.length + (zlibData != null ? zlibData.length : 0);
+        }
+    }
+
+    public record Summary(long hits, long misses, double hitRate, long evictions, long evictedBytes,
+                          long bytesHeld, long entries, long maxBytes) {
+    }
+
+    @PostConstruct
+    void init() {
+        cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((Key key, Entry entry) -> entry.weight())
+                .recordStats()
+                .build();
+    }
+
+    // Cached entry for the version, loading it on a miss; empty if the file is too large to cache
+    public Optional<Entry> get(String fileName, int version, long size, Supplier<Entry> loader) {
+        if (size > maxEntryBytes) {
+            return Optional.empty();
+        }
+        return Optional.of(cache.get(new Key(fileName, version), key -> loader.get()));
+    }
+
+    public long maxEntryBytes() {
+        return maxEntryBytes;
+    }
+
+    public void invalidate(String fileName, int version) {
+        cache.invalidate(new Key(fileName, version));
+    }
+
+    public Summary summary() {
+        CacheStats stats = cache.stats();
+        long bytesHeld = cache.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L);
+        return new Summary(stats.hitCount(), stats.missCount(), stats.hitRate(), stats.evictionCount(),
+                stats.evictionWeight(), bytesHeld, cache.estimatedSize(), maxBytes);
+    }
+}
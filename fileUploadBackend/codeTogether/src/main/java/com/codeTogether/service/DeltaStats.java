@@ -0,0 +1,44 @@
+package com.codeTogether.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Reconstruction latency of delta-encoded versions, grouped by how many deltas had to be applied
+@Component
+public class DeltaStats {
+
+    public record DepthLatency(int depth, long count, double avgMillis, double maxMillis) {
+    }
+
+    private static class Recorder {
+        final LongAdder count = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    }
+
+    private final Map<Integer, Recorder> byDepth = new ConcurrentSkipListMap<>();
+
+    public void recordReconstruction(int depth, long nanos) {
+        Recorder recorder = byDepth.computeIfAbsent(depth, d -> new Recorder());
+        recorder.count.increment();
+        recorder.totalNanos.add(nanos);
+        recorder.maxNanos.accumulate(nanos);
+    }
+
+    public List<DepthLatency> reconstructionByDepth() {
+        List<DepthLatency> result = new ArrayList<>();
+        byDepth.forEach((depth, recorder) -> {
+            long count = recorder.count.sum();
+            result.add(new DepthLatency(depth, count,
+                    count == 0 ? 0 : recorder.totalNanos.sum() / 1e6 / count,
+                    recorder.maxNanos.get() / 1e6));
+        });
+        return result;
+    }
+}
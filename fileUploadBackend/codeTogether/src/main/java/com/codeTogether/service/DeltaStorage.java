@@ -0,0 +1,142 @@
+package com.codeTogether.service;
+
+import com.codeTogether.entity.FileBlob;
+import com.codeTogether.repository.FileBlobRepository;
+import com.codeTogether.repository.StorageRepository;
+import com.codeTogether.util.DeltaCodec;
+import com.codeTogether.util.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import jakarta.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Delta storage mode for version history: when a version stops being active its blob is
+// re-encoded as a delta against the content that replaced it. Blobs are shared between
+// versions and files, so the bound is kept per blob: a blob whose longest chain of dependent
+// deltas is already keyframe-interval-2 long stays a full copy, and reconstruction never walks
+// more than interval-1 deltas. Active content is always a full copy.
+// Re-encoding runs on a single background thread, off the upload path and never concurrently.
+@Service
+public class DeltaStorage {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DeltaStorage.class);
+
+    @Autowired
+    private BlobStore blobStore;
+
+    @Autowired
+    private FileBlobRepository blobRepository;
+
+    @Autowired
+    private StorageRepository storageRepository;
+
+    @Autowired
+    private DeltaStats deltaStats;
+
+    @Autowired
+    private CompressionPolicy compressionPolicy;
+
+    @Value("${storage.delta.enabled:true}")
+    private boolean enabled;
+
+    @Value("${storage.delta.keyframe-interval:10}")
+    private int keyframeInterval;
+
+    // Files larger than this are always kept as full copies
+    @Value("${storage.delta.max-file-size:8388608}")
+    private long maxFileSize;
+
+    // A delta is only kept if it is smaller than this fraction of the full compressed copy
+    @Value("${storage.delta.min-saving-ratio:0.8}")
+    private double minSavingRatio;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "delta-storage");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Called when supersededHash was replaced by activeHash as the content of a file
+    public void onSuperseded(String supersededHash, String activeHash) {
+        if (!enabled || supersededHash == null || activeHash == null || supersededHash.equals(activeHash)) {
+            return;
+        }
+        submit(() -> encode(supersededHash, activeHash));
+    }
+
+    // Called when hash becomes the active content of a file, which may be a delta when a rollback,
+    // restore or upload brings back older content
+    public void onActivated(String hash) {
+        if (hash != null) {
+            submit(() -> blobStore.materialize(hash));
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        FileBlobRepository.DeltaTotals totals = blobRepository.getDeltaTotals();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("keyframeInterval", keyframeInterval);
+        stats.put("deltaBlobs", totals.getBlobs());
+        stats.put("fullBytes", totals.getFullBytes());
+        stats.put("deltaBytes", totals.getDeltaBytes());
+        stats.put("savedBytes", totals.getFullBytes() - totals.getDeltaBytes());
+        stats.put("reconstructionByDepth", deltaStats.reconstructionByDepth());
+        return stats;
+    }
+
+    private void encode(String hash, String baseHash) {
+        Optional<FileBlob> target = blobStore.find(hash);
+        Optional<FileBlob> base = blobStore.find(baseHash);
+        if (target.isEmpty() || base.isEmpty() || target.get().isDelta() || base.get().isDelta()
+                || target.get().getOriginalSize() > maxFileSize || base.get().getOriginalSize() > maxFileSize
+                || target.get().getDeltaHeight() + 1 >= keyframeInterval) {
+            return;
+        }
+        // A blob with other references may still be the active content of another file
+        if (target.get().getRefCount() > 1 && storageRepository.existsByContentHashAndVersionGreaterThan(hash, 0)) {
+            return;
+        }
+        byte[] delta = FileUtils.compressFile(DeltaCodec.encode(blobStore.readContent(baseHash), blobStore.readContent(hash)),
+                compressionPolicy.deflateLevel());
+        if (delta.length < target.get().getCompressedSize() * minSavingRatio) {
+            blobStore.storeAsDelta(hash, baseHash, delta);
+        }
+    }
+
+    // Runs the task after the surrounding transaction commits, so it sees the committed references
+    private void submit(Runnable task) {
+        Runnable guarded = () -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                LOGGER.warn("Delta storage task failed", e);
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    executor.execute(guarded);
+                }
+            });
+        } else {
+            executor.execute(guarded);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+    }
+}
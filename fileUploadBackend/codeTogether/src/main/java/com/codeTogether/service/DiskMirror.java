@@ -0,0 +1,199 @@
+package com.codeTogether.service;
+
+import com.codeTogether.entity.FileData;
+import com.codeTogether.repository.FileMetadata;
+import com.codeTogether.util.ContentIngest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+
+import jakarta.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+// Tracks which files under uploads/ are verified copies of their active version, so downloads
+// can be sent from disk instead of the database. A mirror counts as in sync when it was written
+// by this process (or hashed by MirrorReconciler) with the active version's SHA-256 and size, and
+// its size, modification time and file key are still what they were then. Anything that touches
+// the file afterwards makes it unverified until the reconciler has checked it again.
+@Service
+public class DiskMirror {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DiskMirror.class);
+    private static final String ROOT_DIR = "uploads/";
+    private static final Path SENDFILE_DIR = Paths.get("uploads", ".sendfile");
+
+    @Value("${storage.mirror.sendfile-link-ttl-ms:60000}")
+    private long sendfileLinkTtlMillis;
+
+    private final Map<String, Verified> verified = new ConcurrentHashMap<>();
+
+    // A mirror file as it was when its content was known to match the version
+    public record Verified(Path path, int version, String contentHash, long size, FileTime lastModified, Object fileKey) {
+    }
+
+    @PostConstruct
+    void init() throws IOException {
+        // Links are only needed until the response that used them has opened the file
+        FileSystemUtils.deleteRecursively(SENDFILE_DIR);
+        Files.createDirectories(SENDFILE_DIR);
+    }
+
+    public static Path path(String projectFolder, String fileName) {
+        return Paths.get(ROOT_DIR + projectFolder + "/" + fileName);
+    }
+
+    // Records that the mirror at path was just written with the content of the version
+    public void written(FileData fileData, Path path) {
+        if (fileData.getContentHash() == null || fileData.getFileSize() == null) {
+            return;
+        }
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            verified.put(fileData.getFileName(), new Verified(path, fileData.getVersion(), fileData.getContentHash(),
+                    fileData.getFileSize(), attributes.lastModifiedTime(), attributes.fileKey()));
+        } catch (IOException e) {
+            verified.remove(fileData.getFileName());
+        }
+    }
+
+    public void removed(String fileName) {
+        verified.remove(fileName);
+    }
+
+    // The mirror of an active version if it is verified and hasn't changed since
+    public Optional<Verified> find(FileData fileData) {
+        return find(fileData.getFileName(), fileData.getVersion(), fileData.getContentHash());
+    }
+
+    public Optional<Verified> find(String fileName, int version, String contentHash) {
+        Verified mirror = verified.get(fileName);
+        if (mirror == null || mirror.version() != version || !mirror.contentHash().equals(contentHash)) {
+            return Optional.empty();
+        }
+        try {
+            if (unchanged(mirror, Files.readAttributes(mirror.path(), BasicFileAttributes.class))) {
+                return Optional.of(mirror);
+            }
+        } catch (IOException e) {
+            // Missing or unreadable; falls through to unverified
+        }
+        verified.remove(fileName, mirror);
+        return Optional.empty();
+    }
+
+    // Hashes the mirror of an active version and records it as verified if it matches. Returns
+    // false if it is missing or differs. Attributes are read before and after hashing, so a
+    // file changed meanwhile isn't recorded.
+    public boolean verify(FileMetadata row) throws IOException {
+        Path path = path(row.getProjectFolder(), row.getFileName());
+        BasicFileAttributes before;
+        try {
+            before = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return false;
+        }
+        if (before.size() != row.getFileSize()) {
+            return false;
+        }
+        MessageDigest digest = ContentIngest.sha256();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(path), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        if (!HexFormat.of().formatHex(digest.digest()).equals(row.getContentHash())) {
+            return false;
+        }
+        Verified mirror = new Verified(path, row.getVersion(), row.getContentHash(), row.getFileSize(),
+                before.lastModifiedTime(), before.fileKey());
+        if (!unchanged(mirror, Files.readAttributes(path, BasicFileAttributes.class))) {
+            return false;
+        }
+        // A commit may have recorded a newer version meanwhile; versions only grow
+        verified.merge(row.getFileName(), mirror, (current, checked) -> current.version() > checked.version() ? current : checked);
+        return true;
+    }
+
+    // A new hard link to the verified mirror, for handing the file to the container by name
+    // without racing a commit that replaces the mirror meanwhile. Empty if links aren't
+    // supported or the mirror changed; the link is removed after sendfile-link-ttl-ms.
+    public Optional<Path> link(Verified mirror) {
+        // Named by creation time: a link shares the file's modification time
+        Path link = SENDFILE_DIR.resolve(System.currentTimeMillis() + "-" + UUID.randomUUID());
+        try {
+            Files.createLink(link, mirror.path());
+            if (unchanged(mirror, Files.readAttributes(link, BasicFileAttributes.class))) {
+                return Optional.of(link.toRealPath());
+            }
+            Files.deleteIfExists(link);
+        } catch (IOException | UnsupportedOperationException e) {
+            LOGGER.debug("Could not link {} for sendfile", mirror.path(), e);
+        }
+        return Optional.empty();
+    }
+
+    // The verified mirror opened for reading. Checked after opening, so the channel can't refer
+    // to a file that replaced the mirror meanwhile; empty if it did.
+    public Optional<FileChannel> open(Verified mirror) {
+        try {
+            FileChannel channel = FileChannel.open(mirror.path(), StandardOpenOption.READ);
+            if (unchanged(mirror, Files.readAttributes(mirror.path(), BasicFileAttributes.class))) {
+                return Optional.of(channel);
+            }
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.debug("Could not open mirror {}", mirror.path(), e);
+        }
+        return Optional.empty();
+    }
+
+    private static boolean unchanged(Verified mirror, BasicFileAttributes attributes) {
+        return attributes.isRegularFile()
+                && attributes.size() == mirror.size()
+                && attributes.lastModifiedTime().equals(mirror.lastModified())
+                && Objects.equals(attributes.fileKey(), mirror.fileKey());
+    }
+
+    @Scheduled(fixedDelayString = "${storage.mirror.sendfile-link-ttl-ms:60000}")
+    public void removeExpiredLinks() {
+        long cutoff = System.currentTimeMillis() - sendfileLinkTtlMillis;
+        try (Stream<Path> links = Files.list(SENDFILE_DIR)) {
+            for (Path link : (Iterable<Path>) links::iterator) {
+                if (createdAt(link.getFileName().toString()) < cutoff) {
+                    Files.deleteIfExists(link);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Could not remove expired sendfile links", e);
+        }
+    }
+
+    // Creation time from the link's name; 0 for a file that isn't one of our links, so it is removed
+    private static long createdAt(String name) {
+        int dash = name.indexOf('-');
+        try {
+            return dash > 0 ? Long.parseLong(name.substring(0, dash)) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package com.codeTogether.service;
+
+import com.codeTogether.entity.FileData;
+import com.codeTogether.util.TextOperation;
+import com.codeTogether.util.TextPatch;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Live editing of text files. Each file opened by at least one editor is held in memory as
+// a document; edits arrive as operations against the revision the editor last saw, are
+// transformed against everything applied since (ot.js rules), applied and broadcast to the
+// other editors. The document is only written to storage as a new version when editing
+// pauses or at a fixed interval, so the number of versions follows checkpoints, not edits.
+@Service
+public class EditSessions {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EditSessions.class);
+    private static final int SEND_TIME_LIMIT_MS = 10_000;
+    private static final int SEND_BUFFER_BYTES = 1024 * 1024;
+    private static final String OUTBOUND_ATTRIBUTE = EditSessions.class.getName() + ".outbound";
+
+    @Autowired
+    private StorageService storageService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${storage.edit.idle-checkpoint-ms:2000}")
+    private long idleCheckpointMillis;
+
+    @Value("${storage.edit.max-checkpoint-interval-ms:30000}")
+    private long maxCheckpointIntervalMillis;
+
+    @Value("${storage.edit.history-size:1000}")
+    private int historySize;
+
+    private final Map<String, Document> documents = new ConcurrentHashMap<>();
+
+    // An open file. Fields other than checkpointLock are guarded by the document's monitor.
+    private static class Document {
+        final String fileName;
+        final ReentrantLock checkpointLock = new ReentrantLock();
+        final Map<String, Editor> editors = new LinkedHashMap<>();
+        // Operations of the revisions after historyStart, oldest first
+        final List<TextOperation> history = new ArrayList<>();
+        int historyStart;
+        int revision;
+        int checkpointedRevision;
+        FileData base;
+        String text;
+        String lastEditor;
+        long lastEditAt;
+        long lastCheckpointAt;
+        boolean closed;
+
+        Document(String fileName, FileData base, String text) {
+            this.fileName = fileName;
+            this.base = base;
+            this.text = text;
+            this.lastCheckpointAt = System.currentTimeMillis();
+        }
+
+        boolean dirty() {
+            return revision != checkpointedRevision;
+        }
+    }
+
+    private record Editor(String user, WebSocketSession session) {
+    }
+
+    // Adds the editor to the file's document, opening it from the active version if needed,
+    // and sends them the current text and revision
+    public void join(String fileName, String user, WebSocketSession session) {
+        Editor editor = new Editor(user, outbound(session));
+        while (true) {
+            Document document = documents.computeIfAbsent(fileName, this::open);
+            synchronized (document) {
+                if (document.closed) {
+                    // Closed by the last editor leaving; open it again
+                    continue;
+                }
+                document.editors.put(session.getId(), editor);
+                Map<String, Object> snapshot = message("snapshot");
+                snapshot.put("fileName", fileName);
+                snapshot.put("version", document.base.getVersion());
+                snapshot.put("revision", document.revision);
+                snapshot.put("text", document.text);
+                snapshot.put("editors", document.editors.values().stream().map(Editor::user).toList());
+                send(editor, snapshot);
+                Map<String, Object> joined = message("joined");
+                joined.put("user", user);
+                broadcast(document, session.getId(), joined);
+                return;
+            }
+        }
+    }
+
+    // Removes the editor; when the last one leaves, pending edits are checkpointed and the document closed
+    public void leave(String fileName, WebSocketSession session) {
+        Document document = documents.get(fileName);
+        if (document == null) {
+            return;
+        }
+        synchronized (document) {
+            Editor editor = document.editors.remove(session.getId());
+            if (editor == null) {
+                return;
+            }
+            Map<String, Object> left = message("left");
+            left.put("user", editor.user());
+            broadcast(document, null, left);
+            if (!document.editors.isEmpty()) {
+                return;
+            }
+        }
+        checkpoint(document);
+        closeIfUnused(document);
+    }
+
+    // Applies an operation made by the editor against the given revision and returns the new revision
+    public int edit(String fileName, WebSocketSession session, int revision, TextOperation operation) {
+        Document document = documents.get(fileName);
+        if (document == null) {
+            throw new IllegalStateException("File is not open for editing: " + fileName);
+        }
+        synchronized (document) {
+            Editor editor = document.editors.get(session.getId());
+            if (editor == null) {
+                throw new IllegalStateException("Not an editor of " + fileName);
+            }
+            if (revision > document.revision || revision < document.historyStart) {
+                throw new IllegalArgumentException("Revision " + revision + " is not known any more, reload the file");
+            }
+            for (TextOperation concurrent : document.history.subList(revision - document.historyStart, document.history.size())) {
+                operation = TextOperation.transform(operation, concurrent)[0];
+            }
+            document.text = operation.apply(document.text);
+            document.history.add(operation);
+            document.revision++;
+            if (document.history.size() > 2 * historySize) {
+                // Trimmed in chunks so the copy is amortized over historySize edits
+                int drop = document.history.size() - historySize;
+                document.history.subList(0, drop).clear();
+                document.historyStart += drop;
+            }
+            document.lastEditor = editor.user();
+            document.lastEditAt = System.currentTimeMillis();
+
+            Map<String, Object> ack = message("ack");
+            ack.put("revision", document.revision);
+            send(editor, ack);
+            Map<String, Object> remote = message("operation");
+            remote.put("revision", document.revision);
+            remote.put("operation", operation.toJson());
+            remote.put("user", editor.user());
+            broadcast(document, session.getId(), remote);
+            return document.revision;
+        }
+    }
+
+    public void sendError(WebSocketSession session, String error) {
+        Map<String, Object> message = message("error");
+        message.put("message", error);
+        try {
+            outbound(session).sendMessage(new TextMessage(objectMapper.writeValueAsString(message)));
+        } catch (IOException | RuntimeException e) {
+            LOGGER.debug("Could not send error to editor session {}", session.getId(), e);
+        }
+    }
+
+    // Every message to a session goes through one decorator kept in its attributes, which
+    // serializes the sends of broadcasts, acks and errors from different threads
+    private static WebSocketSession outbound(WebSocketSession session) {
+        return (WebSocketSession) session.getAttributes().computeIfAbsent(OUTBOUND_ATTRIBUTE,
+                key -> new ConcurrentWebSocketSessionDecorator(session, SEND_TIME_LIMIT_MS, SEND_BUFFER_BYTES));
+    }
+
+    // Checkpoints documents that have been idle long enough or were last written too long ago
+    @Scheduled(fixedDelayString = "${storage.edit.checkpoint-check-ms:500}")
+    public void checkpointDue() {
+        long now = System.currentTimeMillis();
+        for (Document document : documents.values()) {
+            boolean due;
+            synchronized (document) {
+                boolean idle = now - document.lastEditAt >= idleCheckpointMillis && document.lastEditAt > document.lastCheckpointAt;
+                due = document.dirty() && (idle || now - document.lastCheckpointAt >= maxCheckpointIntervalMillis);
+            }
+            if (due) {
+                checkpoint(document);
+            }
+            closeIfUnused(document);
+        }
+    }
+
+    @PreDestroy
+    void checkpointAll() {
+        documents.values().forEach(this::checkpoint);
+    }
+
+    private Document open(String fileName) {
+        FileData active = storageService.getActiveFile(fileName);
+        return new Document(fileName, active, TextPatch.decodeText(storageService.getContent(active)));
+    }
+
+    // Writes the document as a new version unless it is unchanged since the last checkpoint.
+    // The text is copied under the document's monitor; compressing and committing it happens
+    // outside, so edits continue meanwhile.
+    private void checkpoint(Document document) {
+        if (!document.checkpointLock.tryLock()) {
+            return;
+        }
+        try {
+            FileData base;
+            String text;
+            String editor;
+            int revision;
+            synchronized (document) {
+                document.lastCheckpointAt = System.currentTimeMillis();
+                if (!document.dirty()) {
+                    return;
+                }
+                base = document.base;
+                text = document.text;
+                editor = document.lastEditor;
+                revision = document.revision;
+            }
+            byte[] content = text.getBytes(StandardCharsets.UTF_8);
+            FileData saved;
+            try {
+                saved = storageService.saveContent(base, content, editor);
+            } catch (VersionConflictException e) {
+                Optional<FileData> active = storageService.findActiveFile(document.fileName);
+                if (active.isEmpty()) {
+                    // Deleted while being edited: the deletion stands, so the session ends without saving
+                    LOGGER.warn("{} was deleted during its editing session, closing the session", document.fileName);
+                    closeDeleted(document);
+                    return;
+                }
+                // The file was changed outside the session, e.g. by an upload. The session's text
+                // becomes the next version and the other change stays available as a previous one.
+                LOGGER.warn("{} changed outside its editing session, saving the session's text on top", document.fileName);
+                saved = storageService.saveContent(active.get(), content, editor);
+            }
+            synchronized (document) {
+                document.base = saved;
+                document.checkpointedRevision = revision;
+                Map<String, Object> checkpoint = message("checkpoint");
+                checkpoint.put("revision", revision);
+                checkpoint.put("version", saved.getVersion());
+                broadcast(document, null, checkpoint);
+            }
+        } catch (Exception e) {
+            // Retried by the next due check
+            LOGGER.error("Checkpoint of {} failed", document.fileName, e);
+        } finally {
+            document.checkpointLock.unlock();
+        }
+    }
+
+    private void closeIfUnused(Document document) {
+        synchronized (document) {
+            if (document.editors.isEmpty() && !document.dirty() && !document.closed) {
+                document.closed = true;
+                documents.remove(document.fileName, document);
+            }
+        }
+    }
+
+    // Tells the editors of a deleted file that their session is over and drops the document
+    // with its unsaved edits, so a later upload under the same name starts a fresh one
+    private void closeDeleted(Document document) {
+        List<Editor> editors;
+        synchronized (document) {
+            document.closed = true;
+            documents.remove(document.fileName, document);
+            editors = new ArrayList<>(document.editors.values());
+            document.editors.clear();
+        }
+        for (Editor editor : editors) {
+            sendError(editor.session(), document.fileName + " was deleted, the editing session is closed");
+            try {
+                editor.session().close(CloseStatus.GOING_AWAY);
+            } catch (IOException e) {
+                LOGGER.debug("Could not close editor session of {}", editor.user(), e);
+            }
+        }
+    }
+
+    private static Map<String, Object> message(String type) {
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("type", type);
+        return message;
+    }
+
+    private void broadcast(Document document, String exceptSessionId, Map<String, Object> message) {
+        for (Map.Entry<String, Editor> editor : document.editors.entrySet()) {
+            if (!editor.getKey().equals(exceptSessionId)) {
+                send(editor.getValue(), message);
+            }
+        }
+    }
+
+    private void send(Editor editor, Map<String, Object> message) {
+        try {
+            editor.session().sendMessage(new TextMessage(objectMapper.writeValueAsString(message)));
+        } catch (IOException | RuntimeException e) {
+            // A broken connection is cleaned up when its close event arrives
+            LOGGER.debug("Could not send {} to {}", message.get("type"), editor.user(), e);
+        }
+    }
+}
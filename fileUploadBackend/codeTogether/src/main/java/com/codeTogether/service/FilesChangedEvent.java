@@ -0,0 +1,7 @@
+package com.codeTogether.service;
+
+import java.util.Collection;
+
+// Published after a commit changed the active versions of these files
+public record FilesChangedEvent(Collection<String> fileNames) {
+}
@@ -0,0 +1,440 @@
+package com.codeTogether.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// In-memory index of the public/ directory tree. It is built with one walk at startup and
+// then kept current from WatchService events and from explicit refresh() calls on the
+// write paths, so listings never touch the disk. Every node carries a version that is
+// bumped along the path to the root whenever its subtree changes; that version is the
+// ETag of any listing rooted at the node.
+@Service
+public class FolderIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FolderIndex.class);
+    public static final Path ROOT = Paths.get(System.getProperty("user.dir"), "public");
+
+    @Value("${storage.folder-index.watch:true}")
+    private boolean watchEnabled;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<WatchKey, Path> watchedDirs = new ConcurrentHashMap<>();
+    // Distinguishes ETags across restarts, since versions start again from zero
+    private final String epoch = Long.toHexString(System.currentTimeMillis());
+    private Node root;
+    private long generation;
+    private WatchService watchService;
+    private Thread watcher;
+
+    public record TreeEntry(String name, String path, boolean directory, long size, long lastModified,
+                            List<TreeEntry> children) {
+    }
+
+    private static final class Node {
+        private final String name;
+        private final boolean directory;
+        private final Node parent;
+        private final TreeMap<String, Node> children;
+        // File size, or the total size of all files below a directory
+        private long size;
+        private long lastModified;
+        private long version;
+
+        private Node(String name, boolean directory, Node parent) {
+            this.name = name;
+            this.directory = directory;
+            this.parent = parent;
+            this.children = directory ? new TreeMap<>() : null;
+        }
+    }
+
+    @PostConstruct
+    void init() {
+        if (watchEnabled) {
+            try {
+                watchService = FileSystems.getDefault().newWatchService();
+            } catch (IOException e) {
+                LOGGER.warn("File watching unavailable, folder index only follows application writes", e);
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            root = new Node("", true, null);
+            if (Files.isDirectory(ROOT)) {
+                scan(root, ROOT);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (watchService != null) {
+            watcher = new Thread(this::watch, "folder-index-watcher");
+            watcher.setDaemon(true);
+            watcher.start();
+        }
+    }
+
+    // Re-reads path (a file or directory under ROOT) from disk and updates the index to match
+    public void refresh(Path path) {
+        Path target = path.toAbsolutePath().normalize();
+        if (!target.startsWith(ROOT)) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            refreshLocked(target);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Updates size and modification time after an in-place change, falling back to a refresh
+    // if the path changed type or isn't indexed
+    private void touch(Path path) {
+        lock.writeLock().lock();
+        try {
+            Node node = find(ROOT.relativize(path).toString());
+            BasicFileAttributes attributes = readAttributes(path);
+            if (node == null || node.parent == null || attributes == null || node.directory != attributes.isDirectory()) {
+                refreshLocked(path);
+                return;
+            }
+            if (!node.directory) {
+                addSize(node, attributes.size() - node.size);
+            }
+            bump(node);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ETag for listings rooted at relativePath, or empty if there is no such directory
+    public Optional<String> etag(String relativePath) {
+        lock.readLock().lock();
+        try {
+            Node node = find(relativePath);
+            return node == null || !node.directory
+                    ? Optional.empty()
+                    : Optional.of("\"" + epoch + "-" + node.version + "\"");
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Paths below relativePath, relative to it and in depth-first order, as Files.walk
+    // would list them; maxDepth null means unlimited
+    public Optional<List<String>> list(String relativePath, Integer maxDepth, boolean directoriesOnly) {
+        lock.readLock().lock();
+        try {
+            Node node = find(relativePath);
+            if (node == null || !node.directory) {
+                return Optional.empty();
+            }
+            List<String> paths = new ArrayList<>();
+            collect(node, "", 1, maxDepth == null ? Integer.MAX_VALUE : maxDepth, directoriesOnly, paths);
+            return Optional.of(paths);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Optional<TreeEntry> tree(String relativePath, Integer maxDepth) {
+        lock.readLock().lock();
+        try {
+            String path = normalize(relativePath);
+            Node node = find(path);
+            return node == null
+                    ? Optional.empty()
+                    : Optional.of(toEntry(node, path, maxDepth == null ? Integer.MAX_VALUE : maxDepth));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void refreshLocked(Path target) {
+        if (!watchedDirs.containsValue(ROOT) && Files.isDirectory(ROOT)) {
+            // public/ didn't exist at startup
+            register(ROOT);
+        }
+        // Start from the highest ancestor the index doesn't know yet, so new parent
+        // directories are scanned and watched too
+        Path relative = ROOT.relativize(target);
+        Node node = root;
+        Path current = ROOT;
+        for (Path part : relative) {
+            current = current.resolve(part);
+            Node child = node.children.get(part.toString());
+            if (child == null || !child.directory) {
+                target = current;
+                break;
+            }
+            node = child;
+        }
+        Node parent = target.equals(ROOT) ? null : find(ROOT.relativize(target.getParent()).toString());
+        if (parent == null && !target.equals(ROOT)) {
+            return;
+        }
+        BasicFileAttributes attributes = readAttributes(target);
+        if (target.equals(ROOT)) {
+            clear(root);
+            if (attributes != null && attributes.isDirectory()) {
+                scan(root, ROOT);
+            }
+            bump(root);
+            return;
+        }
+        String name = target.getFileName().toString();
+        Node existing = parent.children.get(name);
+        if (existing != null) {
+            remove(existing);
+        }
+        if (attributes != null) {
+            Node added = new Node(name, attributes.isDirectory(), parent);
+            parent.children.put(name, added);
+            if (added.directory) {
+                scan(added, target);
+            } else {
+                added.size = attributes.size();
+                added.lastModified = attributes.lastModifiedTime().toMillis();
+            }
+            addSize(parent, added.size);
+        }
+        bump(parent);
+    }
+
+    // Populates an empty directory node from disk and watches every directory below it
+    private void scan(Node node, Path dir) {
+        try {
+            Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+                private Node current = null;
+
+                @Override
+                public FileVisitResult preVisitDirectory(Path path, BasicFileAttributes attributes) {
+                    if (current == null) {
+                        current = node;
+                    } else {
+                        Node child = new Node(path.getFileName().toString(), true, current);
+                        current.children.put(child.name, child);
+                        current = child;
+                    }
+                    current.lastModified = attributes.lastModifiedTime().toMillis();
+                    current.version = generation;
+                    register(path);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path path, BasicFileAttributes attributes) {
+                    if (!attributes.isDirectory()) {
+                        Node file = new Node(path.getFileName().toString(), false, current);
+                        file.size = attributes.size();
+                        file.lastModified = attributes.lastModifiedTime().toMillis();
+                        file.version = generation;
+                        current.children.put(file.name, file);
+                        current.size += file.size;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path path, IOException e) {
+                    LOGGER.warn("Skipping unreadable path {}: {}", path, e.getMessage());
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path path, IOException e) {
+                    if (current != node) {
+                        current.parent.size += current.size;
+                        current = current.parent;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            LOGGER.warn("Error scanning {}", dir, e);
+        }
+    }
+
+    private void remove(Node node) {
+        node.parent.children.remove(node.name);
+        addSize(node.parent, -node.size);
+        if (node.directory) {
+            Path path = ROOT.resolve(pathOf(node));
+            watchedDirs.entrySet().removeIf(entry -> {
+                if (entry.getValue().startsWith(path)) {
+                    entry.getKey().cancel();
+                    return true;
+                }
+                return false;
+            });
+        }
+    }
+
+    private void clear(Node node) {
+        node.children.clear();
+        node.size = 0;
+        watchedDirs.keySet().forEach(WatchKey::cancel);
+        watchedDirs.clear();
+    }
+
+    private void addSize(Node node, long delta) {
+        for (Node n = node; n != null; n = n.parent) {
+            n.size += delta;
+        }
+    }
+
+    private void bump(Node node) {
+        long version = ++generation;
+        for (Node n = node; n != null; n = n.parent) {
+            n.version = version;
+        }
+        BasicFileAttributes attributes = readAttributes(ROOT.resolve(pathOf(node)));
+        if (attributes != null) {
+            node.lastModified = attributes.lastModifiedTime().toMillis();
+        }
+    }
+
+    private void register(Path dir) {
+        if (watchService == null) {
+            return;
+        }
+        try {
+            watchedDirs.put(dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY), dir);
+        } catch (IOException e) {
+            LOGGER.warn("Can't watch {}: {}", dir, e.getMessage());
+        }
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                Path dir = watchedDirs.get(key);
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (dir == null) {
+                        continue;
+                    }
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        // Events were dropped, so re-read the whole directory
+                        refresh(dir);
+                    } else if (event.kind() == StandardWatchEventKinds.ENTRY_MODIFY) {
+                        touch(dir.resolve((Path) event.context()));
+                    } else {
+                        refresh(dir.resolve((Path) event.context()));
+                    }
+                }
+                if (!key.reset()) {
+                    watchedDirs.remove(key);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Shutting down
+        } catch (RuntimeException e) {
+            LOGGER.error("Folder index watcher stopped", e);
+        }
+    }
+
+    private void collect(Node node, String prefix, int depth, int maxDepth, boolean directoriesOnly, List<String> paths) {
+        if (depth > maxDepth) {
+            return;
+        }
+        for (Node child : node.children.values()) {
+            if (directoriesOnly && !child.directory) {
+                continue;
+            }
+            String path = prefix + child.name;
+            paths.add(path);
+            if (child.directory) {
+                collect(child, path + "/", depth + 1, maxDepth, directoriesOnly, paths);
+            }
+        }
+    }
+
+    private TreeEntry toEntry(Node node, String path, int remainingDepth) {
+        List<TreeEntry> children = null;
+        if (node.directory) {
+            children = new ArrayList<>();
+            if (remainingDepth > 0) {
+                for (Node child : node.children.values()) {
+                    children.add(toEntry(child, path.isEmpty() ? child.name : path + "/" + child.name, remainingDepth - 1));
+                }
+            }
+        }
+        return new TreeEntry(node.name, path, node.directory, node.size, node.lastModified, children);
+    }
+
+    private Node find(String relativePath) {
+        Node node = root;
+        for (String part : normalize(relativePath).split("/")) {
+            if (part.isEmpty()) {
+                continue;
+            }
+            if (node.children == null || (node = node.children.get(part)) == null) {
+                return null;
+            }
+        }
+        return node;
+    }
+
+    private String pathOf(Node node) {
+        StringBuilder path = new StringBuilder();
+        for (Node n = node; n != null && n.parent != null; n = n.parent) {
+            path.insert(0, path.length() == 0 ? n.name : n.name + "/");
+        }
+        return path.toString();
+    }
+
+    // Rejects paths that would leave ROOT; the result is '/'-separated without leading or trailing slashes
+    private static String normalize(String relativePath) {
+        if (relativePath == null || relativePath.isBlank()) {
+            return "";
+        }
+        Path resolved = ROOT.resolve(relativePath.replaceFirst("^/+", "")).normalize();
+        if (!resolved.startsWith(ROOT)) {
+            throw new IllegalArgumentException("Path is outside the public folder: " + relativePath);
+        }
+        return ROOT.relativize(resolved).toString().replace('\\', '/');
+    }
+
+    private static BasicFileAttributes readAttributes(Path path) {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @PreDestroy
+    void shutdown() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+}
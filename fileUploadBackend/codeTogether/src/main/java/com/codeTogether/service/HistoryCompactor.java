@@ -0,0 +1,350 @@
+package com.codeTogether.service;
+
+import com.codeTogether.entity.FileData;
+import com.codeTogether.repository.FileMetadata;
+import com.codeTogether.repository.StorageRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+// Retention policy for version history, enforced by a background job. Of the previous versions
+// of each file the keep-last newest are kept, plus the newest of each day within the last
+// keep-daily-days days; the others are deleted. A project folder whose remaining previous
+// versions still add up to more than max-project-bytes (original sizes) then loses its oldest
+// previous versions until it fits. Active versions are never touched. Rows are deleted in
+// batches of batch-size under the file's lock, with a pause after each batch, and each deleted
+// row drops its reference on the content blob. The job also removes files in project folders under
+// uploads/ that are not the mirror of an active version, and temp files left behind by
+// interrupted uploads. Separately from the retention rules, content blobs that nothing has
+// referenced for unreferenced-blob-min-age-ms (inserted for a commit that then failed) are deleted.
+@Service
+public class HistoryCompactor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HistoryCompactor.class);
+    private static final String ROOT_DIR = "uploads/";
+    private static final Set<String> INTERNAL_DIRS = Set.of(".chunked", ".sendfile");
+    private static final int PAGE_SIZE = 500;
+
+    @Autowired
+    private StorageRepository repository;
+
+    @Autowired
+    private VersionCommitter versionCommitter;
+
+    @Autowired
+    private BlobStore blobStore;
+
+    @Autowired
+    private ContentCache contentCache;
+
+    @Autowired
+    private DiskMirror diskMirror;
+
+    @Value("${storage.retention.enabled:false}")
+    private boolean enabled;
+
+    @Value("${storage.retention.keep-last:20}")
+    private int keepLast;
+
+    @Value("${storage.retention.keep-daily-days:30}")
+    private int keepDailyDays;
+
+    // 0 means no limit
+    @Value("${storage.retention.max-project-bytes:0}")
+    private long maxProjectBytes;
+
+    @Value("${storage.retention.batch-size:100}")
+    private int batchSize;
+
+    @Value("${storage.retention.batch-pause-ms:200}")
+    private long batchPauseMillis;
+
+    @Value("${storage.retention.remove-orphans:true}")
+    private boolean removeOrphans;
+
+    // Files under uploads/ younger than this are left alone, so uploads in progress aren't affected
+    @Value("${storage.retention.orphan-min-age-ms:3600000}")
+    private long orphanMinAgeMillis;
+
+    // Blobs are inserted unreferenced before the commit that references them, so this must be
+    // longer than any commit takes
+    @Value("${storage.retention.unreferenced-blob-min-age-ms:3600000}")
+    private long unreferencedBlobMinAgeMillis;
+
+    private volatile Report lastReport;
+
+    public record Report(int filesChecked, int versionsDeleted, long versionBytes, int blobsDeleted,
+                         int orphanFilesDeleted, long orphanBytes, int failed, long finishedAt) {
+    }
+
+    // Totals of one run
+    private static final class Totals {
+        int filesChecked;
+        int versionsDeleted;
+        long versionBytes;
+        int blobsDeleted;
+        int orphanFilesDeleted;
+        long orphanBytes;
+        int failed;
+    }
+
+    @Scheduled(initialDelayString = "${storage.retention.initial-delay-ms:300000}",
+            fixedDelayString = "${storage.retention.interval-ms:3600000}")
+    public void scheduledCompact() {
+        if (enabled) {
+            compact();
+        }
+    }
+
+    public synchronized Report compact() {
+        Totals totals = new Totals();
+        try {
+            applyVersionRules(totals);
+            if (maxProjectBytes > 0) {
+                applyProjectLimits(totals);
+            }
+            if (removeOrphans) {
+                removeOrphans(totals);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.info("History compaction interrupted");
+        }
+        Report report = new Report(totals.filesChecked, totals.versionsDeleted, totals.versionBytes, totals.blobsDeleted,
+                totals.orphanFilesDeleted, totals.orphanBytes, totals.failed, System.currentTimeMillis());
+        lastReport = report;
+        if (report.versionsDeleted() > 0 || report.orphanFilesDeleted() > 0 || report.failed() > 0) {
+            LOGGER.info("History compaction: {}", report);
+        }
+        return report;
+    }
+
+    // Runs whether or not retention is enabled
+    @Scheduled(initialDelayString = "${storage.retention.initial-delay-ms:300000}",
+            fixedDelayString = "${storage.retention.unreferenced-blob-sweep-ms:3600000}")
+    public int sweepUnreferencedBlobs() {
+        long cutoff = System.currentTimeMillis() - unreferencedBlobMinAgeMillis;
+        int deleted = 0;
+        List<String> batch;
+        try {
+            do {
+                batch = blobStore.deleteUnreferencedBefore(cutoff, batchSize);
+                deleted += batch.size();
+                if (!batch.isEmpty()) {
+                    Thread.sleep(batchPauseMillis);
+                }
+            } while (!batch.isEmpty());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Could not delete unreferenced content blobs", e);
+        }
+        if (deleted > 0) {
+            LOGGER.info("Deleted {} content blobs left unreferenced", deleted);
+        }
+        return deleted;
+    }
+
+    public Optional<Report> lastReport() {
+        return Optional.ofNullable(lastReport);
+    }
+
+    private void applyVersionRules(Totals totals) throws InterruptedException {
+        LocalDate firstDailyDay = LocalDate.now().minusDays(keepDailyDays);
+        String afterName = "";
+        List<String> fileNames;
+        do {
+            fileNames = repository.findFileNamesWithPreviousVersions(afterName, Limit.of(PAGE_SIZE));
+            for (String fileName : fileNames) {
+                afterName = fileName;
+                totals.filesChecked++;
+                List<FileMetadata> previous = new ArrayList<>(repository.findMetadataByFileNameAndVersionLessThanAndIdGreaterThanOrderByIdAsc(
+                        fileName, 0, 0L, Limit.unlimited()));
+                // Newest first; previous versions are stored negated
+                previous.sort(Comparator.comparingInt(FileMetadata::getVersion));
+                Set<LocalDate> dailyKept = new HashSet<>();
+                List<FileMetadata> expired = new ArrayList<>();
+                for (int i = 0; i < previous.size(); i++) {
+                    FileMetadata row = previous.get(i);
+                    LocalDate day = uploadDay(row);
+                    boolean daily = day != null && !day.isBefore(firstDailyDay) && dailyKept.add(day);
+                    if (i >= keepLast && !daily) {
+                        expired.add(row);
+                    }
+                }
+                delete(fileName, expired, totals);
+            }
+        } while (fileNames.size() == PAGE_SIZE);
+    }
+
+    private void applyProjectLimits(Totals totals) throws InterruptedException {
+        for (StorageRepository.FolderBytes folder : repository.findFoldersWithPreviousBytesOver(maxProjectBytes)) {
+            long excess = folder.getBytes() - maxProjectBytes;
+            // Oldest first, by id
+            Map<String, List<FileMetadata>> expired = new LinkedHashMap<>();
+            long afterId = 0;
+            List<FileMetadata> page;
+            do {
+                page = repository.findMetadataByProjectFolderAndVersionLessThanAndIdGreaterThanOrderByIdAsc(
+                        folder.getProjectFolder(), 0, afterId, Limit.of(PAGE_SIZE));
+                for (FileMetadata row : page) {
+                    afterId = row.getId();
+                    if (excess <= 0) {
+                        break;
+                    }
+                    expired.computeIfAbsent(row.getFileName(), name -> new ArrayList<>()).add(row);
+                    excess -= row.getFileSize() == null ? 0 : row.getFileSize();
+                }
+            } while (excess > 0 && page.size() == PAGE_SIZE);
+            for (Map.Entry<String, List<FileMetadata>> file : expired.entrySet()) {
+                delete(file.getKey(), file.getValue(), totals);
+            }
+        }
+    }
+
+    // Deletes the rows in batches under the file's lock. A row that is no longer a previous
+    // version, or is already gone, is skipped.
+    private void delete(String fileName, List<FileMetadata> rows, Totals totals) throws InterruptedException {
+        for (int from = 0; from < rows.size(); from += batchSize) {
+            List<FileMetadata> batch = rows.subList(from, Math.min(rows.size(), from + batchSize));
+            try {
+                List<FileData> deleted = versionCommitter.locked(fileName, () -> {
+                    List<FileData> removed = new ArrayList<>();
+                    for (FileMetadata row : batch) {
+                        Optional<FileData> version = repository.findById(row.getId()).filter(found -> found.getVersion() < 0);
+                        if (version.isPresent()) {
+                            repository.delete(version.get());
+                            if (version.get().getFileContent() == null && version.get().getContentHash() != null) {
+                                blobStore.release(version.get().getContentHash());
+                            }
+                            removed.add(version.get());
+                        }
+                    }
+                    return removed;
+                }, removed -> removed.forEach(version -> contentCache.invalidate(fileName, version.getVersion())));
+                Set<String> hashes = new HashSet<>();
+                for (FileData version : deleted) {
+                    totals.versionsDeleted++;
+                    totals.versionBytes += version.getFileSize() == null ? 0 : version.getFileSize();
+                    if (version.getFileContent() == null && version.getContentHash() != null) {
+                        hashes.add(version.getContentHash());
+                    }
+                }
+                for (String hash : hashes) {
+                    if (!blobStore.exists(hash)) {
+                        totals.blobsDeleted++;
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                totals.failed++;
+                LOGGER.warn("Could not delete {} previous versions of {}", batch.size(), fileName, e);
+            }
+            Thread.sleep(batchPauseMillis);
+        }
+    }
+
+    private void removeOrphans(Totals totals) throws InterruptedException {
+        Path root = Paths.get(ROOT_DIR);
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        long cutoff = System.currentTimeMillis() - orphanMinAgeMillis;
+        List<Path> candidates = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(root)) {
+            files.filter(path -> !INTERNAL_DIRS.contains(root.relativize(path).getName(0).toString()))
+                    .filter(Files::isRegularFile)
+                    .forEach(candidates::add);
+        } catch (IOException e) {
+            totals.failed++;
+            LOGGER.warn("Could not list {} for orphaned files", root, e);
+            return;
+        }
+        // Folders that hold versions; files in other folders weren't put there by the application
+        Map<Path, Boolean> managed = new HashMap<>();
+        int removedInBatch = 0;
+        for (Path path : candidates) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                if (attributes.lastModifiedTime().toMillis() > cutoff) {
+                    continue;
+                }
+                String name = path.getFileName().toString();
+                if (name.startsWith(".") && name.endsWith(".part")) {
+                    // Temp file of an upload or mirror rewrite that never finished
+                    if (Files.deleteIfExists(path)) {
+                        totals.orphanFilesDeleted++;
+                        totals.orphanBytes += attributes.size();
+                    }
+                } else if (managed.computeIfAbsent(path.getParent(), dir -> isProjectFolder(root, dir))
+                        && removeIfOrphaned(path, name)) {
+                    totals.orphanFilesDeleted++;
+                    totals.orphanBytes += attributes.size();
+                } else {
+                    continue;
+                }
+                if (++removedInBatch == batchSize) {
+                    removedInBatch = 0;
+                    Thread.sleep(batchPauseMillis);
+                }
+            } catch (IOException | RuntimeException e) {
+                totals.failed++;
+                LOGGER.warn("Could not check {} for an active version", path, e);
+            }
+        }
+    }
+
+    private boolean isProjectFolder(Path root, Path dir) {
+        String folder = root.relativize(dir).toString().replace(dir.getFileSystem().getSeparator(), "/");
+        return !folder.isEmpty() && repository.existsByProjectFolder(folder);
+    }
+
+    // A file is orphaned if no active version of that name has its mirror at this path. Checked
+    // under the file's lock, so it can't race a commit moving a new mirror into place.
+    private boolean removeIfOrphaned(Path path, String fileName) throws IOException {
+        return versionCommitter.locked(fileName, () -> {
+            Optional<FileMetadata> active = repository.findMetadataByFileNameAndVersionGreaterThan(fileName, 0);
+            if (active.isPresent() && DiskMirror.path(active.get().getProjectFolder(), fileName).normalize()
+                    .equals(path.normalize())) {
+                return false;
+            }
+            if (active.isEmpty()) {
+                diskMirror.removed(fileName);
+            }
+            LOGGER.info("Removing {}, which is not the mirror of an active version", path);
+            return Files.deleteIfExists(path);
+        }, null);
+    }
+
+    private static LocalDate uploadDay(FileMetadata row) {
+        if (row.getUploadDate() == null) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(row.getUploadDate());
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
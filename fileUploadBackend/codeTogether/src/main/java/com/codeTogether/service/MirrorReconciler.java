@@ -0,0 +1,98 @@
+package com.codeTogether.service;
+
+import com.codeTogether.repository.FileMetadata;
+import com.codeTogether.repository.StorageRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.List;
+
+// Background check of the uploads/ mirror against the active versions. Mirrors not verified
+// since they were last written (e.g. after a restart, or changed on disk) are hashed and
+// compared with the version's SHA-256 and size; missing or differing ones are rewritten from
+// stored content under the file's lock. Until then downloads of those files use the database.
+@Service
+public class MirrorReconciler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MirrorReconciler.class);
+    private static final int PAGE_SIZE = 500;
+
+    @Autowired
+    private StorageRepository repository;
+
+    @Autowired
+    private StorageService storageService;
+
+    @Autowired
+    private VersionCommitter versionCommitter;
+
+    @Autowired
+    private DiskMirror diskMirror;
+
+    @Value("${storage.mirror.reconcile-enabled:true}")
+    private boolean enabled;
+
+    public record Report(int checked, int verified, int repaired, int failed) {
+    }
+
+    @Scheduled(initialDelayString = "${storage.mirror.reconcile-initial-delay-ms:60000}",
+            fixedDelayString = "${storage.mirror.reconcile-interval-ms:600000}")
+    public void scheduledReconcile() {
+        if (enabled) {
+            reconcile();
+        }
+    }
+
+    public Report reconcile() {
+        int checked = 0;
+        int verified = 0;
+        int repaired = 0;
+        int failed = 0;
+        long afterId = 0;
+        List<FileMetadata> page;
+        do {
+            page = repository.findMetadataByVersionGreaterThanAndIdGreaterThanOrderByIdAsc(0, afterId, Limit.of(PAGE_SIZE));
+            for (FileMetadata row : page) {
+                afterId = row.getId();
+                // Rows written before content hashes were recorded can't be verified
+                if (row.getContentHash() == null || row.getFileSize() == null
+                        || diskMirror.find(row.getFileName(), row.getVersion(), row.getContentHash()).isPresent()) {
+                    continue;
+                }
+                checked++;
+                try {
+                    if (diskMirror.verify(row)) {
+                        verified++;
+                    } else if (repair(row)) {
+                        repaired++;
+                    }
+                } catch (IOException | RuntimeException e) {
+                    failed++;
+                    LOGGER.warn("Could not reconcile the mirror of {}", row.getFileName(), e);
+                }
+            }
+        } while (page.size() == PAGE_SIZE);
+        Report report = new Report(checked, verified, repaired, failed);
+        if (repaired > 0 || failed > 0) {
+            LOGGER.info("Mirror reconciliation: {}", report);
+        }
+        return report;
+    }
+
+    // Rewrites the mirror if the row is still the active version; a newer commit writes its own
+    private boolean repair(FileMetadata row) throws IOException {
+        return versionCommitter.locked(row.getFileName(), () -> repository.findByFileNameAndVersionGreaterThan(row.getFileName(), 0)
+                .filter(active -> active.getVersion() == row.getVersion()), active -> {
+            if (active.isPresent()) {
+                LOGGER.info("Mirror of {} version {} is missing or out of sync, rewriting it", row.getFileName(), row.getVersion());
+                storageService.writeMirror(active.get());
+            }
+        }).isPresent();
+    }
+}
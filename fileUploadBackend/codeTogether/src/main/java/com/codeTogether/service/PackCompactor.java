@@ -0,0 +1,214 @@
+package com.codeTogether.service;
+
+import com.codeTogether.entity.FileBlob;
+import com.codeTogether.repository.FileBlobRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Background maintenance of the pack segments. Records of deleted blobs, and of blobs that were
+// re-encoded as deltas or materialized again, stay in their segment as garbage. A sealed segment
+// whose garbage reaches compaction-garbage-ratio has its live records copied to the segment being
+// appended to, each blob row is pointed at its copy, and the segment is retired and later deleted.
+// With the pack backend the job also moves content still stored in the database into the packs.
+@Service
+public class PackCompactor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PackCompactor.class);
+    private static final int PAGE_SIZE = 500;
+    // Records copied per forced append while compacting
+    private static final long COPY_BATCH_BYTES = 16 * 1024 * 1024;
+
+    @Autowired
+    private PackStore packStore;
+
+    @Autowired
+    private BlobStore blobStore;
+
+    @Autowired
+    private FileBlobRepository blobRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${storage.pack.compaction-garbage-ratio:0.5}")
+    private double garbageRatio;
+
+    @Value("${storage.pack.migrate-batch-size:50}")
+    private int migrateBatchSize;
+
+    private TransactionTemplate transaction;
+
+    public record Report(int blobsMigrated, int segmentsCompacted, int recordsMoved, long garbageBytes,
+                         long bytesDeleted) {
+    }
+
+    public record Summary(List<PackStore.SegmentInfo> segments, long segmentBytes, long liveBytes, long packedBlobs) {
+    }
+
+    @PostConstruct
+    void init() {
+        transaction = new TransactionTemplate(transactionManager);
+    }
+
+    @Scheduled(initialDelayString = "${storage.pack.compaction-initial-delay-ms:60000}",
+            fixedDelayString = "${storage.pack.compaction-interval-ms:300000}")
+    public void scheduledCompact() {
+        if (blobStore.usesPacks() || !packStore.segments().isEmpty()) {
+            compact();
+        }
+    }
+
+    // One run is serialized against the next by the scheduler; concurrent manual runs only
+    // duplicate work, since every row update is conditional on the location it replaces
+    public synchronized Report compact() {
+        int migrated = blobStore.usesPacks() ? migrate() : 0;
+        long deleted = packStore.removeRetired();
+        Map<Integer, Long> live = liveBytes();
+        int compacted = 0;
+        int moved = 0;
+        long garbage = 0;
+        for (PackStore.SegmentInfo segment : packStore.segments()) {
+            if (segment.active() || segment.retired()) {
+                continue;
+            }
+            long segmentGarbage = segment.size() - live.getOrDefault(segment.segment(), 0L);
+            if (segment.size() > 0 && (double) segmentGarbage / segment.size() < garbageRatio) {
+                continue;
+            }
+            try {
+                moved += moveRecords(segment.segment());
+                if (blobRepository.countByPackSegment(segment.segment()) == 0) {
+                    packStore.retire(segment.segment());
+                    compacted++;
+                    garbage += segmentGarbage;
+                }
+            } catch (RuntimeException e) {
+                LOGGER.warn("Could not compact pack segment {}", segment.segment(), e);
+            }
+        }
+        Report report = new Report(migrated, compacted, moved, garbage, deleted);
+        if (migrated > 0 || compacted > 0 || deleted > 0) {
+            LOGGER.info("Pack compaction: {}", report);
+        }
+        return report;
+    }
+
+    public Summary summary() {
+        long segmentBytes = 0;
+        List<PackStore.SegmentInfo> segments = packStore.segments();
+        for (PackStore.SegmentInfo segment : segments) {
+            segmentBytes += segment.size();
+        }
+        long liveBytes = 0;
+        long packedBlobs = 0;
+        for (FileBlobRepository.PackUsage usage : blobRepository.getPackUsage()) {
+            liveBytes += usage.getPayloadBytes() + usage.getRecords() * PackStore.HEADER_BYTES;
+            packedBlobs += usage.getRecords();
+        }
+        return new Summary(segments, segmentBytes, liveBytes, packedBlobs);
+    }
+
+    // Record bytes still referenced per segment
+    private Map<Integer, Long> liveBytes() {
+        Map<Integer, Long> live = new HashMap<>();
+        for (FileBlobRepository.PackUsage usage : blobRepository.getPackUsage()) {
+            live.put(usage.getSegment(), usage.getPayloadBytes() + usage.getRecords() * PackStore.HEADER_BYTES);
+        }
+        return live;
+    }
+
+    private int moveRecords(int segment) {
+        int moved = 0;
+        String afterHash = "";
+        List<FileBlobRepository.PackedRecord> page;
+        do {
+            page = blobRepository.findPackedRecords(segment, afterHash, Limit.of(PAGE_SIZE));
+            Map<String, FileBlobRepository.PackedRecord> batch = new LinkedHashMap<>();
+            Map<String, byte[]> payloads = new LinkedHashMap<>();
+            long batchBytes = 0;
+            for (FileBlobRepository.PackedRecord record : page) {
+                afterHash = record.getHash();
+                batch.put(record.getHash(), record);
+                payloads.put(record.getHash(), packStore.readBytes(record.getHash(),
+                        new PackStore.Location(segment, record.getPackOffset(), record.getPackLength())));
+                batchBytes += record.getPackLength();
+                if (batchBytes >= COPY_BATCH_BYTES) {
+                    moved += copy(segment, batch, payloads);
+                    batch.clear();
+                    payloads.clear();
+                    batchBytes = 0;
+                }
+            }
+            moved += copy(segment, batch, payloads);
+        } while (page.size() == PAGE_SIZE);
+        return moved;
+    }
+
+    // A copy whose row changed meanwhile is left behind as garbage of the active segment
+    private int copy(int segment, Map<String, FileBlobRepository.PackedRecord> batch, Map<String, byte[]> payloads) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        Map<String, PackStore.Location> copies = packStore.appendAll(payloads);
+        return transaction.execute(status -> {
+            int moved = 0;
+            for (FileBlobRepository.PackedRecord record : batch.values()) {
+                PackStore.Location copy = copies.get(record.getHash());
+                moved += blobRepository.movePacked(record.getHash(), segment, record.getPackOffset(),
+                        copy.segment(), copy.offset());
+            }
+            return moved;
+        });
+    }
+
+    // Moves blob content from the database into the packs, a batch of locked rows per transaction
+    private int migrate() {
+        int migrated = 0;
+        String afterHash = "";
+        List<String> hashes;
+        do {
+            hashes = blobRepository.findUnpackedHashes(afterHash, Limit.of(migrateBatchSize));
+            if (hashes.isEmpty()) {
+                break;
+            }
+            afterHash = hashes.get(hashes.size() - 1);
+            List<String> batch = hashes;
+            try {
+                migrated += transaction.execute(status -> {
+                    Map<String, byte[]> payloads = new LinkedHashMap<>();
+                    List<FileBlob> blobs = blobRepository.findUnpackedForUpdate(batch);
+                    for (FileBlob blob : blobs) {
+                        if (blob.getContent() != null) {
+                            payloads.put(blob.getHash(), blob.getContent());
+                        }
+                    }
+                    Map<String, PackStore.Location> locations = packStore.appendAll(payloads);
+                    for (FileBlob blob : blobs) {
+                        PackStore.Location location = locations.get(blob.getHash());
+                        if (location != null) {
+                            BlobStore.pack(blob, location);
+                        }
+                    }
+                    return locations.size();
+                });
+            } catch (RuntimeException e) {
+                LOGGER.warn("Could not move {} content blobs into the packs", batch.size(), e);
+                break;
+            }
+        } while (hashes.size() == migrateBatchSize);
+        return migrated;
+    }
+}
@@ -0,0 +1,425 @@
+package com.codeTogether.service;
+
+import com.codeTogether.util.ByteBufferInputStream;
+import com.codeTogether.util.ZlibPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// Append-only pack files for blob content, used by BlobStore when storage.blob.backend is pack.
+// Stored bytes are appended as records to numbered segment files and the blob row keeps only
+// their location. A record is a header (magic, payload length, CRC32 of the payload and the raw
+// SHA-256 of the blob) followed by the payload. Appends are forced to disk before their
+// locations are handed out. On startup a torn record at the end of the last segment is cut off,
+// while a corrupt record with data behind it stops startup. Reads are slices of a read-only
+// mapping of the segment, checked against the header.
+// Appends go to the last segment until it reaches segment-bytes; sealed segments are only
+// copied and retired by PackCompactor.
+@Service
+public class PackStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PackStore.class);
+    private static final int MAGIC = 0x434b5031;
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.pack");
+    public static final int HEADER_BYTES = 44;
+
+    @Value("${storage.pack.dir:packs}")
+    private String dir;
+
+    @Value("${storage.pack.segment-bytes:268435456}")
+    private long segmentBytes;
+
+    // Retired segments stay readable this long for reads that looked up the old location
+    @Value("${storage.pack.retired-segment-ttl-ms:60000}")
+    private long retiredTtlMillis;
+
+    private final ConcurrentSkipListMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+
+    // The segment being appended to; guarded by this
+    private FileChannel active;
+    private int activeId;
+    private long activeSize;
+
+    public record Location(int segment, long offset, int length) {
+    }
+
+    public record SegmentInfo(int segment, long size, boolean active, boolean retired) {
+    }
+
+    private static final class Segment {
+        final int id;
+        final Path path;
+        // Bytes of complete, forced records
+        volatile long size;
+        volatile MappedByteBuffer mapped;
+        volatile long retiredAt;
+
+        Segment(int id, Path path, long size) {
+            this.id = id;
+            this.path = path;
+            this.size = size;
+        }
+    }
+
+    @PostConstruct
+    void init() throws IOException {
+        if (segmentBytes <= HEADER_BYTES || segmentBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("storage.pack.segment-bytes must be between " + HEADER_BYTES + " and 2 GB");
+        }
+        Path root = Paths.get(dir);
+        if (!Files.isDirectory(root)) {
+            // Created by the first append
+            return;
+        }
+        try (Stream<Path> files = Files.list(root)) {
+            for (Path path : (Iterable<Path>) files::iterator) {
+                Matcher name = SEGMENT_NAME.matcher(path.getFileName().toString());
+                if (name.matches()) {
+                    int id = Integer.parseInt(name.group(1));
+                    segments.put(id, new Segment(id, path, Files.size(path)));
+                }
+            }
+        }
+        if (!segments.isEmpty()) {
+            Segment last = segments.lastEntry().getValue();
+            recover(last);
+            active = FileChannel.open(last.path, StandardOpenOption.WRITE);
+            active.position(last.size);
+            activeId = last.id;
+            activeSize = last.size;
+        }
+    }
+
+    // Only the last segment is ever appended to, so only its tail can hold a torn record: one that
+    // runs to the end of the file. A bad record with more data behind it is corruption, not a torn
+    // append; cutting it off would lose the records behind it, so startup fails instead.
+    private void recover(Segment segment) throws IOException {
+        long valid = 0;
+        try (FileChannel channel = FileChannel.open(segment.path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            // End of the first bad record; -1 when its header can't tell
+            long badEnd = size;
+            if (size > 0) {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                while (valid + HEADER_BYTES <= size) {
+                    int at = (int) valid;
+                    int length = mapped.getInt(at + 4);
+                    if (mapped.getInt(at) != MAGIC || length < 0) {
+                        // A tail the file system extended with zeros before the write reached it is torn too
+                        badEnd = zeroFilled(mapped, at, size) ? size : -1;
+                        break;
+                    }
+                    if (valid + HEADER_BYTES + length > size) {
+                        break;
+                    }
+                    if (crc(mapped.slice(at + HEADER_BYTES, length)) != mapped.getInt(at + 8)) {
+                        badEnd = valid + HEADER_BYTES + length;
+                        break;
+                    }
+                    valid += HEADER_BYTES + length;
+                }
+            }
+            if (valid < size && badEnd != size) {
+                String range = badEnd < 0 ? "from byte " + valid + " (record length unreadable)"
+                        : "at bytes " + valid + "-" + badEnd + ", followed by " + (size - badEnd) + " more bytes";
+                LOGGER.error("Pack segment {} has a corrupt record {}", segment.path, range);
+                throw new IllegalStateException("Pack segment " + segment.path + " has a corrupt record " + range
+                        + "; repair or restore the segment before starting");
+            }
+            if (valid < size) {
+                LOGGER.warn("Pack segment {} ends with a torn record at bytes {}-{}, truncating it to {} bytes",
+                        segment.path, valid, size, valid);
+                channel.truncate(valid);
+                channel.force(true);
+            }
+        }
+        segment.size = valid;
+    }
+
+    private static boolean zeroFilled(ByteBuffer buffer, int from, long to) {
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public Location append(String hash, byte[] payload) {
+        return appendAll(Map.of(hash, payload)).get(hash);
+    }
+
+    // Appends one record per hash and forces them to disk together
+    public synchronized Map<String, Location> appendAll(Map<String, byte[]> payloads) {
+        Map<String, Payload> records = new LinkedHashMap<>();
+        payloads.forEach((hash, payload) -> records.put(hash, new Payload(payload, null, payload.length)));
+        return appendRecords(records);
+    }
+
+    // Like appendAll, for payloads that were written to files, e.g. the compressed content of an
+    // upload; they are copied into the segment through a pooled buffer, never read onto the heap
+    public synchronized Map<String, Location> appendFiles(Map<String, Path> files) {
+        Map<String, Payload> records = new LinkedHashMap<>();
+        for (Map.Entry<String, Path> file : files.entrySet()) {
+            try {
+                records.put(file.getKey(), new Payload(null, file.getValue(), Files.size(file.getValue())));
+            } catch (IOException e) {
+                throw new RuntimeException("Could not read " + file.getValue() + " for " + file.getKey(), e);
+            }
+        }
+        return appendRecords(records);
+    }
+
+    private Map<String, Location> appendRecords(Map<String, Payload> payloads) {
+        Map<String, Location> locations = new LinkedHashMap<>();
+        Map<String, byte[]> rawHashes = new LinkedHashMap<>();
+        for (Map.Entry<String, Payload> entry : payloads.entrySet()) {
+            // A record larger than segment-bytes gets a segment to itself, but must stay mappable
+            if (HEADER_BYTES + entry.getValue().length() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Content of " + entry.getKey() + " is too large for a pack segment");
+            }
+            rawHashes.put(entry.getKey(), rawHash(entry.getKey()));
+        }
+        if (payloads.isEmpty()) {
+            return locations;
+        }
+        try {
+            for (Map.Entry<String, Payload> entry : payloads.entrySet()) {
+                Payload payload = entry.getValue();
+                long recordBytes = HEADER_BYTES + payload.length();
+                if (active == null || (activeSize > 0 && activeSize + recordBytes > segmentBytes)) {
+                    roll();
+                }
+                // The payload goes first so a file's CRC can be taken while it is copied
+                int crc = payload.bytes() != null
+                        ? writeBytes(payload.bytes(), activeSize + HEADER_BYTES)
+                        : writeFile(payload.file(), payload.length(), activeSize + HEADER_BYTES);
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                header.putInt(MAGIC).putInt((int) payload.length()).putInt(crc).put(rawHashes.get(entry.getKey())).flip();
+                writeFully(header, activeSize);
+                locations.put(entry.getKey(), new Location(activeId, activeSize, (int) payload.length()));
+                activeSize += recordBytes;
+            }
+            active.force(false);
+        } catch (IOException e) {
+            discardUnforced();
+            throw new RuntimeException("Could not append to pack segment " + activeId, e);
+        }
+        segments.get(activeId).size = activeSize;
+        return locations;
+    }
+
+    private int writeBytes(byte[] payload, long position) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(payload);
+        int crc = crc(data);
+        writeFully(data, position);
+        return crc;
+    }
+
+    private int writeFile(Path file, long length, long position) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = null;
+        try (InputStream in = Files.newInputStream(file)) {
+            buffer = ZlibPool.borrowBuffer();
+            long remaining = length;
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    throw new IOException(file + " ended " + remaining + " bytes early");
+                }
+                crc.update(buffer, 0, read);
+                writeFully(ByteBuffer.wrap(buffer, 0, read), position);
+                position += read;
+                remaining -= read;
+            }
+        } finally {
+            if (buffer != null) {
+                ZlibPool.releaseBuffer(buffer);
+            }
+        }
+        return (int) crc.getValue();
+    }
+
+    private void writeFully(ByteBuffer data, long position) throws IOException {
+        while (data.hasRemaining()) {
+            position += active.write(data, position);
+        }
+    }
+
+    private void roll() throws IOException {
+        if (active != null) {
+            active.force(false);
+            active.close();
+            segments.get(activeId).size = activeSize;
+        }
+        int id = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+        Path path = Paths.get(dir).resolve(String.format("segment-%06d.pack", id));
+        Files.createDirectories(path.getParent());
+        active = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        segments.put(id, new Segment(id, path, 0));
+        activeId = id;
+        activeSize = 0;
+        LOGGER.info("Appending to pack segment {}", path);
+    }
+
+    // Cuts off records written by a failed append, so the next one starts after the last good record
+    private void discardUnforced() {
+        if (active == null) {
+            return;
+        }
+        activeSize = segments.get(activeId).size;
+        try {
+            active.truncate(activeSize);
+            active.position(activeSize);
+        } catch (IOException e) {
+            LOGGER.warn("Could not truncate pack segment {} after a failed append", activeId, e);
+        }
+    }
+
+    // The payload of the record at location as a read-only slice of the mapped segment
+    public ByteBuffer read(String hash, Location location) {
+        Segment segment = segments.get(location.segment());
+        if (segment == null) {
+            throw new RuntimeException("Pack segment not found: " + location.segment() + " for content blob " + hash);
+        }
+        MappedByteBuffer mapped = mapping(segment, location.offset() + HEADER_BYTES + location.length());
+        int at = (int) location.offset();
+        ByteBuffer payload = mapped.slice(at + HEADER_BYTES, location.length());
+        if (mapped.getInt(at) != MAGIC || mapped.getInt(at + 4) != location.length()
+                || !mapped.slice(at + 12, 32).equals(ByteBuffer.wrap(rawHash(hash)))
+                || crc(payload) != mapped.getInt(at + 8)) {
+            throw new RuntimeException("Corrupt pack record for content blob " + hash + " at " + location);
+        }
+        return payload;
+    }
+
+    public byte[] readBytes(String hash, Location location) {
+        ByteBuffer payload = read(hash, location);
+        byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        return bytes;
+    }
+
+    public InputStream open(String hash, Location location) {
+        return new ByteBufferInputStream(read(hash, location));
+    }
+
+    // Maps the segment up to at least end. The segment being appended to is mapped again once it
+    // has grown past the current mapping; earlier mappings stay valid for readers still using them.
+    private MappedByteBuffer mapping(Segment segment, long end) {
+        MappedByteBuffer mapped = segment.mapped;
+        if (mapped != null && mapped.capacity() >= end) {
+            return mapped;
+        }
+        synchronized (segment) {
+            mapped = segment.mapped;
+            if (mapped == null || mapped.capacity() < end) {
+                long size = segment.size;
+                if (end > size) {
+                    throw new RuntimeException("Pack record ends past segment " + segment.id + " at " + end);
+                }
+                try (FileChannel channel = FileChannel.open(segment.path, StandardOpenOption.READ)) {
+                    mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                } catch (IOException e) {
+                    throw new RuntimeException("Could not map pack segment " + segment.path, e);
+                }
+                segment.mapped = mapped;
+            }
+            return mapped;
+        }
+    }
+
+    public synchronized int activeSegment() {
+        return active == null ? 0 : activeId;
+    }
+
+    public List<SegmentInfo> segments() {
+        int activeSegment = activeSegment();
+        List<SegmentInfo> infos = new ArrayList<>();
+        for (Segment segment : segments.values()) {
+            infos.add(new SegmentInfo(segment.id, segment.size, segment.id == activeSegment, segment.retiredAt > 0));
+        }
+        return infos;
+    }
+
+    // Marks a sealed segment whose records have all been moved; it is deleted after the retired TTL
+    public void retire(int id) {
+        if (id == activeSegment()) {
+            throw new IllegalArgumentException("Pack segment " + id + " is still being appended to");
+        }
+        Segment segment = segments.get(id);
+        if (segment != null && segment.retiredAt == 0) {
+            segment.retiredAt = System.currentTimeMillis();
+        }
+    }
+
+    // Deletes retired segments past their TTL and returns the bytes freed. Existing mappings
+    // keep the file's pages readable until they are collected.
+    public long removeRetired() {
+        long cutoff = System.currentTimeMillis() - retiredTtlMillis;
+        long freed = 0;
+        for (Segment segment : segments.values()) {
+            if (segment.retiredAt > 0 && segment.retiredAt <= cutoff && segments.remove(segment.id, segment)) {
+                try {
+                    Files.deleteIfExists(segment.path);
+                    freed += segment.size;
+                } catch (IOException e) {
+                    LOGGER.warn("Could not delete retired pack segment {}", segment.path, e);
+                }
+            }
+        }
+        return freed;
+    }
+
+    @PreDestroy
+    synchronized void shutdown() {
+        if (active != null) {
+            try {
+                active.close();
+            } catch (IOException e) {
+                LOGGER.debug("Could not close pack segment {}", activeId, e);
+            }
+        }
+    }
+
+    // Exactly one of bytes and file is set
+    private record Payload(byte[] bytes, Path file, long length) {
+    }
+
+    private static int crc(ByteBuffer data) {
+        CRC32 crc = new CRC32();
+        crc.update(data.duplicate());
+        return (int) crc.getValue();
+    }
+
+    private static byte[] rawHash(String hash) {
+        byte[] raw = HexFormat.of().parseHex(hash);
+        if (raw.length != 32) {
+            throw new IllegalArgumentException("Not a SHA-256 hash: " + hash);
+        }
+        return raw;
+    }
+}
@@ -0,0 +1,90 @@
+package com.codeTogether.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Runs the files of a multi-file upload concurrently on one shared, fixed-size pool, so
+// the number of files written at once stays bounded however many batches are in flight.
+// A failing file is reported in its result and doesn't abort the rest of the batch.
+@Service
+public class ParallelUploads {
+
+    public static final String OK = "OK";
+    public static final String FAILED = "FAILED";
+
+    @Value("${storage.upload.parallelism:8}")
+    private int parallelism;
+
+    private ExecutorService executor;
+
+    public record FileResult(String fileName, String status, long bytes, long elapsedMillis, String error) {
+    }
+
+    @FunctionalInterface
+    public interface FileTask {
+        // Stores one file and returns the number of bytes written
+        long store(MultipartFile file) throws Exception;
+    }
+
+    @PostConstruct
+    void init() {
+        AtomicInteger threads = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "upload-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Results are returned in the order of files
+    public List<FileResult> run(List<MultipartFile> files, FileTask task) {
+        List<Future<FileResult>> futures = new ArrayList<>(files.size());
+        for (MultipartFile file : files) {
+            futures.add(executor.submit(() -> store(file, task)));
+        }
+        List<FileResult> results = new ArrayList<>(files.size());
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                results.add(futures.get(i).get());
+            } catch (InterruptedException e) {
+                futures.forEach(future -> future.cancel(true));
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Upload interrupted", e);
+            } catch (ExecutionException e) {
+                results.add(failed(files.get(i).getOriginalFilename(), 0, e.getCause()));
+            }
+        }
+        return results;
+    }
+
+    public static FileResult failed(String fileName, long elapsedMillis, Throwable error) {
+        return new FileResult(fileName, FAILED, 0, elapsedMillis,
+                error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName());
+    }
+
+    private static FileResult store(MultipartFile file, FileTask task) {
+        long start = System.nanoTime();
+        try {
+            long bytes = task.store(file);
+            return new FileResult(file.getOriginalFilename(), OK, bytes, (System.nanoTime() - start) / 1_000_000, null);
+        } catch (Exception e) {
+            return failed(file.getOriginalFilename(), (System.nanoTime() - start) / 1_000_000, e);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+    }
+}
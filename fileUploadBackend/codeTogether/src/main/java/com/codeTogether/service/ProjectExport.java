@@ -0,0 +1,150 @@
+package com.codeTogether.service;
+
+import com.codeTogether.entity.FileData;
+import com.codeTogether.repository.FileMetadata;
+import com.codeTogether.repository.StorageRepository;
+import com.codeTogether.util.ZipStreamWriter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+// Streams a project folder (with its subfolders) as a ZIP archive: either the active files or
+// the files as they were at the end of a given day. Rows are read a page of metadata at a time
+// and each file's content is loaded only while its entry is written. Stored deflate data goes
+// into the archive as-is; other content (delta-encoded, other codecs, rows without a recorded
+// CRC32) is inflated and deflated again on the fly. If reading any file fails the archive is
+// aborted without its central directory, so the download can't pass for a complete export.
+@Service
+public class ProjectExport {
+
+    private static final int PAGE_SIZE = 500;
+
+    @Autowired
+    private StorageRepository repository;
+
+    @Autowired
+    private StorageService storageService;
+
+    @Value("${storage.compression.deflate-level:6}")
+    private int deflateLevel;
+
+    // Writes the archive of projectFolder to out; with a date, each file's latest version
+    // uploaded on or before that day is exported instead of the active one. Deletions aren't
+    // recorded with a date, so a file deleted since then is included as of its last version.
+    public void write(String projectFolder, LocalDate date, OutputStream out) throws IOException {
+        ZipStreamWriter zip = new ZipStreamWriter(out);
+        try {
+            addEntries(projectFolder, date, zip);
+        } catch (IOException | RuntimeException e) {
+            zip.abort();
+            throw e;
+        }
+        zip.finish();
+    }
+
+    private void addEntries(String projectFolder, LocalDate date, ZipStreamWriter zip) throws IOException {
+        if (date == null) {
+            forEachRow(projectFolder, true, row -> addEntry(projectFolder, row, true, zip));
+            return;
+        }
+        // Latest version per file as of the date; only one row per file is held
+        Map<String, FileMetadata> asOf = new LinkedHashMap<>();
+        forEachRow(projectFolder, false, row -> {
+            if (uploadedBy(row, date)) {
+                asOf.merge(row.getFileName(), row,
+                        (current, candidate) -> Math.abs(candidate.getVersion()) > Math.abs(current.getVersion()) ? candidate : current);
+            }
+        });
+        for (FileMetadata row : asOf.values()) {
+            addEntry(projectFolder, row, false, zip);
+        }
+    }
+
+    @FunctionalInterface
+    private interface RowVisitor {
+        void visit(FileMetadata row) throws IOException;
+    }
+
+    // Visits the rows (only the active ones with activeOnly) of the folder and then of its
+    // subfolders, in id order
+    private void forEachRow(String projectFolder, boolean activeOnly, RowVisitor visitor) throws IOException {
+        for (boolean subfolders : new boolean[] {false, true}) {
+            long afterId = 0;
+            List<FileMetadata> page;
+            do {
+                page = page(projectFolder, subfolders, activeOnly, afterId);
+                for (FileMetadata row : page) {
+                    visitor.visit(row);
+                    afterId = row.getId();
+                }
+            } while (page.size() == PAGE_SIZE);
+        }
+    }
+
+    private List<FileMetadata> page(String projectFolder, boolean subfolders, boolean activeOnly, long afterId) {
+        Limit limit = Limit.of(PAGE_SIZE);
+        if (activeOnly) {
+            return subfolders
+                    ? repository.findMetadataByProjectFolderStartingWithAndVersionGreaterThanAndIdGreaterThanOrderByIdAsc(projectFolder + "/", 0, afterId, limit)
+                    : repository.findMetadataByProjectFolderAndVersionGreaterThanAndIdGreaterThanOrderByIdAsc(projectFolder, 0, afterId, limit);
+        }
+        return subfolders
+                ? repository.findMetadataByProjectFolderStartingWithAndIdGreaterThanOrderByIdAsc(projectFolder + "/", afterId, limit)
+                : repository.findMetadataByProjectFolderAndIdGreaterThanOrderByIdAsc(projectFolder, afterId, limit);
+    }
+
+    private void addEntry(String projectFolder, FileMetadata row, boolean activeOnly, ZipStreamWriter zip) throws IOException {
+        // A row removed since the page was read is skipped, and so is one superseded since: its
+        // successor has a higher id and is exported when its page is read
+        Optional<FileData> loaded = repository.findById(row.getId()).filter(found -> !activeOnly || found.getVersion() > 0);
+        if (loaded.isEmpty()) {
+            return;
+        }
+        FileData fileData = loaded.get();
+        String name = entryName(projectFolder, fileData);
+        LocalDate modified = parseDate(fileData.getUploadDate());
+        Optional<StorageService.CompressedContent> stored = storageService.findCompressedContent(fileData)
+                .filter(content -> content.crc32() != null && fileData.getFileSize() != null);
+        if (stored.isPresent()) {
+            zip.addZlib(name, stored.get().open(), stored.get().length(), stored.get().crc32(), fileData.getFileSize(), modified);
+            return;
+        }
+        OutputStream entry = zip.beginEntry(name, modified, deflateLevel);
+        storageService.writeContent(fileData, 0, storageService.getContentLength(fileData), entry);
+        // Not closed on failure: closing would write a data descriptor for the partial content
+        entry.close();
+    }
+
+    // Path of the file relative to the exported folder
+    private static String entryName(String projectFolder, FileData fileData) {
+        String folder = fileData.getProjectFolder();
+        String relative = folder.length() > projectFolder.length() ? folder.substring(projectFolder.length() + 1) + "/" : "";
+        return relative + fileData.getFileName();
+    }
+
+    private static boolean uploadedBy(FileMetadata row, LocalDate date) {
+        LocalDate uploaded = parseDate(row.getUploadDate());
+        return uploaded != null && !uploaded.isAfter(date);
+    }
+
+    private static LocalDate parseDate(String uploadDate) {
+        if (uploadDate == null) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(uploadDate);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
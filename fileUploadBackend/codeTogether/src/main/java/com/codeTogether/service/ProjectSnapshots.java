@@ -0,0 +1,243 @@
+package com.codeTogether.service;
+
+import com.codeTogether.entity.FileData;
+import com.codeTogether.entity.ProjectSnapshot;
+import com.codeTogether.entity.SnapshotEntry;
+import com.codeTogether.repository.FileMetadata;
+import com.codeTogether.repository.ProjectSnapshotRepository;
+import com.codeTogether.repository.SnapshotEntryRepository;
+import com.codeTogether.repository.StorageRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import jakarta.transaction.Transactional;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+
+// Snapshots of a project folder and its subfolders. Taking one records which version of each
+// file is active, in one transaction that reads only metadata; every entry takes a reference
+// on its content blob, so the content stays available whatever happens to the version rows.
+// Restoring one commits the snapshot's content as new versions of the files that differ, all
+// in one batch that references the existing blobs, and files added since lose their active
+// version (it stays in history).
+@Service
+public class ProjectSnapshots {
+
+    private static final int PAGE_SIZE = 500;
+
+    @Autowired
+    private ProjectSnapshotRepository snapshotRepository;
+
+    @Autowired
+    private SnapshotEntryRepository entryRepository;
+
+    @Autowired
+    private StorageRepository repository;
+
+    @Autowired
+    private StorageService storageService;
+
+    @Autowired
+    private BlobStore blobStore;
+
+    public record SnapshotDetails(ProjectSnapshot snapshot, List<SnapshotEntry> entries) {
+    }
+
+    public enum ChangeType {
+        ADDED, REMOVED, MODIFIED
+    }
+
+    // A file that differs between two states; versions and hashes are null on the side without it
+    public record Change(String fileName, ChangeType change, Integer fromVersion, Integer toVersion,
+                         String fromHash, String toHash) {
+    }
+
+    public record RestoreResult(long snapshotId, int restored, int removed, int unchanged) {
+    }
+
+    @ResponseStatus(HttpStatus.NOT_FOUND)
+    public static class SnapshotNotFoundException extends RuntimeException {
+
+        public SnapshotNotFoundException(long snapshotId) {
+            super("Snapshot not found: " + snapshotId);
+        }
+    }
+
+    @Transactional(rollbackOn = IOException.class)
+    public ProjectSnapshot create(String projectFolder, String name, String createdBy) throws IOException {
+        if (projectFolder == null || projectFolder.isBlank()) {
+            throw new IllegalArgumentException("A project folder is required");
+        }
+        List<FileMetadata> active = activeRows(projectFolder);
+        ProjectSnapshot snapshot = snapshotRepository.save(ProjectSnapshot.builder()
+                .projectFolder(projectFolder)
+                .name(name)
+                .createdBy(createdBy)
+                .createdAt(LocalDateTime.now().toString())
+                .fileCount(active.size())
+                .build());
+        List<SnapshotEntry> entries = new ArrayList<>(active.size());
+        for (FileMetadata row : active) {
+            String contentHash = row.getContentHash();
+            Long fileSize = row.getFileSize();
+            if (contentHash == null) {
+                // Written before blob storage; its content has to be a blob to be referenced
+                FileData fileData = repository.findById(row.getId())
+                        .orElseThrow(() -> new RuntimeException("File " + row.getFileName() + " was removed while taking the snapshot"));
+                storageService.moveToBlobStore(fileData);
+                contentHash = fileData.getContentHash();
+                fileSize = fileData.getFileSize();
+            }
+            entries.add(SnapshotEntry.builder()
+                    .snapshotId(snapshot.getId())
+                    .fileName(row.getFileName())
+                    .projectFolder(row.getProjectFolder())
+                    .fileType(row.getFileType())
+                    .uploadedBy(row.getUploadedBy())
+                    .role(row.getRole())
+                    .version(row.getVersion())
+                    .fileSize(fileSize)
+                    .contentHash(contentHash)
+                    .build());
+        }
+        entryRepository.saveAll(entries);
+        blobStore.retainAll(entries.stream().map(SnapshotEntry::getContentHash).toList());
+        return snapshot;
+    }
+
+    public List<ProjectSnapshot> list(String projectFolder) {
+        return snapshotRepository.findByProjectFolderOrderByIdDesc(projectFolder);
+    }
+
+    public SnapshotDetails get(long snapshotId) {
+        return new SnapshotDetails(find(snapshotId), entryRepository.findBySnapshotIdOrderByFileNameAsc(snapshotId));
+    }
+
+    // Changes from one snapshot to another, or to the project's current state when toSnapshotId is null
+    public List<Change> diff(long fromSnapshotId, Long toSnapshotId) {
+        ProjectSnapshot from = find(fromSnapshotId);
+        Map<String, SnapshotEntry> before = byFileName(entryRepository.findBySnapshotIdOrderByFileNameAsc(fromSnapshotId));
+        Map<String, SnapshotEntry> after = toSnapshotId == null
+                ? byFileName(currentEntries(from.getProjectFolder()))
+                : byFileName(entryRepository.findBySnapshotIdOrderByFileNameAsc(find(toSnapshotId).getId()));
+        TreeSet<String> fileNames = new TreeSet<>(before.keySet());
+        fileNames.addAll(after.keySet());
+        List<Change> changes = new ArrayList<>();
+        for (String fileName : fileNames) {
+            SnapshotEntry was = before.get(fileName);
+            SnapshotEntry is = after.get(fileName);
+            ChangeType change;
+            if (was == null) {
+                change = ChangeType.ADDED;
+            } else if (is == null) {
+                change = ChangeType.REMOVED;
+            } else if (!sameState(was, is)) {
+                change = ChangeType.MODIFIED;
+            } else {
+                continue;
+            }
+            changes.add(new Change(fileName, change, was == null ? null : was.getVersion(), is == null ? null : is.getVersion(),
+                    was == null ? null : was.getContentHash(), is == null ? null : is.getContentHash()));
+        }
+        return changes;
+    }
+
+    // Makes the project match the snapshot. Files whose active version already has the snapshot's
+    // content in the same folder are left alone.
+    public RestoreResult restore(long snapshotId) throws IOException {
+        ProjectSnapshot snapshot = find(snapshotId);
+        List<SnapshotEntry> entries = entryRepository.findBySnapshotIdOrderByFileNameAsc(snapshotId);
+        Map<String, SnapshotEntry> current = byFileName(currentEntries(snapshot.getProjectFolder()));
+        List<FileData> targets = new ArrayList<>();
+        for (SnapshotEntry entry : entries) {
+            SnapshotEntry now = current.remove(entry.getFileName());
+            if (now == null || !sameState(entry, now)) {
+                targets.add(FileData.builder()
+                        .fileName(entry.getFileName())
+                        .fileType(entry.getFileType())
+                        .uploadedBy(entry.getUploadedBy())
+                        .role(entry.getRole())
+                        .projectFolder(entry.getProjectFolder())
+                        .fileSize(entry.getFileSize())
+                        .contentHash(entry.getContentHash())
+                        .build());
+            }
+        }
+        // What is left was added to the project after the snapshot
+        storageService.restoreVersions(targets, current.keySet());
+        return new RestoreResult(snapshotId, targets.size(), current.size(), entries.size() - targets.size());
+    }
+
+    // Deletes the snapshot and drops its references on the content blobs
+    @Transactional
+    public void delete(long snapshotId) {
+        ProjectSnapshot snapshot = find(snapshotId);
+        for (SnapshotEntry entry : entryRepository.findBySnapshotIdOrderByFileNameAsc(snapshotId)) {
+            blobStore.release(entry.getContentHash());
+        }
+        entryRepository.deleteBySnapshotId(snapshotId);
+        snapshotRepository.delete(snapshot);
+    }
+
+    private ProjectSnapshot find(long snapshotId) {
+        return snapshotRepository.findById(snapshotId).orElseThrow(() -> new SnapshotNotFoundException(snapshotId));
+    }
+
+    // The active files of the folder and its subfolders, as unsaved entries
+    private List<SnapshotEntry> currentEntries(String projectFolder) {
+        List<SnapshotEntry> entries = new ArrayList<>();
+        for (FileMetadata row : activeRows(projectFolder)) {
+            entries.add(SnapshotEntry.builder()
+                    .fileName(row.getFileName())
+                    .projectFolder(row.getProjectFolder())
+                    .version(row.getVersion())
+                    .fileSize(row.getFileSize())
+                    .contentHash(row.getContentHash())
+                    .build());
+        }
+        return entries;
+    }
+
+    private List<FileMetadata> activeRows(String projectFolder) {
+        List<FileMetadata> rows = new ArrayList<>();
+        for (boolean subfolders : new boolean[] {false, true}) {
+            long afterId = 0;
+            List<FileMetadata> page;
+            do {
+                page = subfolders
+                        ? repository.findMetadataByProjectFolderStartingWithAndVersionGreaterThanAndIdGreaterThanOrderByIdAsc(
+                                projectFolder + "/", 0, afterId, Limit.of(PAGE_SIZE))
+                        : repository.findMetadataByProjectFolderAndVersionGreaterThanAndIdGreaterThanOrderByIdAsc(
+                                projectFolder, 0, afterId, Limit.of(PAGE_SIZE));
+                rows.addAll(page);
+                if (!page.isEmpty()) {
+                    afterId = page.get(page.size() - 1).getId();
+                }
+            } while (page.size() == PAGE_SIZE);
+        }
+        return rows;
+    }
+
+    private static Map<String, SnapshotEntry> byFileName(List<SnapshotEntry> entries) {
+        Map<String, SnapshotEntry> byFileName = new LinkedHashMap<>();
+        entries.forEach(entry -> byFileName.put(entry.getFileName(), entry));
+        return byFileName;
+    }
+
+    // Same content in the same folder; rows without a hash (written before blob storage) compare by version
+    private static boolean sameState(SnapshotEntry a, SnapshotEntry b) {
+        boolean sameContent = a.getContentHash() != null && b.getContentHash() != null
+                ? a.getContentHash().equals(b.getContentHash())
+                : a.getVersion() == b.getVersion();
+        return sameContent && Objects.equals(a.getProjectFolder(), b.getProjectFolder());
+    }
+}
@@ -0,0 +1,484 @@
+package com.codeTogether.service;
+
+import com.codeTogether.entity.FileData;
+import com.codeTogether.entity.SearchTrigrams;
+import com.codeTogether.repository.FileMetadata;
+import com.codeTogether.repository.SearchTrigramsRepository;
+import com.codeTogether.repository.StorageRepository;
+import com.codeTogether.util.TextPatch;
+import com.codeTogether.util.Trigrams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+// Trigram index over the active versions of all text files. Documents are distinct contents
+// (by hash), so copies of a file in several folders are indexed once; each trigram maps to
+// the ascending ids of the documents containing it. A query is narrowed to the documents
+// holding all trigrams of its literals and the candidates are then matched line by line.
+// Trigram sets are persisted per content hash, so a restart rebuilds the postings from the
+// database without reading file contents. Changes are applied by one background thread.
+@Service
+public class SearchIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SearchIndex.class);
+    private static final int LOAD_BATCH = 500;
+    private static final int MAX_LINE_LENGTH = 300;
+
+    @Autowired
+    private StorageRepository repository;
+
+    @Autowired
+    private SearchTrigramsRepository trigramsRepository;
+
+    @Autowired
+    private StorageService storageService;
+
+    @Value("${storage.search.max-file-bytes:1048576}")
+    private long maxFileBytes;
+
+    @Value("${storage.search.max-scanned-files:5000}")
+    private int maxScannedFiles;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Guarded by lock
+    private final Map<Integer, Postings> postings = new HashMap<>();
+    private final Map<String, Doc> docsByKey = new HashMap<>();
+    private final List<Doc> docs = new ArrayList<>();
+    private final Map<String, FileRef> files = new HashMap<>();
+    private int deadDocs;
+
+    // Guarded by itself
+    private final Set<String> pending = new LinkedHashSet<>();
+    private ExecutorService indexer;
+    private volatile boolean loading = true;
+
+    private static class Postings {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+
+    // A distinct indexed content and the active files that have it
+    private static class Doc {
+        // Changed only by compact()
+        int id;
+        final String key;
+        final List<FileRef> files = new ArrayList<>();
+
+        Doc(int id, String key) {
+            this.id = id;
+            this.key = key;
+        }
+    }
+
+    // docKey is null for content that isn't indexed (binary or too large)
+    private record FileRef(String fileName, String projectFolder, int version, Long fileSize, String contentHash,
+                           String docKey) {
+    }
+
+    public record Hit(String fileName, String projectFolder, int version, int line, String text) {
+    }
+
+    public record SearchResult(List<Hit> hits, int candidateFiles, int scannedFiles, boolean truncated,
+                               boolean indexing, long elapsedMillis) {
+    }
+
+    @PostConstruct
+    void init() {
+        indexer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "search-indexer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        indexer.execute(() -> {
+            long start = System.nanoTime();
+            try {
+                Long cursor = 0L;
+                List<FileMetadata> page;
+                do {
+                    page = repository.findMetadataByVersionGreaterThanAndIdGreaterThanOrderByIdAsc(0, cursor, Limit.of(LOAD_BATCH));
+                    addAll(page);
+                    if (!page.isEmpty()) {
+                        cursor = page.get(page.size() - 1).getId();
+                    }
+                } while (page.size() == LOAD_BATCH);
+                LOGGER.info("Search index loaded {} files in {} ms", files.size(), (System.nanoTime() - start) / 1_000_000);
+            } catch (RuntimeException e) {
+                LOGGER.error("Loading the search index failed", e);
+            } finally {
+                loading = false;
+            }
+        });
+    }
+
+    // Committed changes to the active versions of these files; applied asynchronously
+    @EventListener
+    public void onFilesChanged(FilesChangedEvent event) {
+        boolean schedule;
+        synchronized (pending) {
+            schedule = pending.isEmpty();
+            pending.addAll(event.fileNames());
+        }
+        if (schedule) {
+            indexer.execute(this::applyPending);
+        }
+    }
+
+    public SearchResult search(String query, boolean regex, boolean caseSensitive, String projectFolder, int limit) {
+        long start = System.nanoTime();
+        int flags = caseSensitive ? 0 : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+        Pattern pattern = Pattern.compile(regex ? query : Pattern.quote(query), flags);
+        List<List<String>> literals = regex ? Trigrams.requiredLiterals(query, caseSensitive)
+                : query.length() >= 3 && (caseSensitive || query.chars().allMatch(c -> c < 128)) ? List.of(List.of(query)) : null;
+
+        List<FileRef> candidates = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (int id : candidateIds(literals)) {
+                Doc doc = docs.get(id);
+                if (doc == null) {
+                    continue;
+                }
+                for (FileRef file : doc.files) {
+                    if (projectFolder == null || projectFolder.equals(file.projectFolder())) {
+                        // One file per document is read; the hits are reported for all its files
+                        candidates.add(file);
+                        break;
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<Hit> hits = new ArrayList<>();
+        int scanned = 0;
+        boolean truncated = false;
+        for (FileRef candidate : candidates) {
+            if (hits.size() >= limit || scanned >= maxScannedFiles) {
+                truncated = true;
+                break;
+            }
+            scanned++;
+            List<Hit> fileHits = match(candidate, pattern, limit - hits.size());
+            if (fileHits.isEmpty()) {
+                continue;
+            }
+            hits.addAll(fileHits);
+            for (FileRef copy : copiesOf(candidate, projectFolder)) {
+                for (Hit hit : fileHits) {
+                    if (hits.size() >= limit) {
+                        break;
+                    }
+                    hits.add(new Hit(copy.fileName(), copy.projectFolder(), copy.version(), hit.line(), hit.text()));
+                }
+            }
+        }
+        return new SearchResult(hits, candidates.size(), scanned, truncated, loading, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        indexer.shutdownNow();
+    }
+
+    // Ids of documents that may match, ascending; all live documents if nothing narrows the query
+    private int[] candidateIds(List<List<String>> alternatives) {
+        if (alternatives == null) {
+            return docs.stream().filter(doc -> doc != null).mapToInt(doc -> doc.id).toArray();
+        }
+        BitSet union = new BitSet(docs.size());
+        for (List<String> required : alternatives) {
+            int[] ids = null;
+            for (String literal : required) {
+                for (int trigram : Trigrams.of(literal)) {
+                    Postings list = postings.get(trigram);
+                    if (list == null) {
+                        ids = Trigrams.NONE;
+                        break;
+                    }
+                    ids = ids == null ? Arrays.copyOf(list.ids, list.size) : intersect(ids, list);
+                }
+            }
+            for (int id : ids) {
+                union.set(id);
+            }
+        }
+        return union.stream().toArray();
+    }
+
+    private static int[] intersect(int[] ids, Postings list) {
+        int[] out = new int[Math.min(ids.length, list.size)];
+        int n = 0;
+        int j = 0;
+        for (int id : ids) {
+            while (j < list.size && list.ids[j] < id) {
+                j++;
+            }
+            if (j == list.size) {
+                break;
+            }
+            if (list.ids[j] == id) {
+                out[n++] = id;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private List<FileRef> copiesOf(FileRef file, String projectFolder) {
+        lock.readLock().lock();
+        try {
+            Doc doc = docsByKey.get(file.docKey());
+            if (doc == null) {
+                return List.of();
+            }
+            return doc.files.stream()
+                    .filter(copy -> copy != file && (projectFolder == null || projectFolder.equals(copy.projectFolder())))
+                    .collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<Hit> match(FileRef file, Pattern pattern, int limit) {
+        String text;
+        try {
+            text = new String(storageService.getContent(toFileData(file)), StandardCharsets.UTF_8);
+        } catch (RuntimeException e) {
+            // Changed or deleted since the candidates were collected
+            return List.of();
+        }
+        List<Hit> hits = new ArrayList<>();
+        Matcher matcher = pattern.matcher("");
+        int lineNumber = 0;
+        int lineStart = 0;
+        while (lineStart <= text.length() && hits.size() < limit) {
+            int lineEnd = text.indexOf('\n', lineStart);
+            if (lineEnd < 0) {
+                lineEnd = text.length();
+            }
+            lineNumber++;
+            matcher.reset(text.subSequence(lineStart, lineEnd));
+            if (matcher.find()) {
+                String line = text.substring(lineStart, Math.min(lineEnd, lineStart + MAX_LINE_LENGTH));
+                hits.add(new Hit(file.fileName(), file.projectFolder(), file.version(), lineNumber, line));
+            }
+            lineStart = lineEnd + 1;
+        }
+        return hits;
+    }
+
+    private FileData toFileData(FileRef file) {
+        if (file.contentHash() == null) {
+            // Rows from before blob storage keep their content inline
+            return storageService.getFileVersion(file.fileName(), file.version());
+        }
+        return FileData.builder()
+                .fileName(file.fileName())
+                .version(file.version())
+                .fileSize(file.fileSize())
+                .contentHash(file.contentHash())
+                .build();
+    }
+
+    private void applyPending() {
+        List<String> fileNames;
+        synchronized (pending) {
+            fileNames = new ArrayList<>(pending);
+            pending.clear();
+        }
+        for (String fileName : fileNames) {
+            try {
+                Optional<FileMetadata> active = repository.findMetadataByFileNameAndVersionGreaterThan(fileName, 0);
+                FileRef current;
+                lock.readLock().lock();
+                try {
+                    current = files.get(fileName);
+                } finally {
+                    lock.readLock().unlock();
+                }
+                if (active.isPresent() && current != null && current.version() == active.get().getVersion()
+                        && current.projectFolder().equals(active.get().getProjectFolder())) {
+                    continue;
+                }
+                if (active.isPresent()) {
+                    addAll(List.of(active.get()));
+                } else if (current != null) {
+                    lock.writeLock().lock();
+                    try {
+                        remove(fileName);
+                    } finally {
+                        lock.writeLock().unlock();
+                    }
+                }
+            } catch (RuntimeException e) {
+                LOGGER.warn("Could not update the search index for {}", fileName, e);
+            }
+        }
+    }
+
+    // Adds or replaces the files, loading stored trigram sets and computing the missing ones
+    private void addAll(List<FileMetadata> active) {
+        Map<String, FileMetadata> byKey = new HashMap<>();
+        for (FileMetadata file : active) {
+            byKey.putIfAbsent(docKey(file), file);
+        }
+        Map<String, int[]> trigrams = new HashMap<>();
+        Set<String> hashes = byKey.keySet().stream().filter(key -> !key.startsWith("inline:")).collect(Collectors.toSet());
+        for (SearchTrigrams stored : trigramsRepository.findAllById(hashes)) {
+            trigrams.put(stored.getContentHash(), stored.isText() ? Trigrams.decode(stored.getTrigrams()) : null);
+        }
+        List<SearchTrigrams> computed = new ArrayList<>();
+        for (Map.Entry<String, FileMetadata> entry : byKey.entrySet()) {
+            if (trigrams.containsKey(entry.getKey())) {
+                continue;
+            }
+            int[] extracted = extract(entry.getValue());
+            trigrams.put(entry.getKey(), extracted);
+            if (entry.getValue().getContentHash() != null) {
+                computed.add(SearchTrigrams.builder()
+                        .contentHash(entry.getKey())
+                        .trigrams(extracted != null ? Trigrams.encode(extracted) : new byte[0])
+                        .text(extracted != null)
+                        .build());
+            }
+        }
+        trigramsRepository.saveAll(computed);
+
+        lock.writeLock().lock();
+        try {
+            for (FileMetadata file : active) {
+                String key = docKey(file);
+                remove(file.getFileName());
+                boolean indexed = trigrams.get(key) != null;
+                FileRef ref = new FileRef(file.getFileName(), file.getProjectFolder(), file.getVersion(), file.getFileSize(),
+                        file.getContentHash(), indexed ? key : null);
+                files.put(file.getFileName(), ref);
+                if (indexed) {
+                    docsByKey.computeIfAbsent(key, k -> newDoc(k, trigrams.get(k))).files.add(ref);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Trigrams of the file's content, or null if it isn't UTF-8 text within the size limit
+    private int[] extract(FileMetadata file) {
+        if (file.getFileSize() != null && file.getFileSize() > maxFileBytes) {
+            return null;
+        }
+        byte[] content = storageService.getContent(toFileData(new FileRef(file.getFileName(), file.getProjectFolder(),
+                file.getVersion(), file.getFileSize(), file.getContentHash(), null)));
+        if (content.length > maxFileBytes) {
+            return null;
+        }
+        for (byte b : content) {
+            if (b == 0) {
+                return null;
+            }
+        }
+        try {
+            TextPatch.decodeText(content);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        return Trigrams.extract(content);
+    }
+
+    // Called with the write lock held
+    private Doc newDoc(String key, int[] trigrams) {
+        Doc doc = new Doc(docs.size(), key);
+        docs.add(doc);
+        for (int trigram : trigrams) {
+            postings.computeIfAbsent(trigram, t -> new Postings()).add(doc.id);
+        }
+        return doc;
+    }
+
+    // Called with the write lock held
+    private void remove(String fileName) {
+        FileRef ref = files.remove(fileName);
+        if (ref == null || ref.docKey() == null) {
+            return;
+        }
+        Doc doc = docsByKey.get(ref.docKey());
+        doc.files.remove(ref);
+        if (doc.files.isEmpty()) {
+            docsByKey.remove(doc.key);
+            docs.set(doc.id, null);
+            deadDocs++;
+            if (deadDocs > 1024 && deadDocs > docs.size() / 2) {
+                compact();
+            }
+        }
+    }
+
+    // Drops removed documents and numbers the live ones 0..n-1 in their old order, so docs
+    // shrinks and the postings stay ascending
+    private void compact() {
+        int[] renumbered = new int[docs.size()];
+        List<Doc> live = new ArrayList<>(docs.size() - deadDocs);
+        for (int id = 0; id < docs.size(); id++) {
+            Doc doc = docs.get(id);
+            renumbered[id] = doc != null ? live.size() : -1;
+            if (doc != null) {
+                doc.id = live.size();
+                live.add(doc);
+            }
+        }
+        postings.values().removeIf(list -> {
+            int n = 0;
+            for (int i = 0; i < list.size; i++) {
+                int id = renumbered[list.ids[i]];
+                if (id >= 0) {
+                    list.ids[n++] = id;
+                }
+            }
+            list.size = n;
+            list.ids = Arrays.copyOf(list.ids, Math.max(n, 4));
+            return n == 0;
+        });
+        docs.clear();
+        docs.addAll(live);
+        deadDocs = 0;
+    }
+
+    private static String docKey(FileMetadata file) {
+        return file.getContentHash() != null ? file.getContentHash() : "inline:" + file.getFileName() + ":" + file.getVersion();
+    }
+}
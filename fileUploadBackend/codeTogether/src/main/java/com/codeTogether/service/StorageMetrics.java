@@ -0,0 +1,107 @@
+package com.codeTogether.service;
+
+import com.codeTogether.util.ContentIngest;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Micrometer meters for the storage hot path, exposed at /actuator/prometheus. Time spent per
+// phase goes to one timer tagged with the phase, published with p50/p99 and as a histogram:
+// db_lookup (finding versions and blobs), compress, decompress, fs_write (mirror files) and
+// jpa_save (the commit transaction apart from its lookups).
+@Component
+public class StorageMetrics {
+
+    public static final String DB_LOOKUP = "db_lookup";
+    public static final String COMPRESS = "compress";
+    public static final String DECOMPRESS = "decompress";
+    public static final String FS_WRITE = "fs_write";
+    public static final String JPA_SAVE = "jpa_save";
+
+    @Autowired
+    private MeterRegistry registry;
+
+    private final Map<String, Timer> phases = new ConcurrentHashMap<>();
+    private final AtomicInteger uploadsInFlight = new AtomicInteger();
+    private DistributionSummary bytesIn;
+    private DistributionSummary bytesOut;
+    private DistributionSummary compressionRatio;
+
+    @FunctionalInterface
+    public interface PhaseWork<T, E extends Exception> {
+        T get() throws E;
+    }
+
+    @PostConstruct
+    void init() {
+        for (String phase : new String[] {DB_LOOKUP, COMPRESS, DECOMPRESS, FS_WRITE, JPA_SAVE}) {
+            phases.put(phase, Timer.builder("storage.phase")
+                    .description("Time spent in one phase of a storage operation")
+                    .tag("phase", phase)
+                    .publishPercentiles(0.5, 0.99)
+                    .publishPercentileHistogram()
+                    .register(registry));
+        }
+        bytesIn = DistributionSummary.builder("storage.bytes.in")
+                .description("Uncompressed size of uploaded files")
+                .baseUnit("bytes")
+                .publishPercentiles(0.5, 0.99)
+                .register(registry);
+        bytesOut = DistributionSummary.builder("storage.bytes.out")
+                .description("Bytes sent per download")
+                .baseUnit("bytes")
+                .publishPercentiles(0.5, 0.99)
+                .register(registry);
+        compressionRatio = DistributionSummary.builder("storage.compression.ratio")
+                .description("Compressed size divided by original size per upload")
+                .publishPercentiles(0.5, 0.99)
+                .register(registry);
+        Gauge.builder("storage.uploads.in_flight", uploadsInFlight, AtomicInteger::get)
+                .description("Uploads being read, compressed or committed")
+                .register(registry);
+    }
+
+    public <T, E extends Exception> T time(String phase, PhaseWork<T, E> work) throws E {
+        long start = System.nanoTime();
+        try {
+            return work.get();
+        } finally {
+            record(phase, System.nanoTime() - start);
+        }
+    }
+
+    public void record(String phase, long nanos) {
+        phases.get(phase).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    // Phases of the single ingest pass, which reads, mirrors and compresses in one loop
+    public void recordIngest(ContentIngest.Result result) {
+        record(COMPRESS, result.compressNanos());
+        record(FS_WRITE, result.mirrorNanos());
+        bytesIn.record(result.size());
+        if (result.size() > 0) {
+            compressionRatio.record((double) result.compressedSize() / result.size());
+        }
+    }
+
+    public void recordDownload(long bytes) {
+        bytesOut.record(bytes);
+    }
+
+    public void uploadsStarted(int count) {
+        uploadsInFlight.addAndGet(count);
+    }
+
+    public void uploadsFinished(int count) {
+        uploadsInFlight.addAndGet(-count);
+    }
+}
@@ -1,40 +1,40 @@
-package com.codeTogether.service;
-
-
-
-import com.codeTogether.entity.Task;
-import com.codeTogether.repository.TaskRepository;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.stereotype.Service;
-
-import java.util.List;
-
-@Service
-public class TaskService{
-
-    @Autowired
-    private TaskRepository taskRepository;
-
-    public List<Task> getAllTasks() {
-        return taskRepository.findAll();
-    }
-
-    public Task createTask(Task task) {
-        return taskRepository.save(task);
-    }
-
-    public Task updateTask(Long id, Task updatedTask) {
-        return taskRepository.findById(id).map(task -> {
-            task.setPmName(updatedTask.getPmName());
-            task.setEmpName(updatedTask.getEmpName());
-            task.setCategory(updatedTask.getCategory());
-            task.setDate(updatedTask.getDate());
-            task.setStatus(updatedTask.getStatus());
-            return taskRepository.save(task);
-        }).orElseThrow(() -> new RuntimeException("Task not found"));
-    }
-
-    public void deleteTask(Long id) {
-        taskRepository.deleteById(id);
-    }
-}
+package com.codeTogether.service;
+
+
+
+import com.codeTogether.entity.Task;
+import com.codeTogether.repository.TaskRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+@Service
+public class TaskService{
+
+    @Autowired
+    private TaskRepository taskRepository;
+
+    public List<Task> getAllTasks() {
+        return taskRepository.findAll();
+    }
+
+    public Task createTask(Task task) {
+        return taskRepository.save(task);
+    }
+
+    public Task updateTask(Long id, Task updatedTask) {
+        return taskRepository.findById(id).map(task -> {
+            task.setPmName(updatedTask.getPmName());
+            task.setEmpName(updatedTask.getEmpName());
+            task.setCategory(updatedTask.getCategory());
+            task.setDate(updatedTask.getDate());
+            task.setStatus(updatedTask.getStatus());
+            return taskRepository.save(task);
+        }).orElseThrow(() -> new RuntimeException("Task not found"));
+    }
+
+    public void deleteTask(Long id) {
+        taskRepository.deleteById(id);
+    }
+}
@@ -0,0 +1,195 @@
+package com.codeTogether.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import jakarta.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Admission control for uploads. Every upload request is charged its size (the request's
+// Content-Length) against a global budget of in-flight bytes and uploads and against the
+// same per-user budget. Requests that don't fit wait in arrival order for up to the queue
+// timeout; when the queue is full or the timeout passes they are rejected, which the web
+// layer answers with 429. A waiter that doesn't fit the global budget holds back the ones
+// behind it, so large uploads aren't starved by a stream of small ones; a waiter held only
+// by its own user's budget doesn't.
+@Service
+public class UploadAdmission {
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Value("${storage.admission.max-in-flight-bytes:536870912}")
+    private long maxBytes;
+
+    @Value("${storage.admission.max-uploads:16}")
+    private int maxUploads;
+
+    @Value("${storage.admission.max-user-in-flight-bytes:134217728}")
+    private long maxUserBytes;
+
+    @Value("${storage.admission.max-user-uploads:4}")
+    private int maxUserUploads;
+
+    @Value("${storage.admission.max-queued:64}")
+    private int maxQueued;
+
+    @Value("${storage.admission.queue-timeout-ms:10000}")
+    private long queueTimeoutMillis;
+
+    @Value("${storage.admission.retry-after-seconds:5}")
+    private int retryAfterSeconds;
+
+    // All fields below are guarded by this
+    private final LinkedList<Ticket> queue = new LinkedList<>();
+    private final Map<String, Usage> users = new HashMap<>();
+    private long bytesInFlight;
+    private int uploadsInFlight;
+
+    private Counter rejectedQueueFull;
+    private Counter rejectedTimeout;
+
+    // An admitted upload; hand it back to release once the request is done
+    public static final class Ticket {
+        private final String user;
+        private final long bytes;
+        private boolean admitted;
+
+        private Ticket(String user, long bytes) {
+            this.user = user;
+            this.bytes = bytes;
+        }
+    }
+
+    private static final class Usage {
+        long bytes;
+        int uploads;
+    }
+
+    // Answered with 429 and a Retry-After header
+    public static class AdmissionRejectedException extends ResponseStatusException {
+
+        private final int retryAfterSeconds;
+
+        public AdmissionRejectedException(String message, int retryAfterSeconds) {
+            super(HttpStatus.TOO_MANY_REQUESTS, message);
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            HttpHeaders headers = new HttpHeaders();
+            headers.set(HttpHeaders.RETRY_AFTER, Integer.toString(retryAfterSeconds));
+            return headers;
+        }
+    }
+
+    public record Summary(long bytesInFlight, int uploadsInFlight, int queued, double rejectedQueueFull,
+                          double rejectedTimeout) {
+    }
+
+    @PostConstruct
+    void init() {
+        Gauge.builder("storage.admission.queued", this, admission -> admission.summary().queued())
+                .description("Upload requests waiting for admission")
+                .register(registry);
+        Gauge.builder("storage.admission.in_flight_bytes", this, admission -> admission.summary().bytesInFlight())
+                .description("Bytes charged to admitted upload requests")
+                .baseUnit("bytes")
+                .register(registry);
+        rejectedQueueFull = Counter.builder("storage.admission.rejected")
+                .description("Upload requests rejected by admission control")
+                .tag("reason", "queue_full")
+                .register(registry);
+        rejectedTimeout = Counter.builder("storage.admission.rejected")
+                .description("Upload requests rejected by admission control")
+                .tag("reason", "timeout")
+                .register(registry);
+    }
+
+    // Waits until the upload fits the budgets. requestBytes is negative when the size isn't
+    // known up front; such a request is charged the whole per-user budget. A request larger
+    // than a budget is charged the budget, so it is admitted once it has it to itself.
+    public Ticket acquire(String user, long requestBytes) throws InterruptedException {
+        long bytes = Math.min(requestBytes < 0 ? maxUserBytes : requestBytes, Math.min(maxBytes, maxUserBytes));
+        Ticket ticket = new Ticket(user, bytes);
+        synchronized (this) {
+            if (queue.size() >= maxQueued) {
+                rejectedQueueFull.increment();
+                throw new AdmissionRejectedException("Too many uploads waiting, try again later", retryAfterSeconds);
+            }
+            queue.add(ticket);
+            admitWaiting();
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(queueTimeoutMillis);
+            try {
+                while (!ticket.admitted) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        rejectedTimeout.increment();
+                        throw new AdmissionRejectedException("Upload was not admitted within " + queueTimeoutMillis
+                                + " ms, try again later", retryAfterSeconds);
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                }
+            } finally {
+                if (!ticket.admitted) {
+                    // Leaving the queue may unblock the waiters behind this one
+                    queue.remove(ticket);
+                    admitWaiting();
+                }
+            }
+        }
+        return ticket;
+    }
+
+    public synchronized void release(Ticket ticket) {
+        bytesInFlight -= ticket.bytes;
+        uploadsInFlight--;
+        Usage usage = users.get(ticket.user);
+        usage.bytes -= ticket.bytes;
+        if (--usage.uploads == 0) {
+            users.remove(ticket.user);
+        }
+        admitWaiting();
+    }
+
+    public synchronized Summary summary() {
+        return new Summary(bytesInFlight, uploadsInFlight, queue.size(), rejectedQueueFull.count(), rejectedTimeout.count());
+    }
+
+    // Called with the monitor held
+    private void admitWaiting() {
+        boolean admitted = false;
+        for (Iterator<Ticket> it = queue.iterator(); it.hasNext(); ) {
+            Ticket ticket = it.next();
+            if (uploadsInFlight >= maxUploads || bytesInFlight + ticket.bytes > maxBytes) {
+                break;
+            }
+            Usage usage = users.computeIfAbsent(ticket.user, user -> new Usage());
+            if (usage.uploads >= maxUserUploads || usage.bytes + ticket.bytes > maxUserBytes) {
+                continue;
+            }
+            it.remove();
+            usage.bytes += ticket.bytes;
+            usage.uploads++;
+            bytesInFlight += ticket.bytes;
+            uploadsInFlight++;
+            ticket.admitted = true;
+            admitted = true;
+        }
+        if (admitted) {
+            notifyAll();
+        }
+    }
+}
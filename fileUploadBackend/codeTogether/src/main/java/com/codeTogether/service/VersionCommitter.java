@@ -0,0 +1,193 @@
+package com.codeTogether.service;
+
+import com.codeTogether.entity.FileData;
+import com.codeTogether.repository.StorageRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Serializes version changes per file name. Writers of the same file take the same lock
+// stripe, so within this process they commit one after another while different files
+// commit in parallel; a multi-file commit holds the stripes of all its files. Each commit
+// runs in its own transaction that completes before the lock is released. Across
+// processes the database is the guard: the active row's @Version column rejects a second
+// supersede and the unique (fileName, version) constraint rejects a second insert of the
+// same version, and the loser retries.
+@Service
+public class VersionCommitter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VersionCommitter.class);
+    private static final int STRIPES = 256;
+
+    @Autowired
+    private StorageRepository repository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ContentCache contentCache;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private StorageMetrics metrics;
+
+    @Value("${storage.commit.max-attempts:3}")
+    private int maxAttempts;
+
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+    private TransactionTemplate transaction;
+
+    @FunctionalInterface
+    public interface VersionWork<T> {
+        // Called with the just-superseded version (if any) and the version number to write
+        T apply(Optional<FileData> superseded, int newVersion) throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface BatchWork<T> {
+        // superseded holds the just-superseded version of each file that had one; newVersions
+        // the version number to write for every file
+        T apply(Map<String, FileData> superseded, Map<String, Integer> newVersions) throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface LockedWork<T> {
+        T apply() throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface AfterCommit<T> {
+        // Still runs under the file's lock, so on-disk effects happen in commit order
+        void accept(T result) throws IOException;
+    }
+
+    @PostConstruct
+    void init() {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        transaction = new TransactionTemplate(transactionManager);
+        transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    // Marks the active version of fileName as previous and lets work write the next one.
+    // The new version number is one above any version the file ever had, so it can't
+    // collide with a previous version left behind by a delete.
+    public <T> T commit(String fileName, VersionWork<T> work, AfterCommit<T> afterCommit) throws IOException {
+        return commitAll(List.of(fileName), (superseded, newVersions) ->
+                work.apply(Optional.ofNullable(superseded.get(fileName)), newVersions.get(fileName)), afterCommit);
+    }
+
+    // Commits new versions of several files in one transaction. Versions and active rows of
+    // all files are read with one query each, and the supersede updates are left to the flush,
+    // where they are sent as JDBC batches together with the inserts of the new versions.
+    public <T> T commitAll(Collection<String> fileNames, BatchWork<T> work, AfterCommit<T> afterCommit) throws IOException {
+        Map<String, Integer> newVersions = new HashMap<>();
+        Map<String, FileData> superseded = new HashMap<>();
+        // End of the version lookups of the last attempt; the rest of the transaction up to
+        // its commit counts as the save
+        long[] lookedUpAt = new long[1];
+        return lockedAll(fileNames, () -> {
+            long start = System.nanoTime();
+            newVersions.clear();
+            superseded.clear();
+            for (String fileName : fileNames) {
+                newVersions.put(fileName, 1);
+            }
+            for (StorageRepository.MaxVersion max : repository.findMaxVersions(fileNames)) {
+                newVersions.put(max.getFileName(), max.getMaxVersion() + 1);
+            }
+            for (FileData active : repository.findByFileNameInAndVersionGreaterThan(fileNames, 0)) {
+                active.setVersion(-active.getVersion());
+                superseded.put(active.getFileName(), active);
+            }
+            lookedUpAt[0] = System.nanoTime();
+            metrics.record(StorageMetrics.DB_LOOKUP, lookedUpAt[0] - start);
+            return work.apply(superseded, newVersions);
+        }, result -> {
+            metrics.record(StorageMetrics.JPA_SAVE, System.nanoTime() - lookedUpAt[0]);
+            // Cached content of the superseded versions is unreachable now, and a new version
+            // number can only have been used before if all rows of the file were deleted
+            superseded.values().forEach(previous -> contentCache.invalidate(previous.getFileName(), -previous.getVersion()));
+            newVersions.forEach(contentCache::invalidate);
+            eventPublisher.publishEvent(new FilesChangedEvent(List.copyOf(newVersions.keySet())));
+            if (afterCommit != null) {
+                afterCommit.accept(result);
+            }
+        });
+    }
+
+    // Runs work in a transaction while holding fileName's lock, for changes that don't add a version
+    public <T> T locked(String fileName, LockedWork<T> work, AfterCommit<T> afterCommit) throws IOException {
+        return lockedAll(List.of(fileName), work, afterCommit);
+    }
+
+    // Stripes are always taken in ascending order, so batches with overlapping files can't deadlock
+    private <T> T lockedAll(Collection<String> fileNames, LockedWork<T> work, AfterCommit<T> afterCommit) throws IOException {
+        int[] stripes = fileNames.stream().mapToInt(VersionCommitter::stripe).distinct().sorted().toArray();
+        int held = 0;
+        try {
+            for (int stripe : stripes) {
+                locks[stripe].lock();
+                held++;
+            }
+            T result = inTransaction(fileNames.size() == 1 ? fileNames.iterator().next() : fileNames.size() + " files", work);
+            if (afterCommit != null) {
+                afterCommit.accept(result);
+            }
+            return result;
+        } finally {
+            for (int i = held - 1; i >= 0; i--) {
+                locks[stripes[i]].unlock();
+            }
+        }
+    }
+
+    private static int stripe(String fileName) {
+        int hash = fileName.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), STRIPES);
+    }
+
+    private <T> T inTransaction(String fileName, LockedWork<T> work) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transaction.execute(status -> {
+                    try {
+                        return work.apply();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } catch (OptimisticLockingFailureException | DataIntegrityViolationException e) {
+                // Another instance committed a version of this file first
+                if (attempt >= maxAttempts) {
+                    throw new RuntimeException("Could not commit " + fileName + " after " + attempt + " attempts", e);
+                }
+                LOGGER.info("Retrying commit of {} after a concurrent update (attempt {})", fileName, attempt);
+            }
+        }
+    }
+}
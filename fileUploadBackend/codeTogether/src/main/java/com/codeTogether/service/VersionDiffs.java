@@ -0,0 +1,156 @@
+package com.codeTogether.service;
+
+import com.codeTogether.entity.FileData;
+import com.codeTogether.util.LineDiff;
+import com.codeTogether.util.TextPatch;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+// Server-side diffs between two versions of a file. Versions with the same content hash are
+// answered as the same without reading either; binary content and files larger than
+// max-file-bytes only get a differs/same answer. Binary files are recognized by their type or
+// their first block, so they are never read in full. Text is diffed line by line with LineDiff.
+// Computed diffs are cached by the pair of content hashes, which never change meaning, so
+// entries need no invalidation and versions that share content share the entry.
+@Service
+public class VersionDiffs {
+
+    // Per-entry bookkeeping counted on top of the line text
+    private static final int ENTRY_OVERHEAD = 256;
+    private static final int LINE_OVERHEAD = 48;
+    private static final int PROBE_BYTES = 8192;
+
+    @Autowired
+    private StorageService storageService;
+
+    @Value("${storage.diff.max-file-bytes:8388608}")
+    private long maxFileBytes;
+
+    @Value("${storage.diff.timeout-ms:2000}")
+    private long timeoutMillis;
+
+    @Value("${storage.diff.cache-max-bytes:16777216}")
+    private long cacheMaxBytes;
+
+    private Cache<Key, Computed> cache;
+
+    public enum Comparison {
+        // Decided from the content hashes or bytes alone
+        SAME_CONTENT, BINARY, TOO_LARGE,
+        // Diffed line by line
+        LINES
+    }
+
+    // identical is from the hashes (or the content, for versions stored before hashes were
+    // recorded); diff is set only for LINES
+    public record VersionDiff(String fileName, int fromVersion, int toVersion, String fromHash, String toHash,
+                              boolean identical, Comparison comparison, LineDiff.Result diff) {
+    }
+
+    private record Key(String fromHash, String toHash, int context) {
+    }
+
+    // BINARY or LINES, with the diff for LINES
+    private record Computed(Comparison comparison, LineDiff.Result diff) {
+    }
+
+    @PostConstruct
+    void init() {
+        cache = Caffeine.newBuilder()
+                .maximumWeight(cacheMaxBytes)
+                .weigher((Key key, Computed computed) -> weight(computed.diff()))
+                .build();
+    }
+
+    // Diff from one version to another; a null toVersion means the active version
+    public VersionDiff diff(String fileName, int fromVersion, Integer toVersion, int context) throws IOException {
+        FileData from = storageService.getFileVersion(fileName, fromVersion);
+        FileData to = toVersion == null ? storageService.getActiveFile(fileName) : storageService.getFileVersion(fileName, toVersion);
+        String fromHash = from.getContentHash();
+        String toHash = to.getContentHash();
+        boolean hashed = fromHash != null && toHash != null;
+        if (hashed && fromHash.equals(toHash)) {
+            return result(from, to, true, Comparison.SAME_CONTENT, null);
+        }
+        if (storageService.getContentLength(from) > maxFileBytes || storageService.getContentLength(to) > maxFileBytes) {
+            // Sizes alone can't prove content equal, so without hashes a large pair is compared in full
+            boolean identical = !hashed && sameContent(from, to);
+            return result(from, to, identical, identical ? Comparison.SAME_CONTENT : Comparison.TOO_LARGE, null);
+        }
+        Key key = hashed ? new Key(fromHash, toHash, context) : null;
+        Computed cached = key != null ? cache.getIfPresent(key) : null;
+        if (cached != null) {
+            return result(from, to, false, cached.comparison(), cached.diff());
+        }
+        if (hashed && (isBinary(from) || isBinary(to))) {
+            // Different hashes already answer that they differ
+            cache.put(key, new Computed(Comparison.BINARY, null));
+            return result(from, to, false, Comparison.BINARY, null);
+        }
+        byte[] fromContent = storageService.getContent(from);
+        byte[] toContent = storageService.getContent(to);
+        if (!hashed && Arrays.equals(fromContent, toContent)) {
+            return result(from, to, true, Comparison.SAME_CONTENT, null);
+        }
+        Computed computed = compute(fromContent, toContent, context);
+        if (key != null) {
+            cache.put(key, computed);
+        }
+        return result(from, to, false, computed.comparison(), computed.diff());
+    }
+
+    private Computed compute(byte[] fromContent, byte[] toContent, int context) {
+        String fromText;
+        String toText;
+        try {
+            fromText = TextPatch.decodeText(fromContent);
+            toText = TextPatch.decodeText(toContent);
+        } catch (IllegalArgumentException e) {
+            return new Computed(Comparison.BINARY, null);
+        }
+        return new Computed(Comparison.LINES, LineDiff.diff(fromText, toText, context, timeoutMillis));
+    }
+
+    // Compressed and media formats by type or extension, otherwise a first block that isn't UTF-8
+    // text; only that block is inflated
+    private boolean isBinary(FileData fileData) throws IOException {
+        if (CompressionPolicy.isCompressedFormat(fileData.getFileType(), fileData.getFileName())) {
+            return true;
+        }
+        long length = Math.min(PROBE_BYTES, storageService.getContentLength(fileData));
+        ByteArrayOutputStream probe = new ByteArrayOutputStream((int) length);
+        storageService.writeContent(fileData, 0, length, probe);
+        return TextPatch.isBinaryPrefix(probe.toByteArray());
+    }
+
+    private boolean sameContent(FileData from, FileData to) throws IOException {
+        return storageService.getContentLength(from) == storageService.getContentLength(to)
+                && Arrays.equals(storageService.getContent(from), storageService.getContent(to));
+    }
+
+    private static VersionDiff result(FileData from, FileData to, boolean identical, Comparison comparison, LineDiff.Result diff) {
+        return new VersionDiff(from.getFileName(), from.getVersion(), to.getVersion(), from.getContentHash(), to.getContentHash(),
+                identical, comparison, diff);
+    }
+
+    private static int weight(LineDiff.Result result) {
+        long weight = ENTRY_OVERHEAD;
+        if (result == null) {
+            return (int) weight;
+        }
+        for (LineDiff.Hunk hunk : result.hunks()) {
+            for (LineDiff.Line line : hunk.lines()) {
+                weight += LINE_OVERHEAD + 2L * line.text().length();
+            }
+        }
+        return (int) Math.min(Integer.MAX_VALUE, weight);
+    }
+}
@@ -0,0 +1,64 @@
+package com.codeTogether.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+// Compression format used for stored content. The id is persisted with the content so
+// it can always be decoded with the codec that wrote it, whatever the current policy is.
+public interface CompressionCodec {
+
+    String id();
+
+    // Wraps out so that bytes written are compressed; closing the stream finishes the format
+    OutputStream compress(OutputStream out) throws IOException;
+
+    InputStream decompress(InputStream in) throws IOException;
+
+    default byte[] compress(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream compressed = compress(out)) {
+            compressed.write(data);
+        } catch (IOException e) {
+            throw new RuntimeException("Error compressing file", e);
+        }
+        return out.toByteArray();
+    }
+
+    default InputStream openDecompressed(byte[] data) {
+        try {
+            return decompress(new ByteArrayInputStream(data));
+        } catch (IOException e) {
+            throw new RuntimeException("Error decompressing file", e);
+        }
+    }
+
+    default byte[] decompress(byte[] data) {
+        try (InputStream in = openDecompressed(data)) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new RuntimeException("Error decompressing file", e);
+        }
+    }
+
+    // Decodes content whose uncompressed length is known, so codecs can size the output exactly
+    default byte[] decompress(byte[] data, long originalSize) {
+        return decompress(data);
+    }
+
+    // Codec for a stored id; content written before codecs were recorded is deflate
+    static CompressionCodec forId(String id) {
+        if (id == null || id.equals(DeflateCodec.ID)) {
+            return DeflateCodec.DEFAULT;
+        }
+        if (id.equals(NoneCodec.ID)) {
+            return NoneCodec.INSTANCE;
+        }
+        if (id.equals(Lz4Codec.ID)) {
+            return Lz4Codec.INSTANCE;
+        }
+        throw new IllegalArgumentException("Unknown compression codec: " + id);
+    }
+}
@@ -0,0 +1,92 @@
+package com.codeTogether.util;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+// Single-pass ingest: reads the upload stream once and tees every chunk into the
+// on-disk mirror, the compressor, a SHA-256 digest and a CRC32. The compressed output
+// goes to a file, so heap use per upload is a few fixed buffers whatever the file size.
+// The codec is chosen from the first block before anything is compressed.
+public class ContentIngest {
+
+    private static final int BUFFER_SIZE = 8192;
+    public static final int PROBE_SIZE = ZlibPool.BUFFER_SIZE;
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    // compressed is the file the compressed content was written to, compressedSize its length
+    public record Result(Path compressed, long compressedSize, long size, String sha256, long crc32, String codecId,
+                         long compressNanos, long mirrorNanos, long cpuNanos) {
+    }
+
+    public static Result ingest(InputStream in, OutputStream mirror, Path compressed,
+                                Function<byte[], CompressionCodec> codecForFirstBlock) throws IOException {
+        long cpuStart = THREADS.getCurrentThreadCpuTime();
+        MessageDigest digest = sha256();
+        CRC32 crc = new CRC32();
+
+        long size = 0;
+        long compressNanos = 0;
+        long mirrorNanos = 0;
+        CompressionCodec codec;
+        byte[] buffer = null;
+        OutputStream compressedOut = null;
+        OutputStream compressor = null;
+        boolean finished = false;
+        try {
+            buffer = ZlibPool.borrowBuffer();
+            int read = in.readNBytes(buffer, 0, PROBE_SIZE);
+            codec = codecForFirstBlock.apply(Arrays.copyOf(buffer, read));
+            compressedOut = new BufferedOutputStream(Files.newOutputStream(compressed), BUFFER_SIZE);
+            compressor = codec.compress(compressedOut);
+            while (read > 0) {
+                long start = System.nanoTime();
+                mirror.write(buffer, 0, read);
+                long mirrored = System.nanoTime();
+                mirrorNanos += mirrored - start;
+                digest.update(buffer, 0, read);
+                crc.update(buffer, 0, read);
+                start = System.nanoTime();
+                compressor.write(buffer, 0, read);
+                compressNanos += System.nanoTime() - start;
+                size += read;
+                read = in.read(buffer, 0, BUFFER_SIZE);
+            }
+            long start = System.nanoTime();
+            compressor.close();
+            compressNanos += System.nanoTime() - start;
+            finished = true;
+        } finally {
+            // Closing the compressor also returns its pooled Deflater and closes the file
+            if (!finished && compressor != null) {
+                compressor.close();
+            } else if (!finished && compressedOut != null) {
+                compressedOut.close();
+            }
+            if (buffer != null) {
+                ZlibPool.releaseBuffer(buffer);
+            }
+        }
+        return new Result(compressed, Files.size(compressed), size, HexFormat.of().formatHex(digest.digest()), crc.getValue(),
+                codec.id(), compressNanos, mirrorNanos, THREADS.getCurrentThreadCpuTime() - cpuStart);
+    }
+
+    public static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
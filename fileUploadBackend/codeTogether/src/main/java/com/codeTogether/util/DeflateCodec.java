@@ -0,0 +1,44 @@
+package com.codeTogether.util;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+// zlib-wrapped deflate at a configurable level. The level only affects writing, so all
+// levels share one id.
+public class DeflateCodec implements CompressionCodec {
+
+    public static final String ID = "deflate";
+    public static final DeflateCodec DEFAULT = new DeflateCodec(Deflater.DEFAULT_COMPRESSION);
+
+    private final int level;
+
+    public DeflateCodec(int level) {
+        this.level = level;
+    }
+
+    @Override
+    public String id() {
+        return ID;
+    }
+
+    @Override
+    public OutputStream compress(OutputStream out) {
+        return FileUtils.openCompressing(out, level);
+    }
+
+    @Override
+    public byte[] compress(byte[] data) {
+        return FileUtils.compressFile(data, level);
+    }
+
+    @Override
+    public InputStream decompress(InputStream in) {
+        return FileUtils.openDecompressed(in);
+    }
+
+    @Override
+    public byte[] decompress(byte[] data, long originalSize) {
+        return FileUtils.decompressFile(data, originalSize);
+    }
+}
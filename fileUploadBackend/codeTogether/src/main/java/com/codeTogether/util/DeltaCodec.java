@@ -0,0 +1,135 @@
+package com.codeTogether.util;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Binary delta between two versions of a file, expressed as COPY ranges from the base
+// and literal INSERTs. Base blocks are indexed by a rolling hash so that moved and
+// unchanged regions are found in a single pass over the target.
+public class DeltaCodec {
+
+    private static final int BLOCK_SIZE = 16;
+    private static final int PRIME = 31;
+    private static final byte OP_COPY = 0;
+    private static final byte OP_INSERT = 1;
+
+    public static byte[] encode(byte[] base, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, target.length / 8));
+        writeVarLong(out, target.length);
+
+        Map<Integer, Integer> index = new HashMap<>();
+        for (int i = 0; i + BLOCK_SIZE <= base.length; i += BLOCK_SIZE) {
+            index.putIfAbsent(hash(base, i), i);
+        }
+
+        int power = 1;
+        for (int i = 1; i < BLOCK_SIZE; i++) {
+            power *= PRIME;
+        }
+        int insertStart = 0;
+        int i = 0;
+        int h = target.length >= BLOCK_SIZE ? hash(target, 0) : 0;
+        while (i + BLOCK_SIZE <= target.length) {
+            Integer candidate = index.get(h);
+            if (candidate != null && Arrays.equals(base, candidate, candidate + BLOCK_SIZE, target, i, i + BLOCK_SIZE)) {
+                int baseStart = candidate;
+                int targetStart = i;
+                // Extend the match backwards into the pending literal run, then forwards
+                while (targetStart > insertStart && baseStart > 0 && base[baseStart - 1] == target[targetStart - 1]) {
+                    baseStart--;
+                    targetStart--;
+                }
+                int end = i + BLOCK_SIZE;
+                int baseEnd = candidate + BLOCK_SIZE;
+                while (end < target.length && baseEnd < base.length && base[baseEnd] == target[end]) {
+                    end++;
+                    baseEnd++;
+                }
+                writeInsert(out, target, insertStart, targetStart);
+                out.write(OP_COPY);
+                writeVarLong(out, baseStart);
+                writeVarLong(out, end - targetStart);
+                i = end;
+                insertStart = end;
+                if (i + BLOCK_SIZE <= target.length) {
+                    h = hash(target, i);
+                }
+                continue;
+            }
+            if (i + BLOCK_SIZE < target.length) {
+                h = (h - target[i] * power) * PRIME + target[i + BLOCK_SIZE];
+            }
+            i++;
+        }
+        writeInsert(out, target, insertStart, target.length);
+        return out.toByteArray();
+    }
+
+    public static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = {0};
+        long length = readVarLong(delta, pos);
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Delta target too large: " + length);
+        }
+        byte[] target = new byte[(int) length];
+        int written = 0;
+        while (pos[0] < delta.length) {
+            byte op = delta[pos[0]++];
+            if (op == OP_COPY) {
+                int offset = (int) readVarLong(delta, pos);
+                int len = (int) readVarLong(delta, pos);
+                System.arraycopy(base, offset, target, written, len);
+                written += len;
+            } else if (op == OP_INSERT) {
+                int len = (int) readVarLong(delta, pos);
+                System.arraycopy(delta, pos[0], target, written, len);
+                pos[0] += len;
+                written += len;
+            } else {
+                throw new IllegalArgumentException("Corrupt delta: unknown op " + op);
+            }
+        }
+        if (written != target.length) {
+            throw new IllegalArgumentException("Corrupt delta: expected " + target.length + " bytes, got " + written);
+        }
+        return target;
+    }
+
+    private static int hash(byte[] data, int offset) {
+        int h = 0;
+        for (int i = offset; i < offset + BLOCK_SIZE; i++) {
+            h = h * PRIME + data[i];
+        }
+        return h;
+    }
+
+    private static void writeInsert(ByteArrayOutputStream out, byte[] target, int from, int to) {
+        if (to > from) {
+            out.write(OP_INSERT);
+            writeVarLong(out, to - from);
+            out.write(target, from, to - from);
+        }
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(byte[] data, int[] pos) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[pos[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
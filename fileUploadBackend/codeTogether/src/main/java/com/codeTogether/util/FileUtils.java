@@ -1,39 +1,198 @@
-package com.codeTogether.util;
-
-import java.io.ByteArrayOutputStream;
-import java.util.zip.Deflater;
-import java.util.zip.Inflater;
-
-public class FileUtils {
-
-    public static byte[] compressFile(byte[] data) {
-        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
-        deflater.setInput(data);
-        deflater.finish();
-
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(data.length);
-        byte[] buffer = new byte[4096];
-        while (!deflater.finished()) {
-            int size = deflater.deflate(buffer);
-            outputStream.write(buffer, 0, size);
-        }
-        return outputStream.toByteArray();
-    }
-
-    public static byte[] decompressFile(byte[] data) {
-        Inflater inflater = new Inflater();
-        inflater.setInput(data);
-
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(data.length);
-        byte[] buffer = new byte[4096];
-        try {
-            while (!inflater.finished()) {
-                int size = inflater.inflate(buffer);
-                outputStream.write(buffer, 0, size);
-            }
-        } catch (Exception e) {
-            throw new RuntimeException("Error decompressing file", e);
-        }
-        return outputStream.toByteArray();
-    }
-}
+package com.codeTogether.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+public class FileUtils {
+
+    public static byte[] compressFile(byte[] data) {
+        return compressFile(data, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    public static byte[] compressFile(byte[] data, int level) {
+        Deflater deflater = ZlibPool.borrowDeflater(level);
+        byte[] buffer = ZlibPool.borrowBuffer();
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            // Source files usually compress into a single pooled buffer, leaving one exact-size copy
+            int length = deflater.deflate(buffer);
+            if (deflater.finished()) {
+                return Arrays.copyOf(buffer, length);
+            }
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream(Math.max(buffer.length * 2, data.length / 2));
+            outputStream.write(buffer, 0, length);
+            while (!deflater.finished()) {
+                outputStream.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return outputStream.toByteArray();
+        } finally {
+            ZlibPool.releaseBuffer(buffer);
+            ZlibPool.releaseDeflater(deflater, level);
+        }
+    }
+
+    public static byte[] decompressFile(byte[] data) {
+        return decompressFile(data, -1);
+    }
+
+    // Inflates into an array of exactly originalSize bytes when the stored size is known
+    public static byte[] decompressFile(byte[] data, long originalSize) {
+        Inflater inflater = ZlibPool.borrowInflater();
+        try {
+            inflater.setInput(data);
+            if (originalSize >= 0 && originalSize <= Integer.MAX_VALUE - 8) {
+                byte[] output = new byte[(int) originalSize];
+                int length = 0;
+                while (!inflater.finished() && length < output.length) {
+                    int size = inflater.inflate(output, length, output.length - length);
+                    if (size == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    length += size;
+                }
+                if (length == output.length && (inflater.finished() || output.length == 0)) {
+                    return output;
+                }
+                throw new IllegalStateException("Stored size " + originalSize + " doesn't match content");
+            }
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream(Math.max(64, data.length * 4));
+            byte[] buffer = ZlibPool.borrowBuffer();
+            try {
+                while (!inflater.finished()) {
+                    int size = inflater.inflate(buffer);
+                    if (size == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new IllegalStateException("Truncated compressed content");
+                    }
+                    outputStream.write(buffer, 0, size);
+                }
+            } finally {
+                ZlibPool.releaseBuffer(buffer);
+            }
+            return outputStream.toByteArray();
+        } catch (Exception e) {
+            throw new RuntimeException("Error decompressing file", e);
+        } finally {
+            ZlibPool.releaseInflater(inflater);
+        }
+    }
+
+    // Streaming counterpart of decompressFile: inflates lazily as the caller reads. The
+    // pooled Inflater goes back to the pool when the stream is closed.
+    public static InputStream openDecompressed(byte[] data) {
+        return openDecompressed(new ByteArrayInputStream(data));
+    }
+
+    public static InputStream openDecompressed(InputStream in) {
+        Inflater inflater = ZlibPool.borrowInflater();
+        return new InflaterInputStream(in, inflater, 8192) {
+            private boolean released;
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    if (!released) {
+                        released = true;
+                        ZlibPool.releaseInflater(inflater);
+                    }
+                }
+            }
+        };
+    }
+
+    // Streaming deflate into out with a pooled Deflater, returned to the pool on close
+    public static OutputStream openCompressing(OutputStream out, int level) {
+        Deflater deflater = ZlibPool.borrowDeflater(level);
+        return new DeflaterOutputStream(out, deflater, 8192) {
+            private boolean released;
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    if (!released) {
+                        released = true;
+                        ZlibPool.releaseDeflater(deflater, level);
+                    }
+                }
+            }
+        };
+    }
+
+    // Copies exactly `length` bytes from in to out using a small fixed buffer
+    public static void copy(InputStream in, OutputStream out, long length) throws IOException {
+        byte[] buffer = ZlibPool.borrowBuffer();
+        try {
+            long remaining = length;
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read == -1) {
+                    throw new IOException("Unexpected end of content, " + remaining + " bytes missing");
+                }
+                out.write(buffer, 0, read);
+                remaining -= read;
+            }
+        } finally {
+            ZlibPool.releaseBuffer(buffer);
+        }
+    }
+
+    // Copies length bytes of the file from position to out with FileChannel.transferTo
+    public static void transfer(FileChannel in, long position, long length, OutputStream out) throws IOException {
+        WritableByteChannel target = Channels.newChannel(out);
+        long end = position + length;
+        while (position < end) {
+            long sent = in.transferTo(position, end - position, target);
+            if (sent <= 0) {
+                throw new IOException("Unexpected end of file, " + (end - position) + " bytes missing");
+            }
+            position += sent;
+        }
+    }
+
+    // Stored content is a zlib stream (2-byte header, raw deflate data, 4-byte Adler-32
+    // trailer), which is exactly HTTP's "deflate" coding. Streams using a preset
+    // dictionary can't be passed through.
+    public static boolean isPassThroughZlib(ByteBuffer data) {
+        int at = data.position();
+        return data.remaining() >= 6
+                && (data.get(at) & 0x0F) == 8
+                && ((data.get(at) & 0xFF) << 8 | (data.get(at + 1) & 0xFF)) % 31 == 0
+                && (data.get(at + 1) & 0x20) == 0;
+    }
+
+    public static long gzipLength(long zlibLength) {
+        return GZIP_HEADER.length + (zlibLength - 6) + 8;
+    }
+
+    // Re-wraps a zlib stream as gzip without touching the deflate data: swap the zlib header
+    // for a gzip header and the Adler-32 trailer for CRC32 + length of the original content
+    public static void writeGzip(InputStream zlibData, long zlibLength, long crc32, long originalSize, OutputStream out) throws IOException {
+        out.write(GZIP_HEADER);
+        zlibData.skipNBytes(2);
+        copy(zlibData, out, zlibLength - 6);
+        byte[] trailer = new byte[8];
+        for (int i = 0; i < 4; i++) {
+            trailer[i] = (byte) (crc32 >>> (8 * i));
+            trailer[4 + i] = (byte) (originalSize >>> (8 * i));
+        }
+        out.write(trailer);
+    }
+
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+}
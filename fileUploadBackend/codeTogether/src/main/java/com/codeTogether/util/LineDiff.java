@@ -0,0 +1,292 @@
+package com.codeTogether.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Line diff of two texts with Myers' O(ND) algorithm in its linear-space form: the middle
+// snake of each subproblem is found by searching from both ends at once, and the halves on
+// either side are diffed recursively, so memory stays O(N + M) however far apart the texts
+// are. Lines are compared as ints after interning, and the common prefix and suffix are
+// stripped first. Past the deadline the remaining subproblems are reported as replaced
+// wholesale, which is still a correct diff but not necessarily the smallest one.
+public class LineDiff {
+
+    public enum LineType {
+        CONTEXT, REMOVED, ADDED
+    }
+
+    // text is the line without its terminator
+    public record Line(LineType type, String text) {
+    }
+
+    // Starts are 1-based; a hunk with a count of 0 on one side starts after that line, as in unified diffs
+    public record Hunk(int oldStart, int oldCount, int newStart, int newCount, List<Line> lines) {
+    }
+
+    public record Result(List<Hunk> hunks, int linesAdded, int linesRemoved, int oldLineCount, int newLineCount,
+                         boolean oldNewlineAtEnd, boolean newNewlineAtEnd, boolean minimal) {
+
+        // Unified diff that TextPatch applies to the old text
+        public String unified(String oldLabel, String newLabel) {
+            if (hunks.isEmpty()) {
+                return "";
+            }
+            StringBuilder out = new StringBuilder();
+            out.append("--- ").append(oldLabel).append('\n');
+            out.append("+++ ").append(newLabel).append('\n');
+            for (Hunk hunk : hunks) {
+                out.append("@@ -").append(range(hunk.oldStart(), hunk.oldCount()))
+                        .append(" +").append(range(hunk.newStart(), hunk.newCount())).append(" @@\n");
+                int oldLine = hunk.oldCount() == 0 ? hunk.oldStart() : hunk.oldStart() - 1;
+                int newLine = hunk.newCount() == 0 ? hunk.newStart() : hunk.newStart() - 1;
+                for (Line line : hunk.lines()) {
+                    boolean lastOfOld = false;
+                    boolean lastOfNew = false;
+                    char op;
+                    switch (line.type()) {
+                        case CONTEXT -> {
+                            op = ' ';
+                            lastOfOld = ++oldLine == oldLineCount;
+                            lastOfNew = ++newLine == newLineCount;
+                        }
+                        case REMOVED -> {
+                            op = '-';
+                            lastOfOld = ++oldLine == oldLineCount;
+                        }
+                        default -> {
+                            op = '+';
+                            lastOfNew = ++newLine == newLineCount;
+                        }
+                    }
+                    out.append(op).append(line.text()).append('\n');
+                    if ((lastOfOld && !oldNewlineAtEnd) || (lastOfNew && !newNewlineAtEnd)) {
+                        out.append("\\ No newline at end of file\n");
+                    }
+                }
+            }
+            return out.toString();
+        }
+
+        private static String range(int start, int count) {
+            return count == 1 ? String.valueOf(start) : start + "," + count;
+        }
+    }
+
+    // A run of removed old lines [oldFrom, oldTo) replaced by new lines [newFrom, newTo), 0-based
+    private record Change(int oldFrom, int oldTo, int newFrom, int newTo) {
+    }
+
+    public static Result diff(String oldText, String newText, int context, long timeoutMillis) {
+        List<String> oldLines = TextPatch.splitLines(oldText);
+        List<String> newLines = TextPatch.splitLines(newText);
+        Map<String, Integer> ids = new HashMap<>();
+        int[] a = intern(oldLines, ids);
+        int[] b = intern(newLines, ids);
+        boolean[] removed = new boolean[a.length];
+        boolean[] added = new boolean[b.length];
+        Search search = new Search(a, b, removed, added, System.nanoTime() + timeoutMillis * 1_000_000L);
+        search.compare(0, a.length, 0, b.length);
+
+        List<Change> changes = new ArrayList<>();
+        int linesAdded = 0;
+        int linesRemoved = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length || j < b.length) {
+            if (i < a.length && j < b.length && !removed[i] && !added[j]) {
+                i++;
+                j++;
+                continue;
+            }
+            int oldFrom = i;
+            int newFrom = j;
+            while (i < a.length && removed[i]) {
+                i++;
+            }
+            while (j < b.length && added[j]) {
+                j++;
+            }
+            changes.add(new Change(oldFrom, i, newFrom, j));
+            linesRemoved += i - oldFrom;
+            linesAdded += j - newFrom;
+        }
+        return new Result(hunks(changes, oldLines, newLines, Math.max(0, context)), linesAdded, linesRemoved,
+                oldLines.size(), newLines.size(), oldText.isEmpty() || oldText.endsWith("\n"),
+                newText.isEmpty() || newText.endsWith("\n"), !search.timedOut);
+    }
+
+    // Changes at most 2 * context lines apart share a hunk
+    private static List<Hunk> hunks(List<Change> changes, List<String> oldLines, List<String> newLines, int context) {
+        List<Hunk> hunks = new ArrayList<>();
+        int first = 0;
+        while (first < changes.size()) {
+            int last = first;
+            while (last + 1 < changes.size() && changes.get(last + 1).oldFrom() - changes.get(last).oldTo() <= 2 * context) {
+                last++;
+            }
+            Change start = changes.get(first);
+            Change end = changes.get(last);
+            int oldFrom = Math.max(0, start.oldFrom() - context);
+            int newFrom = start.newFrom() - (start.oldFrom() - oldFrom);
+            int oldTo = Math.min(oldLines.size(), end.oldTo() + context);
+            int newTo = end.newTo() + (oldTo - end.oldTo());
+            List<Line> lines = new ArrayList<>();
+            int pos = oldFrom;
+            for (int c = first; c <= last; c++) {
+                Change change = changes.get(c);
+                for (; pos < change.oldFrom(); pos++) {
+                    lines.add(new Line(LineType.CONTEXT, TextPatch.stripNewline(oldLines.get(pos))));
+                }
+                for (; pos < change.oldTo(); pos++) {
+                    lines.add(new Line(LineType.REMOVED, TextPatch.stripNewline(oldLines.get(pos))));
+                }
+                for (int n = change.newFrom(); n < change.newTo(); n++) {
+                    lines.add(new Line(LineType.ADDED, TextPatch.stripNewline(newLines.get(n))));
+                }
+            }
+            for (; pos < oldTo; pos++) {
+                lines.add(new Line(LineType.CONTEXT, TextPatch.stripNewline(oldLines.get(pos))));
+            }
+            int oldCount = oldTo - oldFrom;
+            int newCount = newTo - newFrom;
+            hunks.add(new Hunk(oldCount == 0 ? oldFrom : oldFrom + 1, oldCount, newCount == 0 ? newFrom : newFrom + 1, newCount, lines));
+            first = last + 1;
+        }
+        return hunks;
+    }
+
+    // Marks the lines of a that are removed and the lines of b that are added
+    private static final class Search {
+        private final int[] a;
+        private final int[] b;
+        private final boolean[] removed;
+        private final boolean[] added;
+        private final long deadline;
+        private boolean timedOut;
+
+        Search(int[] a, int[] b, boolean[] removed, boolean[] added, long deadline) {
+            this.a = a;
+            this.b = b;
+            this.removed = removed;
+            this.added = added;
+            this.deadline = deadline;
+        }
+
+        void compare(int aLo, int aHi, int bLo, int bHi) {
+            while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+                aLo++;
+                bLo++;
+            }
+            while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+                aHi--;
+                bHi--;
+            }
+            if (aLo == aHi || bLo == bHi) {
+                replace(aLo, aHi, bLo, bHi);
+                return;
+            }
+            // Both sides are non-empty and differ at both ends, so at least two edits are needed and
+            // the middle snake splits the problem into two smaller non-empty ones
+            int[] split = middleSnake(aLo, aHi, bLo, bHi);
+            if (split == null) {
+                replace(aLo, aHi, bLo, bHi);
+                return;
+            }
+            compare(aLo, split[0], bLo, split[1]);
+            compare(split[0], aHi, split[1], bHi);
+        }
+
+        private void replace(int aLo, int aHi, int bLo, int bHi) {
+            Arrays.fill(removed, aLo, aHi, true);
+            Arrays.fill(added, bLo, bHi, true);
+        }
+
+        // Point (x, y) where the forward and reverse searches meet on an optimal path, or null if
+        // the deadline passed first
+        private int[] middleSnake(int aLo, int aHi, int bLo, int bHi) {
+            int n = aHi - aLo;
+            int m = bHi - bLo;
+            int maxD = (n + m + 1) / 2;
+            int offset = maxD;
+            int length = 2 * maxD + 2;
+            // Furthest x reached on each diagonal k = x - y, forward from the start and backward from the end
+            int[] forward = new int[length];
+            int[] reverse = new int[length];
+            Arrays.fill(forward, -1);
+            Arrays.fill(reverse, -1);
+            forward[offset + 1] = 0;
+            reverse[offset + 1] = 0;
+            int delta = n - m;
+            // With an odd delta the paths can first meet during a forward step, otherwise during a reverse one
+            boolean front = (delta & 1) != 0;
+            int kStart1 = 0;
+            int kEnd1 = 0;
+            int kStart2 = 0;
+            int kEnd2 = 0;
+            for (int d = 0; d < maxD; d++) {
+                if ((d & 63) == 0 && System.nanoTime() > deadline) {
+                    timedOut = true;
+                    return null;
+                }
+                for (int k = -d + kStart1; k <= d - kEnd1; k += 2) {
+                    int index = offset + k;
+                    int x = k == -d || (k != d && forward[index - 1] < forward[index + 1]) ? forward[index + 1] : forward[index - 1] + 1;
+                    int y = x - k;
+                    while (x < n && y < m && a[aLo + x] == b[bLo + y]) {
+                        x++;
+                        y++;
+                    }
+                    forward[index] = x;
+                    if (x > n) {
+                        // Ran off the right edge
+                        kEnd1 += 2;
+                    } else if (y > m) {
+                        // Ran off the bottom edge
+                        kStart1 += 2;
+                    } else if (front) {
+                        int reverseIndex = offset + delta - k;
+                        if (reverseIndex >= 0 && reverseIndex < length && reverse[reverseIndex] != -1 && x >= n - reverse[reverseIndex]) {
+                            return new int[] {aLo + x, bLo + y};
+                        }
+                    }
+                }
+                for (int k = -d + kStart2; k <= d - kEnd2; k += 2) {
+                    int index = offset + k;
+                    int x = k == -d || (k != d && reverse[index - 1] < reverse[index + 1]) ? reverse[index + 1] : reverse[index - 1] + 1;
+                    int y = x - k;
+                    while (x < n && y < m && a[aHi - x - 1] == b[bHi - y - 1]) {
+                        x++;
+                        y++;
+                    }
+                    reverse[index] = x;
+                    if (x > n) {
+                        kEnd2 += 2;
+                    } else if (y > m) {
+                        kStart2 += 2;
+                    } else if (!front) {
+                        int forwardIndex = offset + delta - k;
+                        if (forwardIndex >= 0 && forwardIndex < length && forward[forwardIndex] != -1) {
+                            int forwardX = forward[forwardIndex];
+                            if (forwardX >= n - x) {
+                                return new int[] {aLo + forwardX, bLo + forwardX - (forwardIndex - offset)};
+                            }
+                        }
+                    }
+                }
+            }
+            // The paths never met, so the ranges share no line and replacing one with the other is optimal
+            return null;
+        }
+    }
+
+    private static int[] intern(List<String> lines, Map<String, Integer> ids) {
+        int[] interned = new int[lines.size()];
+        for (int i = 0; i < interned.length; i++) {
+            interned[i] = ids.computeIfAbsent(lines.get(i), line -> ids.size());
+        }
+        return interned;
+    }
+}
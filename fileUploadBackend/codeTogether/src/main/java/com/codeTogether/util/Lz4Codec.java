@@ -0,0 +1,31 @@
+package com.codeTogether.util;
+
+import net.jpountz.lz4.LZ4FrameInputStream;
+import net.jpountz.lz4.LZ4FrameOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+// LZ4 frame format: much faster than deflate at a lower compression ratio. Frames use 64 KB
+// blocks, so a stream buffers that much per block instead of the library's default 4 MB.
+public class Lz4Codec implements CompressionCodec {
+
+    public static final String ID = "lz4";
+    public static final Lz4Codec INSTANCE = new Lz4Codec();
+
+    @Override
+    public String id() {
+        return ID;
+    }
+
+    @Override
+    public OutputStream compress(OutputStream out) throws IOException {
+        return new LZ4FrameOutputStream(out, LZ4FrameOutputStream.BLOCKSIZE.SIZE_64KB);
+    }
+
+    @Override
+    public InputStream decompress(InputStream in) throws IOException {
+        return new LZ4FrameInputStream(in);
+    }
+}
@@ -0,0 +1,26 @@
+package com.codeTogether.util;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+// Stores content as-is; used for already-compressed formats
+public class NoneCodec implements CompressionCodec {
+
+    public static final String ID = "none";
+    public static final NoneCodec INSTANCE = new NoneCodec();
+
+    @Override
+    public String id() {
+        return ID;
+    }
+
+    @Override
+    public OutputStream compress(OutputStream out) {
+        return out;
+    }
+
+    @Override
+    public InputStream decompress(InputStream in) {
+        return in;
+    }
+}
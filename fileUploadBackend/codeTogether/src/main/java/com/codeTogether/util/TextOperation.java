@@ -0,0 +1,197 @@
+package com.codeTogether.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// An edit of a whole text document as a sequence of retain, insert and delete components,
+// using the operational transformation rules and JSON form of ot.js: a positive number
+// retains that many characters, a string is inserted and a negative number deletes.
+// Lengths count UTF-16 code units, like JavaScript strings.
+public class TextOperation {
+
+    private final List<Object> ops = new ArrayList<>();
+    private int baseLength;
+    private int targetLength;
+
+    // Parses the JSON form, e.g. [5, "abc", -2, 10]
+    public static TextOperation fromJson(List<?> components) {
+        TextOperation operation = new TextOperation();
+        for (Object component : components) {
+            if (component instanceof String text) {
+                operation.insert(text);
+            } else if (component instanceof Number number && number.intValue() == number.doubleValue()) {
+                int n = number.intValue();
+                if (n > 0) {
+                    operation.retain(n);
+                } else if (n < 0) {
+                    operation.delete(-n);
+                }
+            } else {
+                throw new IllegalArgumentException("Invalid operation component: " + component);
+            }
+        }
+        return operation;
+    }
+
+    public List<Object> toJson() {
+        return List.copyOf(ops);
+    }
+
+    public int baseLength() {
+        return baseLength;
+    }
+
+    public int targetLength() {
+        return targetLength;
+    }
+
+    public boolean isNoop() {
+        return ops.isEmpty() || (ops.size() == 1 && isRetain(ops.get(0)));
+    }
+
+    public TextOperation retain(int n) {
+        if (n == 0) {
+            return this;
+        }
+        baseLength += n;
+        targetLength += n;
+        if (!ops.isEmpty() && isRetain(last())) {
+            ops.set(ops.size() - 1, (Integer) last() + n);
+        } else {
+            ops.add(n);
+        }
+        return this;
+    }
+
+    public TextOperation insert(String text) {
+        if (text.isEmpty()) {
+            return this;
+        }
+        targetLength += text.length();
+        int size = ops.size();
+        if (size > 0 && last() instanceof String previous) {
+            ops.set(size - 1, previous + text);
+        } else if (size > 0 && isDelete(last())) {
+            // Inserts go before deletes at the same position, so equal edits get equal operations
+            if (size > 1 && ops.get(size - 2) instanceof String previous) {
+                ops.set(size - 2, previous + text);
+            } else {
+                ops.add(size - 1, text);
+            }
+        } else {
+            ops.add(text);
+        }
+        return this;
+    }
+
+    public TextOperation delete(int n) {
+        if (n == 0) {
+            return this;
+        }
+        baseLength += n;
+        if (!ops.isEmpty() && isDelete(last())) {
+            ops.set(ops.size() - 1, (Integer) last() - n);
+        } else {
+            ops.add(-n);
+        }
+        return this;
+    }
+
+    public String apply(String document) {
+        if (document.length() != baseLength) {
+            throw new IllegalArgumentException("Operation expects a document of " + baseLength
+                    + " characters, but it has " + document.length());
+        }
+        StringBuilder out = new StringBuilder(targetLength);
+        int index = 0;
+        for (Object op : ops) {
+            if (op instanceof String text) {
+                out.append(text);
+            } else if (isRetain(op)) {
+                out.append(document, index, index + (Integer) op);
+                index += (Integer) op;
+            } else {
+                index -= (Integer) op;
+            }
+        }
+        return out.toString();
+    }
+
+    // Transforms two operations made concurrently on the same document into a' and b' such that
+    // applying a then b' gives the same document as b then a'. Where both insert at the same
+    // position, a's text ends up first.
+    public static TextOperation[] transform(TextOperation a, TextOperation b) {
+        if (a.baseLength != b.baseLength) {
+            throw new IllegalArgumentException("Concurrent operations must have the same base length");
+        }
+        TextOperation aPrime = new TextOperation();
+        TextOperation bPrime = new TextOperation();
+        int i1 = 0;
+        int i2 = 0;
+        Object op1 = component(a, i1++);
+        Object op2 = component(b, i2++);
+        while (op1 != null || op2 != null) {
+            if (op1 instanceof String text) {
+                aPrime.insert(text);
+                bPrime.retain(text.length());
+                op1 = component(a, i1++);
+                continue;
+            }
+            if (op2 instanceof String text) {
+                aPrime.retain(text.length());
+                bPrime.insert(text);
+                op2 = component(b, i2++);
+                continue;
+            }
+            if (op1 == null || op2 == null) {
+                throw new IllegalArgumentException("Operations don't cover the same document");
+            }
+            int n1 = (Integer) op1;
+            int n2 = (Integer) op2;
+            if (n1 > 0 && n2 > 0) {
+                int min = Math.min(n1, n2);
+                aPrime.retain(min);
+                bPrime.retain(min);
+                op1 = n1 > min ? n1 - min : component(a, i1++);
+                op2 = n2 > min ? n2 - min : component(b, i2++);
+            } else if (n1 < 0 && n2 < 0) {
+                // Both delete the same characters; neither side has to delete them again
+                int min = Math.min(-n1, -n2);
+                op1 = -n1 > min ? n1 + min : component(a, i1++);
+                op2 = -n2 > min ? n2 + min : component(b, i2++);
+            } else if (n1 < 0) {
+                int min = Math.min(-n1, n2);
+                aPrime.delete(min);
+                op1 = -n1 > min ? n1 + min : component(a, i1++);
+                op2 = n2 > min ? n2 - min : component(b, i2++);
+            } else {
+                int min = Math.min(n1, -n2);
+                bPrime.delete(min);
+                op1 = n1 > min ? n1 - min : component(a, i1++);
+                op2 = -n2 > min ? n2 + min : component(b, i2++);
+            }
+        }
+        return new TextOperation[] {aPrime, bPrime};
+    }
+
+    private static Object component(TextOperation operation, int index) {
+        return index < operation.ops.size() ? operation.ops.get(index) : null;
+    }
+
+    private Object last() {
+        return ops.get(ops.size() - 1);
+    }
+
+    private static boolean isRetain(Object op) {
+        return op instanceof Integer n && n > 0;
+    }
+
+    private static boolean isDelete(Object op) {
+        return op instanceof Integer n && n < 0;
+    }
+
+    @Override
+    public String toString() {
+        return ops.toString();
+    }
+}
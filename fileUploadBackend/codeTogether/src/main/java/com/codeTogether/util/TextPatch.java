@@ -0,0 +1,178 @@
+package com.codeTogether.util;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Applies a text change to UTF-8 content, given either as a unified diff or as a list of
+// range edits. Hunks must match the base exactly (no fuzz), so a patch made against other
+// content is rejected instead of being applied in the wrong place.
+public class TextPatch {
+
+    private static final Pattern HUNK_HEADER = Pattern.compile("^@@ -(\\d+)(?:,(\\d+))? \\+(\\d+)(?:,(\\d+))? @@.*");
+
+    // Replaces the characters [start, end) of the base text with text
+    public record Edit(int start, int end, String text) {
+    }
+
+    // Exactly one of diff and edits is set
+    public record Patch(String diff, List<Edit> edits) {
+    }
+
+    public static byte[] apply(byte[] base, Patch patch) {
+        boolean hasDiff = patch.diff() != null;
+        boolean hasEdits = patch.edits() != null;
+        if (hasDiff == hasEdits) {
+            throw new IllegalArgumentException("Patch needs either a diff or a list of edits");
+        }
+        String text = decodeText(base);
+        String patched = hasDiff ? applyDiff(text, patch.diff()) : applyEdits(text, patch.edits());
+        return patched.getBytes(StandardCharsets.UTF_8);
+    }
+
+    static String applyEdits(String base, List<Edit> edits) {
+        List<Edit> sorted = new ArrayList<>(edits);
+        sorted.sort(Comparator.comparingInt(Edit::start));
+        StringBuilder out = new StringBuilder(base.length());
+        int pos = 0;
+        for (Edit edit : sorted) {
+            if (edit.start() < pos || edit.end() < edit.start() || edit.end() > base.length()) {
+                throw new IllegalArgumentException("Edit [" + edit.start() + ", " + edit.end() + ") overlaps another edit "
+                        + "or lies outside the content (" + base.length() + " characters)");
+            }
+            out.append(base, pos, edit.start());
+            if (edit.text() != null) {
+                out.append(edit.text());
+            }
+            pos = edit.end();
+        }
+        return out.append(base, pos, base.length()).toString();
+    }
+
+    static String applyDiff(String base, String diff) {
+        List<String> lines = splitLines(base);
+        String[] patchLines = diff.split("\n", -1);
+        StringBuilder out = new StringBuilder(base.length() + diff.length());
+        int pos = 0;
+        int i = 0;
+        while (i < patchLines.length) {
+            Matcher header = HUNK_HEADER.matcher(patchLines[i++]);
+            if (!header.matches()) {
+                // File headers (diff, index, ---, +++) and trailing text around hunks
+                continue;
+            }
+            int oldStart = Integer.parseInt(header.group(1));
+            int oldCount = header.group(2) != null ? Integer.parseInt(header.group(2)) : 1;
+            int newCount = header.group(4) != null ? Integer.parseInt(header.group(4)) : 1;
+            // A hunk that only inserts names the line after which it inserts
+            int at = oldCount == 0 ? oldStart : oldStart - 1;
+            if (at < pos || at + oldCount > lines.size()) {
+                throw new IllegalArgumentException("Hunk at line " + oldStart + " is out of order or past the end of the content");
+            }
+            while (pos < at) {
+                out.append(lines.get(pos++));
+            }
+            int oldSeen = 0;
+            int newSeen = 0;
+            char previous = ' ';
+            while (oldSeen < oldCount || newSeen < newCount || (i < patchLines.length && patchLines[i].startsWith("\\"))) {
+                if (i >= patchLines.length) {
+                    throw new IllegalArgumentException("Hunk at line " + oldStart + " is truncated");
+                }
+                String line = patchLines[i++];
+                // Some tools drop the space in front of empty context lines
+                char op = line.isEmpty() ? ' ' : line.charAt(0);
+                String content = line.isEmpty() ? "" : line.substring(1);
+                switch (op) {
+                    case ' ', '-' -> {
+                        if (pos >= lines.size() || !stripNewline(lines.get(pos)).equals(content)) {
+                            throw new IllegalArgumentException("Hunk at line " + oldStart + " doesn't match the content at line " + (pos + 1));
+                        }
+                        if (op == ' ') {
+                            out.append(lines.get(pos));
+                            newSeen++;
+                        }
+                        pos++;
+                        oldSeen++;
+                    }
+                    case '+' -> {
+                        out.append(content).append('\n');
+                        newSeen++;
+                    }
+                    case '\\' -> {
+                        // "\ No newline at end of file": only an added line needs its newline removed,
+                        // context and removed lines are taken from the base as they are
+                        if (previous == '+') {
+                            out.setLength(out.length() - 1);
+                        }
+                    }
+                    default -> throw new IllegalArgumentException("Unexpected line in hunk at line " + oldStart + ": " + line);
+                }
+                previous = op;
+            }
+            if (oldSeen != oldCount || newSeen != newCount) {
+                throw new IllegalArgumentException("Hunk at line " + oldStart + " doesn't match its line counts");
+            }
+        }
+        while (pos < lines.size()) {
+            out.append(lines.get(pos++));
+        }
+        return out.toString();
+    }
+
+    // Lines including their terminator; the last line has none if the text doesn't end with one
+    static List<String> splitLines(String text) {
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                lines.add(text.substring(start, i + 1));
+                start = i + 1;
+            }
+        }
+        if (start < text.length()) {
+            lines.add(text.substring(start));
+        }
+        return lines;
+    }
+
+    static String stripNewline(String line) {
+        return line.endsWith("\n") ? line.substring(0, line.length() - 1) : line;
+    }
+
+    // Whether the first bytes of a file show it isn't UTF-8 text: a NUL byte or a malformed
+    // sequence. A sequence cut off at the end of the prefix doesn't count.
+    public static boolean isBinaryPrefix(byte[] prefix) {
+        for (byte b : prefix) {
+            if (b == 0) {
+                return true;
+            }
+        }
+        CoderResult result = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT)
+                .decode(ByteBuffer.wrap(prefix), CharBuffer.allocate(prefix.length), false);
+        return result.isError();
+    }
+
+    // Strict UTF-8 decoding, rejecting binary content
+    public static String decodeText(byte[] content) {
+        try {
+            CharBuffer chars = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(ByteBuffer.wrap(content));
+            return chars.toString();
+        } catch (CharacterCodingException e) {
+            throw new IllegalArgumentException("Only UTF-8 text files can be patched", e);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.codeTogether.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Byte trigrams of UTF-8 text for the search index. ASCII letters are folded to lower case,
+// so one index serves case-sensitive and case-insensitive queries; the match itself is
+// always verified against the content.
+public class Trigrams {
+
+    public static final int[] NONE = new int[0];
+
+    // Distinct trigrams of the content in ascending order
+    public static int[] extract(byte[] content) {
+        if (content.length < 3) {
+            return NONE;
+        }
+        int[] all = new int[content.length - 2];
+        int t = (fold(content[0]) << 8) | fold(content[1]);
+        for (int i = 2; i < content.length; i++) {
+            t = ((t << 8) | fold(content[i])) & 0xFFFFFF;
+            all[i - 2] = t;
+        }
+        Arrays.sort(all);
+        int distinct = 0;
+        for (int i = 0; i < all.length; i++) {
+            if (i == 0 || all[i] != all[distinct - 1]) {
+                all[distinct++] = all[i];
+            }
+        }
+        return Arrays.copyOf(all, distinct);
+    }
+
+    // Trigrams every match of the literal must contain
+    public static int[] of(String literal) {
+        return extract(literal.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Ascending trigrams as delta-encoded varints
+    public static byte[] encode(int[] trigrams) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(trigrams.length * 2);
+        int previous = 0;
+        for (int trigram : trigrams) {
+            int delta = trigram - previous;
+            while ((delta & ~0x7F) != 0) {
+                out.write((delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+            out.write(delta);
+            previous = trigram;
+        }
+        return out.toByteArray();
+    }
+
+    public static int[] decode(byte[] encoded) {
+        int[] trigrams = new int[encoded.length];
+        int count = 0;
+        int previous = 0;
+        int i = 0;
+        while (i < encoded.length) {
+            int delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = encoded[i++];
+                delta |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            previous += delta;
+            trigrams[count++] = previous;
+        }
+        return Arrays.copyOf(trigrams, count);
+    }
+
+    // Literal strings that a match of the regex must contain, as alternatives of which each
+    // lists literals that must all occur. Returns null when no such literals of at least three
+    // characters can be derived for some alternative, i.e. the index can't narrow the search.
+    // Conservative: groups, character classes and escapes other than escaped punctuation end a literal.
+    public static List<List<String>> requiredLiterals(String regex, boolean caseSensitive) {
+        List<List<String>> alternatives = new ArrayList<>();
+        for (String branch : splitTopLevel(regex)) {
+            List<String> literals = new ArrayList<>();
+            for (String literal : branchLiterals(branch)) {
+                // ASCII folding can't match other case variants of non-ASCII letters
+                if (literal.length() >= 3 && (caseSensitive || literal.chars().allMatch(c -> c < 128))) {
+                    literals.add(literal);
+                }
+            }
+            if (literals.isEmpty()) {
+                return null;
+            }
+            alternatives.add(literals);
+        }
+        return alternatives;
+    }
+
+    private static List<String> splitTopLevel(String regex) {
+        List<String> branches = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                i = classEnd(regex, i);
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == '|' && depth == 0) {
+                branches.add(regex.substring(start, i));
+                start = i + 1;
+            }
+        }
+        branches.add(regex.substring(start));
+        return branches;
+    }
+
+    private static List<String> branchLiterals(String branch) {
+        List<String> literals = new ArrayList<>();
+        StringBuilder run = new StringBuilder();
+        int i = 0;
+        while (i < branch.length()) {
+            char c = branch.charAt(i);
+            switch (c) {
+                case '\\' -> {
+                    if (i + 1 < branch.length() && !Character.isLetterOrDigit(branch.charAt(i + 1))) {
+                        run.append(branch.charAt(i + 1));
+                    } else if (i + 1 < branch.length() && branch.charAt(i + 1) == 'Q') {
+                        int end = branch.indexOf("\\E", i + 2);
+                        run.append(branch, i + 2, end < 0 ? branch.length() : end);
+                        i = end < 0 ? branch.length() : end;
+                    } else {
+                        flush(run, literals);
+                    }
+                    i += 2;
+                    continue;
+                }
+                case '[' -> {
+                    flush(run, literals);
+                    i = classEnd(branch, i);
+                }
+                case '(' -> {
+                    // Skip the whole group; it may be optional or contain alternatives
+                    flush(run, literals);
+                    int depth = 0;
+                    for (; i < branch.length(); i++) {
+                        char g = branch.charAt(i);
+                        if (g == '\\') {
+                            i++;
+                        } else if (g == '[') {
+                            i = classEnd(branch, i);
+                        } else if (g == '(') {
+                            depth++;
+                        } else if (g == ')' && --depth == 0) {
+                            break;
+                        }
+                    }
+                }
+                case '*', '?', '{' -> {
+                    // The preceding character may be absent
+                    if (run.length() > 0) {
+                        run.setLength(run.length() - 1);
+                    }
+                    flush(run, literals);
+                    if (c == '{') {
+                        int end = branch.indexOf('}', i);
+                        i = end < 0 ? branch.length() : end;
+                    }
+                }
+                case '+', '.', '^', '$', ')' -> flush(run, literals);
+                default -> run.append(c);
+            }
+            i++;
+        }
+        flush(run, literals);
+        return literals;
+    }
+
+    private static void flush(StringBuilder run, List<String> literals) {
+        if (run.length() > 0) {
+            literals.add(run.toString());
+            run.setLength(0);
+        }
+    }
+
+    // Index of the ']' closing the character class that starts at open
+    private static int classEnd(String regex, int open) {
+        int i = open + 1;
+        if (i < regex.length() && regex.charAt(i) == '^') {
+            i++;
+        }
+        if (i < regex.length() && regex.charAt(i) == ']') {
+            i++;
+        }
+        for (; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == ']') {
+                return i;
+            }
+        }
+        return regex.length();
+    }
+
+    private static int fold(byte b) {
+        return b >= 'A' && b <= 'Z' ? b + 32 : b & 0xFF;
+    }
+}
@@ -0,0 +1,290 @@
+package com.codeTogether.util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+// Writes a ZIP archive to a stream entry by entry. Unlike ZipOutputStream it can add entries
+// from deflate data that is already compressed, which is copied as-is with the CRC and sizes
+// known up front. Other entries are deflated on the fly and their CRC and sizes follow the
+// data in a data descriptor. Only the central directory records are held in memory. ZIP64 end
+// records are written when the archive has more than 65535 entries or grows beyond 4 GB;
+// a single entry must stay below 4 GB. An aborted archive ends without its central directory,
+// so readers reject it instead of taking it for a complete one.
+public class ZipStreamWriter implements AutoCloseable {
+
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int DATA_DESCRIPTOR = 0x08074b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int ZIP64_END = 0x06064b50;
+    private static final int ZIP64_LOCATOR = 0x07064b50;
+    private static final int END = 0x06054b50;
+    private static final int FLAG_DATA_DESCRIPTOR = 1 << 3;
+    private static final int FLAG_UTF8 = 1 << 11;
+    private static final int METHOD_DEFLATED = 8;
+    private static final int VERSION = 20;
+    private static final int VERSION_ZIP64 = 45;
+    private static final long MAX_32 = 0xFFFFFFFFL;
+    private static final int MAX_16 = 0xFFFF;
+
+    private final OutputStream out;
+    private final byte[] header = new byte[64];
+    private final List<Entry> entries = new ArrayList<>();
+    private long written;
+    private boolean entryOpen;
+    private boolean finished;
+    private boolean aborted;
+    private Deflater openDeflater;
+
+    private record Entry(byte[] name, int flags, int dosDate, long crc, long compressedSize, long size, long offset) {
+    }
+
+    public ZipStreamWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    // Adds an entry from a zlib stream (2-byte header, raw deflate data, 4-byte Adler-32 trailer)
+    // of zlibLength bytes without inflating it, given the CRC32 and size of the original content.
+    // The deflate data is copied through a pooled buffer; the trailer is left unread.
+    public void addZlib(String name, InputStream zlibData, long zlibLength, long crc32, long size, LocalDate modified) throws IOException {
+        checkIdle();
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        long compressedSize = zlibLength - 6;
+        Entry entry = new Entry(nameBytes, FLAG_UTF8, dosDate(modified), crc32, compressedSize, size, written);
+        checkEntrySize(name, entry.compressedSize(), size);
+        writeLocalHeader(entry);
+        zlibData.skipNBytes(2);
+        FileUtils.copy(zlibData, out, compressedSize);
+        written += compressedSize;
+        entries.add(entry);
+    }
+
+    // Starts an entry whose content is written to the returned stream and deflated on the fly.
+    // Closing the stream ends the entry; the archive itself stays open.
+    public OutputStream beginEntry(String name, LocalDate modified, int level) throws IOException {
+        checkIdle();
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        long offset = written;
+        int flags = FLAG_UTF8 | FLAG_DATA_DESCRIPTOR;
+        int dosDate = dosDate(modified);
+        writeLocalHeader(new Entry(nameBytes, flags, dosDate, 0, 0, 0, offset));
+        entryOpen = true;
+        // Raw deflate as ZIP stores it, without the zlib header and trailer of the pooled deflaters
+        Deflater raw = new Deflater(level, true);
+        openDeflater = raw;
+        CRC32 crc = new CRC32();
+        long dataStart = written;
+        return new FilterOutputStream(out) {
+            private final byte[] buffer = new byte[8192];
+            private long size;
+            private boolean closed;
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                crc.update(b, off, len);
+                size += len;
+                raw.setInput(b, off, len);
+                while (!raw.needsInput()) {
+                    drain();
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                out.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (closed || aborted) {
+                    closed = true;
+                    return;
+                }
+                closed = true;
+                try {
+                    raw.finish();
+                    while (!raw.finished()) {
+                        drain();
+                    }
+                } finally {
+                    raw.end();
+                }
+                long compressedSize = written - dataStart;
+                checkEntrySize(new String(nameBytes, StandardCharsets.UTF_8), compressedSize, size);
+                putInt(0, DATA_DESCRIPTOR);
+                putInt(4, crc.getValue());
+                putInt(8, compressedSize);
+                putInt(12, size);
+                ZipStreamWriter.this.write(header, 0, 16);
+                entries.add(new Entry(nameBytes, flags, dosDate, crc.getValue(), compressedSize, size, offset));
+                entryOpen = false;
+                openDeflater = null;
+            }
+
+            private void drain() throws IOException {
+                int n = raw.deflate(buffer);
+                if (n > 0) {
+                    ZipStreamWriter.this.write(buffer, 0, n);
+                }
+            }
+        };
+    }
+
+    // Writes the central directory; the underlying stream is flushed, not closed
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        checkIdle();
+        finished = true;
+        long directoryOffset = written;
+        for (Entry entry : entries) {
+            boolean zip64 = entry.offset() >= MAX_32;
+            int version = zip64 ? VERSION_ZIP64 : VERSION;
+            putInt(0, CENTRAL_HEADER);
+            putShort(4, version);
+            putShort(6, version);
+            putShort(8, entry.flags());
+            putShort(10, METHOD_DEFLATED);
+            putShort(12, 0);
+            putShort(14, entry.dosDate());
+            putInt(16, entry.crc());
+            putInt(20, entry.compressedSize());
+            putInt(24, entry.size());
+            putShort(28, entry.name().length);
+            putShort(30, zip64 ? 12 : 0);
+            putShort(32, 0);
+            putShort(34, 0);
+            putShort(36, 0);
+            putInt(38, 0);
+            putInt(42, zip64 ? MAX_32 : entry.offset());
+            write(header, 0, 46);
+            write(entry.name(), 0, entry.name().length);
+            if (zip64) {
+                putShort(0, 1);
+                putShort(2, 8);
+                putLong(4, entry.offset());
+                write(header, 0, 12);
+            }
+        }
+        long directorySize = written - directoryOffset;
+        if (entries.size() >= MAX_16 || directoryOffset >= MAX_32 || directorySize >= MAX_32) {
+            long zip64EndOffset = written;
+            putInt(0, ZIP64_END);
+            putLong(4, 44);
+            putShort(12, VERSION_ZIP64);
+            putShort(14, VERSION_ZIP64);
+            putInt(16, 0);
+            putInt(20, 0);
+            putLong(24, entries.size());
+            putLong(32, entries.size());
+            putLong(40, directorySize);
+            putLong(48, directoryOffset);
+            write(header, 0, 56);
+            putInt(0, ZIP64_LOCATOR);
+            putInt(4, 0);
+            putLong(8, zip64EndOffset);
+            putInt(16, 1);
+            write(header, 0, 20);
+        }
+        putInt(0, END);
+        putShort(4, 0);
+        putShort(6, 0);
+        putShort(8, Math.min(entries.size(), MAX_16));
+        putShort(10, Math.min(entries.size(), MAX_16));
+        putInt(12, Math.min(directorySize, MAX_32));
+        putInt(16, Math.min(directoryOffset, MAX_32));
+        putShort(20, 0);
+        write(header, 0, 22);
+        out.flush();
+    }
+
+    // Ends the archive without finishing the open entry or writing the central directory, after
+    // a failure part way through; the underlying stream is left as it is
+    public void abort() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        aborted = true;
+        if (openDeflater != null) {
+            openDeflater.end();
+            openDeflater = null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+    }
+
+    private void writeLocalHeader(Entry entry) throws IOException {
+        putInt(0, LOCAL_HEADER);
+        putShort(4, VERSION);
+        putShort(6, entry.flags());
+        putShort(8, METHOD_DEFLATED);
+        putShort(10, 0);
+        putShort(12, entry.dosDate());
+        putInt(14, entry.crc());
+        putInt(18, entry.compressedSize());
+        putInt(22, entry.size());
+        putShort(26, entry.name().length);
+        putShort(28, 0);
+        write(header, 0, 30);
+        write(entry.name(), 0, entry.name().length);
+    }
+
+    private void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        written += len;
+    }
+
+    private void checkIdle() {
+        if (entryOpen || finished) {
+            throw new IllegalStateException(finished ? "Archive is finished" : "Previous entry is still open");
+        }
+    }
+
+    private static void checkEntrySize(String name, long compressedSize, long size) {
+        if (compressedSize >= MAX_32 || size >= MAX_32) {
+            throw new IllegalArgumentException("Entry " + name + " is too large for the archive");
+        }
+    }
+
+    // MS-DOS date of the day, at midnight; dates before 1980 are clamped to 1980-01-01
+    private static int dosDate(LocalDate date) {
+        if (date == null || date.getYear() < 1980) {
+            return (1 << 5) | 1;
+        }
+        return ((date.getYear() - 1980) << 9) | (date.getMonthValue() << 5) | date.getDayOfMonth();
+    }
+
+    private void putShort(int at, int value) {
+        header[at] = (byte) value;
+        header[at + 1] = (byte) (value >>> 8);
+    }
+
+    private void putInt(int at, long value) {
+        for (int i = 0; i < 4; i++) {
+            header[at + i] = (byte) (value >>> (8 * i));
+        }
+    }
+
+    private void putLong(int at, long value) {
+        for (int i = 0; i < 8; i++) {
+            header[at + i] = (byte) (value >>> (8 * i));
+        }
+    }
+}
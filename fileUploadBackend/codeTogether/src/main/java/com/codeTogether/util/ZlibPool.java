@@ -0,0 +1,103 @@
+package com.codeTogether.util;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Bounded pools of Deflaters, Inflaters and I/O buffers. A Deflater/Inflater owns native
+// zlib memory that is only freed by end(), so instances are reset and reused instead of
+// being left to finalization; whatever doesn't fit back into a pool is ended right away.
+// Pools are shared rather than per-thread so they stay bounded with many request threads.
+public class ZlibPool {
+
+    public static final int BUFFER_SIZE = 16 * 1024;
+    private static final int POOL_SIZE = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    private static final Map<Integer, BlockingQueue<Deflater>> DEFLATERS = new ConcurrentHashMap<>();
+    private static final BlockingQueue<Inflater> INFLATERS = new ArrayBlockingQueue<>(POOL_SIZE);
+    private static final BlockingQueue<byte[]> BUFFERS = new ArrayBlockingQueue<>(POOL_SIZE * 2);
+
+    private static final AtomicLong created = new AtomicLong();
+    private static final AtomicLong reused = new AtomicLong();
+    private static final AtomicLong ended = new AtomicLong();
+    private static volatile boolean closed;
+
+    public record Stats(long created, long reused, long ended, int pooledInflaters, int pooledBuffers) {
+    }
+
+    public static Deflater borrowDeflater(int level) {
+        Deflater deflater = deflaters(level).poll();
+        if (deflater != null) {
+            reused.incrementAndGet();
+            return deflater;
+        }
+        created.incrementAndGet();
+        return new Deflater(level);
+    }
+
+    public static void releaseDeflater(Deflater deflater, int level) {
+        deflater.reset();
+        if (closed || !deflaters(level).offer(deflater)) {
+            deflater.end();
+            ended.incrementAndGet();
+        }
+    }
+
+    public static Inflater borrowInflater() {
+        Inflater inflater = INFLATERS.poll();
+        if (inflater != null) {
+            reused.incrementAndGet();
+            return inflater;
+        }
+        created.incrementAndGet();
+        return new Inflater();
+    }
+
+    public static void releaseInflater(Inflater inflater) {
+        inflater.reset();
+        if (closed || !INFLATERS.offer(inflater)) {
+            inflater.end();
+            ended.incrementAndGet();
+        }
+    }
+
+    public static byte[] borrowBuffer() {
+        byte[] buffer = BUFFERS.poll();
+        return buffer != null ? buffer : new byte[BUFFER_SIZE];
+    }
+
+    public static void releaseBuffer(byte[] buffer) {
+        if (buffer.length == BUFFER_SIZE && !closed) {
+            BUFFERS.offer(buffer);
+        }
+    }
+
+    public static Stats stats() {
+        return new Stats(created.get(), reused.get(), ended.get(), INFLATERS.size(), BUFFERS.size());
+    }
+
+    // Ends every pooled instance; anything released afterwards is ended immediately
+    public static void shutdown() {
+        closed = true;
+        DEFLATERS.values().forEach(pool -> drain(pool, Deflater::end));
+        drain(INFLATERS, Inflater::end);
+        BUFFERS.clear();
+    }
+
+    private static BlockingQueue<Deflater> deflaters(int level) {
+        return DEFLATERS.computeIfAbsent(level, l -> new ArrayBlockingQueue<>(POOL_SIZE));
+    }
+
+    private static <T> void drain(BlockingQueue<T> pool, Consumer<T> end) {
+        T item;
+        while ((item = pool.poll()) != null) {
+            end.accept(item);
+            ended.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.codeTogether.config;
+
+import com.codeTogether.entity.FileData;
+import com.codeTogether.repository.StorageRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest
+class FileVersionConstraintTest {
+
+	private static final String FILE = "Renumbered.java";
+
+	@Autowired
+	private StorageRepository repository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private FileVersionConstraint fileVersionConstraint;
+
+	@AfterEach
+	void cleanUp() {
+		repository.deleteAll(repository.findByFileNameAndVersionLessThan(FILE, 0));
+		repository.findByFileNameAndVersionGreaterThan(FILE, 0).ifPresent(repository::delete);
+	}
+
+	// Rows left by deleting a file, uploading it again and updating it repeat version -1; the
+	// check renumbers them in the order they were written and puts the constraint back
+	@Test
+	void renumbersRepeatedVersionsAndAddsConstraint() throws Exception {
+		jdbcTemplate.execute("alter table project_files drop constraint uk_file_name_version");
+		List<FileData> rows = List.of(row(-1), row(-2), row(-1), row(2)).stream().map(repository::save).toList();
+
+		fileVersionConstraint.check();
+
+		assertEquals(List.of(-1, -2, -3, 4), rows.stream()
+				.map(row -> repository.findById(row.getId()).orElseThrow().getVersion())
+				.toList());
+		assertThrows(DataIntegrityViolationException.class, () -> repository.save(row(-3)));
+	}
+
+	private static FileData row(int version) {
+		return FileData.builder().fileName(FILE).projectFolder("renumber-test").version(version).build();
+	}
+}
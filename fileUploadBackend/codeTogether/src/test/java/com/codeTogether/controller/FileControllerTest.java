@@ -0,0 +1,175 @@
+package com.codeTogether.controller;
+
+import com.codeTogether.service.FolderIndex;
+import com.codeTogether.service.StoredFiles;
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class FileControllerTest {
+
+	private static final String FOLDER = "controller-test";
+	private static final String FILE = "Served.txt";
+	private static final List<String> FILES = List.of(FILE, "PageA.txt", "PageB.txt", "PageC.txt", "BatchA.txt", "BatchB.txt");
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private StoredFiles storedFiles;
+
+	@AfterEach
+	void cleanUp() {
+		storedFiles.remove(FILES, FOLDER);
+		FileSystemUtils.deleteRecursively(FolderIndex.ROOT.resolve(FOLDER).toFile());
+	}
+
+	// A single range is answered with 206 and only its bytes, a range past the end with 416
+	@Test
+	void servesByteRanges() throws Exception {
+		byte[] content = text();
+		storedFiles.upload(FILE, FOLDER, content);
+
+		MockHttpServletResponse partial = perform(get("/api/files/download/" + FILE).header(HttpHeaders.RANGE, "bytes=100-199"));
+		assertEquals(HttpStatus.PARTIAL_CONTENT.value(), partial.getStatus());
+		assertEquals("bytes 100-199/" + content.length, partial.getHeader(HttpHeaders.CONTENT_RANGE));
+		assertArrayEquals(Arrays.copyOfRange(content, 100, 200), partial.getContentAsByteArray());
+
+		MockHttpServletResponse suffix = perform(get("/api/files/download/" + FILE).header(HttpHeaders.RANGE, "bytes=-10"));
+		assertArrayEquals(Arrays.copyOfRange(content, content.length - 10, content.length), suffix.getContentAsByteArray());
+
+		MockHttpServletResponse unsatisfiable = perform(get("/api/files/download/" + FILE)
+				.header(HttpHeaders.RANGE, "bytes=" + content.length + "-"));
+		assertEquals(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value(), unsatisfiable.getStatus());
+		assertEquals("bytes */" + content.length, unsatisfiable.getHeader(HttpHeaders.CONTENT_RANGE));
+	}
+
+	// The stored deflate data goes out as gzip or deflate, whichever the client accepts, and
+	// decodes to the uploaded content; other clients get it inflated
+	@Test
+	void passesStoredDeflateDataThrough() throws Exception {
+		byte[] content = text();
+		storedFiles.upload(FILE, FOLDER, content);
+
+		MockHttpServletResponse gzip = perform(get("/api/files/download/" + FILE).header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"));
+		assertEquals("gzip", gzip.getHeader(HttpHeaders.CONTENT_ENCODING));
+		assertEquals(gzip.getContentAsByteArray().length, gzip.getContentLength());
+		assertArrayEquals(content, new GZIPInputStream(new ByteArrayInputStream(gzip.getContentAsByteArray())).readAllBytes());
+
+		MockHttpServletResponse deflate = perform(get("/api/files/download/" + FILE).header(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0, deflate"));
+		assertEquals("deflate", deflate.getHeader(HttpHeaders.CONTENT_ENCODING));
+		assertArrayEquals(content, new InflaterInputStream(new ByteArrayInputStream(deflate.getContentAsByteArray())).readAllBytes());
+
+		MockHttpServletResponse identity = perform(get("/api/files/download/" + FILE));
+		assertNull(identity.getHeader(HttpHeaders.CONTENT_ENCODING));
+		assertArrayEquals(content, identity.getContentAsByteArray());
+	}
+
+	// Following X-Next-Cursor returns every file of the folder once; the last page has no cursor
+	@Test
+	void pagesThroughFoldersWithCursor() throws Exception {
+		for (String fileName : List.of("PageA.txt", "PageB.txt", "PageC.txt")) {
+			storedFiles.upload(fileName, FOLDER, fileName);
+		}
+		MockHttpServletResponse first = perform(get("/api/files/folder/" + FOLDER).param("size", "2"));
+		assertEquals(List.of("PageA.txt", "PageB.txt"), JsonPath.read(first.getContentAsString(), "$[*].fileName"));
+		String cursor = first.getHeader(FileController.NEXT_CURSOR_HEADER);
+		assertNotNull(cursor);
+
+		MockHttpServletResponse last = perform(get("/api/files/folder/" + FOLDER).param("size", "2").param("cursor", cursor));
+		assertEquals(List.of("PageC.txt"), JsonPath.read(last.getContentAsString(), "$[*].fileName"));
+		assertNull(last.getHeader(FileController.NEXT_CURSOR_HEADER));
+	}
+
+	// A folder listing is 304 while nothing below the folder changes, and gets a new ETag once
+	// a file is written into it
+	@Test
+	void revalidatesFolderListingsWithEtag() throws Exception {
+		perform(multipart("/api/files/upload").file(file("files[]", FOLDER + "/First.txt", "first")));
+		MockHttpServletResponse listing = perform(get("/api/files/folders/" + FOLDER));
+		assertEquals(HttpStatus.OK.value(), listing.getStatus());
+		String etag = listing.getHeader(HttpHeaders.ETAG);
+		assertNotNull(etag);
+
+		assertEquals(HttpStatus.NOT_MODIFIED.value(),
+				perform(get("/api/files/folders/" + FOLDER).header(HttpHeaders.IF_NONE_MATCH, etag)).getStatus());
+
+		perform(multipart("/api/files/upload").file(file("files[]", FOLDER + "/Second.txt", "second")));
+		MockHttpServletResponse changed = perform(get("/api/files/folders/" + FOLDER).header(HttpHeaders.IF_NONE_MATCH, etag));
+		assertEquals(HttpStatus.OK.value(), changed.getStatus());
+		assertNotEquals(etag, changed.getHeader(HttpHeaders.ETAG));
+		assertEquals(List.of("First.txt", "Second.txt"), JsonPath.read(changed.getContentAsString(), "$"));
+	}
+
+	// A file that can't be stored fails on its own: the others are stored, and the response is
+	// 207 with one result per file in request order
+	@Test
+	void reportsBatchResultsPerFile() throws Exception {
+		storedFiles.upload(FILE, FOLDER, "not a folder");
+		MockHttpServletResponse response = perform(multipart("/api/files/fileUpload/batch")
+				.file(file("files[]", "BatchA.txt", "aaaa"))
+				.file(file("files[]", FILE + "/Nested.txt", "nested"))
+				.file(file("files[]", "BatchB.txt", "bb"))
+				.param("uploadedBy", "ci").param("role", "user").param("projectFolder", FOLDER));
+		assertEquals(HttpStatus.MULTI_STATUS.value(), response.getStatus());
+		String body = response.getContentAsString();
+		assertEquals(List.of("BatchA.txt", FILE + "/Nested.txt", "BatchB.txt"), JsonPath.read(body, "$[*].fileName"));
+		assertEquals(List.of("OK", "FAILED", "OK"), JsonPath.read(body, "$[*].status"));
+		assertEquals(List.of(4, 0, 2), JsonPath.read(body, "$[*].bytes"));
+		assertNotNull(JsonPath.read(body, "$[1].error"));
+
+		MockHttpServletResponse stored = perform(get("/api/files/download/BatchA.txt"));
+		assertEquals("aaaa", stored.getContentAsString());
+	}
+
+	// Streamed bodies are written asynchronously
+	private MockHttpServletResponse perform(RequestBuilder request) throws Exception {
+		MvcResult result = mockMvc.perform(request).andReturn();
+		if (result.getRequest().isAsyncStarted()) {
+			result = mockMvc.perform(asyncDispatch(result)).andReturn();
+		}
+		return result.getResponse();
+	}
+
+	private static MockMultipartFile file(String name, String fileName, String content) {
+		return new MockMultipartFile(name, fileName, "text/plain", content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	// Compressible text larger than a few deflate blocks
+	private static byte[] text() {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 2000; i++) {
+			text.append("line ").append(i).append(" of the served file\n");
+		}
+		return text.toString().getBytes(StandardCharsets.UTF_8);
+	}
+}
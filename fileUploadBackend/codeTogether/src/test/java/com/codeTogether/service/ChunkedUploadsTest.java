@@ -0,0 +1,171 @@
+package com.codeTogether.service;
+
+import com.codeTogether.entity.FileData;
+import com.codeTogether.repository.StorageRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"storage.chunked.session-ttl-ms=2000",
+		"storage.chunked.expiry-check-ms=3600000",
+		"storage.chunked.max-user-sessions=2",
+		"storage.chunked.max-total-size=1048576"})
+class ChunkedUploadsTest {
+
+	private static final String FILE = "Chunked.bin";
+	private static final int CHUNK = 8192;
+	private static final int CHUNKS = 8;
+
+	@Autowired
+	private TestRestTemplate rest;
+
+	@Autowired
+	private StorageService storageService;
+
+	@Autowired
+	private StorageRepository repository;
+
+	@Autowired
+	private StoredFiles storedFiles;
+
+	@Autowired
+	private ChunkedUploads chunkedUploads;
+
+	@AfterEach
+	void cleanUp() {
+		storedFiles.remove(List.of(FILE), "chunked-test");
+	}
+
+	// Chunks PUT concurrently and out of order leave the skipped chunk as the only missing range
+	// and can't be committed yet; overlapping chunks that fill it are merged, and the committed
+	// version has the uploaded bytes
+	@Test
+	void uploadsChunksInAnyOrder() throws Exception {
+		byte[] content = new byte[CHUNK * CHUNKS];
+		new Random(7).nextBytes(content);
+		ChunkedUploads.UploadStatus created = create(content.length);
+		String id = created.uploadId();
+		assertEquals(List.of(new ChunkedUploads.Range(0, content.length)), created.missing());
+
+		List<Integer> order = new ArrayList<>(List.of(0, 1, 2, 4, 5, 6, 7));
+		Collections.shuffle(order, new Random(7));
+		ExecutorService clients = Executors.newFixedThreadPool(4);
+		List<Future<ResponseEntity<ChunkedUploads.UploadStatus>>> puts = new ArrayList<>();
+		for (int chunk : order) {
+			puts.add(clients.submit(() -> put(id, (long) chunk * CHUNK, Arrays.copyOfRange(content, chunk * CHUNK, (chunk + 1) * CHUNK))));
+		}
+		for (Future<ResponseEntity<ChunkedUploads.UploadStatus>> put : puts) {
+			assertEquals(HttpStatus.OK, put.get(30, TimeUnit.SECONDS).getStatusCode());
+		}
+		clients.shutdown();
+
+		ChunkedUploads.UploadStatus status = rest.getForObject("/api/files/chunked/" + id, ChunkedUploads.UploadStatus.class);
+		assertEquals(List.of(new ChunkedUploads.Range(3 * CHUNK, 4 * CHUNK)), status.missing());
+		assertEquals(7L * CHUNK, status.receivedBytes());
+		assertEquals(HttpStatus.CONFLICT, commit(id).getStatusCode());
+		assertEquals(HttpStatus.BAD_REQUEST, put(id, content.length - 10, new byte[20]).getStatusCode());
+
+		int half = 3 * CHUNK + CHUNK / 2;
+		put(id, 3 * CHUNK, Arrays.copyOfRange(content, 3 * CHUNK, half + 100));
+		status = put(id, half, Arrays.copyOfRange(content, half, 4 * CHUNK)).getBody();
+		assertTrue(status.missing().isEmpty());
+		assertEquals(content.length, status.receivedBytes());
+
+		assertEquals(HttpStatus.OK, commit(id).getStatusCode());
+		FileData active = repository.findByFileNameAndVersionGreaterThan(FILE, 0).orElseThrow();
+		assertArrayEquals(content, storageService.getContent(active));
+		assertFalse(Files.exists(stagingFile(id)));
+		assertEquals(HttpStatus.NOT_FOUND, rest.getForEntity("/api/files/chunked/" + id, String.class).getStatusCode());
+	}
+
+	// Cancelled and expired sessions are gone together with their staging files
+	@Test
+	void cancelsAndExpiresSessions() throws Exception {
+		String cancelled = create(100).uploadId();
+		put(cancelled, 0, new byte[50]);
+		assertEquals(HttpStatus.NO_CONTENT, rest.exchange("/api/files/chunked/" + cancelled, HttpMethod.DELETE, null,
+				Void.class).getStatusCode());
+		assertEquals(HttpStatus.NOT_FOUND, put(cancelled, 50, new byte[50]).getStatusCode());
+		assertFalse(Files.exists(stagingFile(cancelled)));
+
+		String expired = create(100).uploadId();
+		put(expired, 0, new byte[50]);
+		chunkedUploads.expireSessions();
+		assertEquals(HttpStatus.OK, rest.getForEntity("/api/files/chunked/" + expired, String.class).getStatusCode());
+		Thread.sleep(2100);
+		chunkedUploads.expireSessions();
+		assertEquals(HttpStatus.NOT_FOUND, rest.getForEntity("/api/files/chunked/" + expired, String.class).getStatusCode());
+		assertFalse(Files.exists(stagingFile(expired)));
+	}
+
+	// A user can't open more than max-user-sessions at once or declare more than max-total-size;
+	// a cancelled session frees its slot
+	@Test
+	void limitsSessions() {
+		String first = create(100).uploadId();
+		String second = create(100).uploadId();
+		assertEquals(HttpStatus.TOO_MANY_REQUESTS, post(100, "ci").getStatusCode());
+		ResponseEntity<ChunkedUploads.UploadStatus> other = post(100, "other");
+		assertEquals(HttpStatus.CREATED, other.getStatusCode());
+		assertEquals(HttpStatus.BAD_REQUEST, post(1048577, "someone").getStatusCode());
+
+		rest.delete("/api/files/chunked/" + first);
+		String third = create(100).uploadId();
+		for (String id : List.of(second, third, other.getBody().uploadId())) {
+			rest.delete("/api/files/chunked/" + id);
+		}
+	}
+
+	private ChunkedUploads.UploadStatus create(long totalSize) {
+		ResponseEntity<ChunkedUploads.UploadStatus> created = post(totalSize, "ci");
+		assertEquals(HttpStatus.CREATED, created.getStatusCode());
+		return created.getBody();
+	}
+
+	private ResponseEntity<ChunkedUploads.UploadStatus> post(long totalSize, String uploadedBy) {
+		return rest.postForEntity("/api/files/chunked?fileName=" + FILE + "&totalSize=" + totalSize + "&uploadedBy="
+				+ uploadedBy + "&role=user&projectFolder=chunked-test", null, ChunkedUploads.UploadStatus.class);
+	}
+
+	private ResponseEntity<ChunkedUploads.UploadStatus> put(String id, long offset, byte[] bytes) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+		return rest.exchange("/api/files/chunked/" + id + "?offset=" + offset, HttpMethod.PUT, new HttpEntity<>(bytes, headers),
+				ChunkedUploads.UploadStatus.class);
+	}
+
+	private ResponseEntity<String> commit(String id) {
+		return rest.postForEntity("/api/files/chunked/" + id + "/commit", null, String.class);
+	}
+
+	private static Path stagingFile(String id) {
+		return Paths.get("uploads", ".chunked", id + ".part");
+	}
+}
@@ -0,0 +1,83 @@
+package com.codeTogether.service;
+
+import com.codeTogether.entity.FileBlob;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+@SpringBootTest(properties = "storage.delta.keyframe-interval=3")
+class DeltaStorageTest {
+
+	private static final List<String> FILES = List.of("ChainA.txt", "ChainB.txt");
+
+	@Autowired
+	private StoredFiles storedFiles;
+
+	@Autowired
+	private BlobStore blobStore;
+
+	@AfterEach
+	void cleanUp() {
+		storedFiles.remove(FILES, "delta-test");
+	}
+
+	// A chain of deltas ends in a full copy after two deltas however the blobs are shared between
+	// files, and content uploaded again as the active version is a full copy again
+	@Test
+	void boundsChainsPerBlobAndKeepsActiveContentFull() throws Exception {
+		String base = text();
+		String[] hashes = new String[6];
+		for (int i = 1; i <= 4; i++) {
+			hashes[i] = storedFiles.upload("ChainA.txt", "delta-test", base + i).getContentHash();
+		}
+		StoredFiles.await(() -> blob(hashes[2]).isDelta(), 10_000);
+		assertEquals(hashes[2], blob(hashes[1]).getBaseHash());
+		assertEquals(hashes[3], blob(hashes[2]).getBaseHash());
+		assertEquals(2, blob(hashes[3]).getDeltaHeight());
+
+		// Superseded in another file, the end of the chain still stays a full copy
+		storedFiles.upload("ChainB.txt", "delta-test", base + 3);
+		hashes[5] = storedFiles.upload("ChainB.txt", "delta-test", base + 5).getContentHash();
+		storedFiles.upload("ChainB.txt", "delta-test", base + 6);
+		StoredFiles.await(() -> blob(hashes[5]).isDelta(), 10_000);
+		assertFalse(blob(hashes[3]).isDelta());
+
+		storedFiles.upload("ChainA.txt", "delta-test", base + 1);
+		StoredFiles.await(() -> !blob(hashes[1]).isDelta(), 10_000);
+		StoredFiles.await(() -> blob(hashes[4]).isDelta(), 10_000);
+		assertEquals(hashes[1], blob(hashes[4]).getBaseHash());
+	}
+
+	// Content superseded in one file while it is still the active content of another stays a full copy
+	@Test
+	void keepsContentActiveElsewhereFull() throws Exception {
+		String base = text();
+		String shared = storedFiles.upload("ChainB.txt", "delta-test", base + "x").getContentHash();
+		storedFiles.upload("ChainA.txt", "delta-test", base + "x");
+		String next = storedFiles.upload("ChainA.txt", "delta-test", base + "y").getContentHash();
+		storedFiles.upload("ChainA.txt", "delta-test", base + "z");
+		StoredFiles.await(() -> blob(next).isDelta(), 10_000);
+		assertFalse(blob(shared).isDelta());
+	}
+
+	private FileBlob blob(String hash) {
+		return blobStore.find(hash).orElseThrow();
+	}
+
+	// Digits compress to about half, so a delta between two variants is much smaller than either
+	private static String text() {
+		Random random = new Random(7);
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 4096; i++) {
+			text.append((char) ('0' + random.nextInt(10)));
+		}
+		return text.toString();
+	}
+}
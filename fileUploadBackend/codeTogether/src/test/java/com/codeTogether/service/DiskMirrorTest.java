@@ -0,0 +1,99 @@
+package com.codeTogether.service;
+
+import com.codeTogether.entity.FileData;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mockingDetails;
+
+// Nothing is cached, so downloads of active versions go through the uploads/ mirror
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "storage.cache.max-entry-bytes=0")
+class DiskMirrorTest {
+
+	private static final String FILE = "Mirrored.java";
+	private static final String CONTENT = "class Mirrored {}\n";
+	private static final Path MIRROR = Paths.get("uploads", "mirror-test", FILE);
+	private static final Path SENDFILE_DIR = Paths.get("uploads", ".sendfile");
+
+	@Autowired
+	private TestRestTemplate rest;
+
+	@Autowired
+	private StoredFiles storedFiles;
+
+	@MockitoSpyBean
+	private DiskMirror diskMirror;
+
+	@AfterEach
+	void cleanUp() throws Exception {
+		storedFiles.remove(List.of(FILE), "mirror-test");
+		try (Stream<Path> links = Files.list(SENDFILE_DIR)) {
+			for (Path link : (Iterable<Path>) links::iterator) {
+				Files.deleteIfExists(link);
+			}
+		}
+	}
+
+	// A verified mirror is sent as it is; one changed on disk is not trusted any more and the
+	// stored content is sent instead, whether it changed before the download or while it started
+	@Test
+	void sendsVerifiedMirrorsOnly() throws Exception {
+		FileData uploaded = storedFiles.upload(FILE, "mirror-test", CONTENT);
+		assertTrue(diskMirror.find(uploaded).isPresent());
+		assertEquals(CONTENT, download());
+		// Handed to Tomcat as a link for sendfile, or opened and copied where sendfile isn't available
+		assertTrue(mockingDetails(diskMirror).getInvocations().stream()
+				.anyMatch(invocation -> List.of("link", "open").contains(invocation.getMethod().getName())));
+
+		tamper();
+		assertEquals(CONTENT, download());
+
+		storedFiles.upload(FILE, "mirror-test", CONTENT.replace("{}", "{ }"));
+		doAnswer(invocation -> {
+			Object found = invocation.callRealMethod();
+			tamper();
+			return found;
+		}).when(diskMirror).find(any());
+		assertEquals(CONTENT.replace("{}", "{ }"), download());
+	}
+
+	// Files in the sendfile directory that aren't links named by their creation time are removed
+	@Test
+	void removesStrayFilesWithLinks() throws Exception {
+		Path stray = SENDFILE_DIR.resolve("stray-file");
+		Files.writeString(stray, "stray");
+		diskMirror.removeExpiredLinks();
+		assertFalse(Files.exists(stray));
+	}
+
+	private String download() {
+		ResponseEntity<String> response = rest.getForEntity("/api/files/download/" + FILE, String.class);
+		assertEquals(HttpStatus.OK, response.getStatusCode());
+		return response.getBody();
+	}
+
+	// Same size, different bytes and a later modification time
+	private static void tamper() throws Exception {
+		FileTime modified = Files.getLastModifiedTime(MIRROR);
+		Files.writeString(MIRROR, "x".repeat((int) Files.size(MIRROR)));
+		Files.setLastModifiedTime(MIRROR, FileTime.fromMillis(modified.toMillis() + 1000));
+	}
+}
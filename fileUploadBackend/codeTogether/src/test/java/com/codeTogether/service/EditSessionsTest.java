@@ -0,0 +1,205 @@
+package com.codeTogether.service;
+
+import com.codeTogether.entity.FileData;
+import com.codeTogether.repository.StorageRepository;
+import com.codeTogether.util.TextOperation;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+		properties = {"storage.edit.idle-checkpoint-ms=300", "storage.edit.checkpoint-check-ms=50"})
+class EditSessionsTest {
+
+	private static final String FOLDER = "edit-sessions-test";
+	private static final String FILE = "shared.txt";
+	private static final int EDITS_PER_CLIENT = 50;
+
+	@LocalServerPort
+	private int port;
+
+	@Autowired
+	private StorageService storageService;
+
+	@Autowired
+	private StorageRepository repository;
+
+	@Autowired
+	private StoredFiles storedFiles;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@AfterEach
+	void cleanUp() {
+		storedFiles.remove(List.of(FILE), FOLDER);
+	}
+
+	// Two editors type into the same file at once: both end up with the same text, and the
+	// edits are stored as one checkpointed version instead of one version per edit
+	@Test
+	void concurrentEditsConvergeAndAreCheckpointedTogether() throws Exception {
+		storedFiles.upload(FILE, FOLDER, "start\n");
+		Editor alice = new Editor("alice");
+		Editor bob = new Editor("bob");
+		alice.await(alice.joined);
+		bob.await(bob.joined);
+
+		ExecutorService typing = Executors.newFixedThreadPool(2);
+		Future<?> aliceTyping = typing.submit(() -> alice.type(1, EDITS_PER_CLIENT));
+		Future<?> bobTyping = typing.submit(() -> bob.type(2, EDITS_PER_CLIENT));
+		aliceTyping.get(30, TimeUnit.SECONDS);
+		bobTyping.get(30, TimeUnit.SECONDS);
+		typing.shutdown();
+		alice.await(alice.caughtUp);
+		bob.await(bob.caughtUp);
+
+		assertEquals(alice.text(), bob.text());
+		assertEquals("start\n".length() + 2 * EDITS_PER_CLIENT, alice.text().length());
+		StoredFiles.await(() -> alice.text().equals(activeText()), 10_000);
+		FileData active = repository.findByFileNameAndVersionGreaterThan(FILE, 0).orElseThrow();
+		assertTrue(active.getVersion() <= 3, "checkpoints: " + (active.getVersion() - 1));
+		alice.session.close();
+		bob.session.close();
+	}
+
+	// Deleting a file while it is edited ends its session: the editor is told and disconnected,
+	// the edits aren't saved over the deletion and the file can't be opened again
+	@Test
+	void deletingFileClosesItsSession() throws Exception {
+		storedFiles.upload(FILE, FOLDER, "start\n");
+		Editor alice = new Editor("alice");
+		alice.await(alice.joined);
+		storageService.deleteFile(FILE);
+		alice.type(1, 1);
+
+		alice.await(alice.closed);
+		assertTrue(alice.error.contains("was deleted"), alice.error);
+		assertTrue(repository.findByFileNameAndVersionGreaterThan(FILE, 0).isEmpty());
+		Editor carol = new Editor("carol");
+		carol.await(carol.closed);
+		assertTrue(carol.error.contains("File not found"), carol.error);
+	}
+
+	private String activeText() {
+		return new String(storageService.downloadFile(FILE), StandardCharsets.UTF_8);
+	}
+
+	// A minimal ot.js-style client: one operation in flight, remote operations are transformed
+	// against it before being applied locally
+	private class Editor extends TextWebSocketHandler {
+
+		final CountDownLatch joined = new CountDownLatch(1);
+		final CountDownLatch caughtUp = new CountDownLatch(1);
+		final CountDownLatch closed = new CountDownLatch(1);
+		final WebSocketSession session;
+		private String text;
+		private int revision;
+		private TextOperation outstanding;
+		private int operationsSeen;
+		private volatile String error;
+
+		Editor(String user) throws Exception {
+			session = new StandardWebSocketClient()
+					.execute(this, "ws://localhost:" + port + "/ws/edit?file=" + FILE + "&user=" + user)
+					.get(10, TimeUnit.SECONDS);
+		}
+
+		// Inserts a character at a random position, waiting for each acknowledgement
+		void type(long seed, int edits) {
+			Random random = new Random(seed);
+			try {
+				for (int i = 0; i < edits; i++) {
+					synchronized (this) {
+						long deadline = System.currentTimeMillis() + 10_000;
+						while (outstanding != null) {
+							long remaining = deadline - System.currentTimeMillis();
+							if (remaining <= 0) {
+								throw new IllegalStateException("No acknowledgement from the server");
+							}
+							wait(remaining);
+						}
+						int position = random.nextInt(text.length() + 1);
+						outstanding = new TextOperation().retain(position).insert(String.valueOf((char) ('a' + i % 26)))
+								.retain(text.length() - position);
+						text = outstanding.apply(text);
+						session.sendMessage(new TextMessage(objectMapper.writeValueAsString(
+								Map.of("type", "operation", "revision", revision, "operation", outstanding.toJson()))));
+					}
+				}
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		synchronized String text() {
+			return text;
+		}
+
+		@Override
+		protected synchronized void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+			JsonNode json = objectMapper.readTree(message.getPayload());
+			switch (json.get("type").asText()) {
+				case "snapshot" -> {
+					text = json.get("text").asText();
+					revision = json.get("revision").asInt();
+					joined.countDown();
+				}
+				case "ack" -> {
+					revision = json.get("revision").asInt();
+					outstanding = null;
+					operationsSeen++;
+					notifyAll();
+				}
+				case "operation" -> {
+					TextOperation remote = TextOperation.fromJson(objectMapper.convertValue(json.get("operation"), List.class));
+					if (outstanding != null) {
+						TextOperation[] pair = TextOperation.transform(outstanding, remote);
+						outstanding = pair[0];
+						remote = pair[1];
+					}
+					text = remote.apply(text);
+					revision = json.get("revision").asInt();
+					operationsSeen++;
+				}
+				case "error" -> error = json.get("message").asText();
+				default -> {
+				}
+			}
+			if (operationsSeen == 2 * EDITS_PER_CLIENT) {
+				caughtUp.countDown();
+			}
+		}
+
+		@Override
+		public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+			closed.countDown();
+		}
+
+		void await(CountDownLatch latch) throws InterruptedException {
+			assertTrue(latch.await(20, TimeUnit.SECONDS));
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package com.codeTogether.service;
+
+import com.codeTogether.entity.FileBlob;
+import com.codeTogether.entity.FileData;
+import com.codeTogether.repository.FileBlobRepository;
+import com.codeTogether.repository.StorageRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {
+		"storage.retention.keep-last=2",
+		"storage.retention.keep-daily-days=0",
+		"storage.retention.batch-size=2",
+		"storage.retention.batch-pause-ms=0",
+		"storage.retention.orphan-min-age-ms=8640000000",
+		"storage.delta.enabled=false"})
+class HistoryCompactorTest {
+
+	private static final String FILE = "Retained.java";
+	private static final String ORPHANED = "a".repeat(64);
+	private static final String FRESH = "b".repeat(64);
+
+	@Autowired
+	private StorageService storageService;
+
+	@Autowired
+	private StorageRepository repository;
+
+	@Autowired
+	private StoredFiles storedFiles;
+
+	@Autowired
+	private HistoryCompactor historyCompactor;
+
+	@Autowired
+	private FileBlobRepository blobRepository;
+
+	@AfterEach
+	void cleanUp() {
+		storedFiles.remove(List.of(FILE), "retention");
+		blobRepository.deleteAllById(List.of(ORPHANED, FRESH));
+	}
+
+	// Only the newest keep-last previous versions survive, the active version and the content
+	// of the kept ones are untouched, and a stale file without an active version is removed
+	@Test
+	void deletesExpiredVersionsAndOrphans() throws Exception {
+		for (int i = 1; i <= 6; i++) {
+			storedFiles.upload(FILE, "retention", "class Retained { int v = " + i + "; }");
+		}
+		Path orphan = Paths.get("uploads", "retention", "Gone.java");
+		Files.writeString(orphan, "class Gone {}");
+		Files.setLastModifiedTime(orphan, FileTime.from(Instant.now().minus(200, ChronoUnit.DAYS)));
+
+		HistoryCompactor.Report report = historyCompactor.compact();
+
+		assertEquals(3, report.versionsDeleted());
+		assertEquals(1, report.orphanFilesDeleted());
+		assertFalse(Files.exists(orphan));
+		assertTrue(Files.exists(Paths.get("uploads", "retention", FILE)));
+		List<FileData> previous = repository.findByFileNameAndVersionLessThan(FILE, 0);
+		assertEquals(List.of(-5, -4), previous.stream().map(FileData::getVersion).sorted().toList());
+		for (FileData version : previous) {
+			assertEquals("class Retained { int v = " + -version.getVersion() + "; }",
+					new String(storageService.getContent(version), StandardCharsets.UTF_8));
+		}
+		assertEquals(6, storageService.getActiveFile(FILE).getVersion());
+	}
+
+	// A blob left unreferenced past the grace period is deleted, a just inserted one is not
+	@Test
+	void sweepsOldUnreferencedBlobs() {
+		blobRepository.save(FileBlob.builder().hash(ORPHANED).content(new byte[] {1}).createdAt(0L).build());
+		blobRepository.save(FileBlob.builder().hash(FRESH).content(new byte[] {1}).createdAt(System.currentTimeMillis()).build());
+
+		assertTrue(historyCompactor.sweepUnreferencedBlobs() >= 1);
+
+		assertFalse(blobRepository.existsById(ORPHANED));
+		assertTrue(blobRepository.existsById(FRESH));
+	}
+}
@@ -0,0 +1,149 @@
+package com.codeTogether.service;
+
+import com.codeTogether.entity.FileData;
+import com.codeTogether.repository.StorageRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {
+		"storage.blob.backend=pack",
+		"storage.pack.dir=target/pack-test",
+		"storage.pack.segment-bytes=2048",
+		"storage.pack.retired-segment-ttl-ms=0",
+		"storage.pack.compaction-initial-delay-ms=3600000",
+		"storage.delta.enabled=false"})
+class PackStoreTest {
+
+	private static final int FILES = 16;
+
+	@Autowired
+	private StorageService storageService;
+
+	@Autowired
+	private StorageRepository repository;
+
+	@Autowired
+	private StoredFiles storedFiles;
+
+	@Autowired
+	private PackCompactor packCompactor;
+
+	@AfterEach
+	void cleanUp() {
+		storedFiles.remove(IntStream.range(0, FILES).mapToObj(i -> "Packed" + i + ".bin").toList(), "pack-test");
+	}
+
+	// Deleted content is garbage in its segment until compaction copies the live records out
+	// and the segment is deleted; the remaining files still read back from their new location
+	@Test
+	void compactionReclaimsDeletedContent() throws Exception {
+		Random random = new Random(7);
+		Map<String, byte[]> contents = new LinkedHashMap<>();
+		for (int i = 0; i < FILES; i++) {
+			byte[] content = new byte[400];
+			random.nextBytes(content);
+			contents.put("Packed" + i + ".bin", content);
+			storedFiles.upload("Packed" + i + ".bin", "pack-test", content);
+		}
+		long before = packCompactor.summary().segmentBytes();
+		for (int i = 0; i < FILES; i += 2) {
+			storageService.deleteFile("Packed" + i + ".bin");
+			contents.remove("Packed" + i + ".bin");
+		}
+
+		PackCompactor.Report compacted = packCompactor.compact();
+		assertTrue(compacted.segmentsCompacted() > 0);
+		assertTrue(packCompactor.compact().bytesDeleted() > 0);
+		assertTrue(packCompactor.summary().segmentBytes() < before);
+		for (Map.Entry<String, byte[]> content : contents.entrySet()) {
+			FileData active = repository.findByFileNameAndVersionGreaterThan(content.getKey(), 0).orElseThrow();
+			assertArrayEquals(content.getValue(), storageService.getContent(active));
+		}
+	}
+
+	// A record torn by a crash is cut off when the segment is opened again, and appending
+	// carries on after the last complete record
+	@Test
+	void truncatesTornRecordOnStartup(@TempDir Path dir) throws Exception {
+		PackStore packStore = open(dir);
+		List<PackStore.Location> locations = new ArrayList<>();
+		List<byte[]> payloads = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			byte[] payload = ("record " + i).repeat(20).getBytes();
+			payloads.add(payload);
+			locations.add(packStore.append(hash(i), payload));
+		}
+		assertTrue(locations.get(4).segment() > locations.get(0).segment());
+		packStore.shutdown();
+
+		Path last = dir.resolve(String.format("segment-%06d.pack", locations.get(4).segment()));
+		long complete = Files.size(last);
+		Files.write(last, new byte[] {0x43, 0x4b, 0x50, 0x31, 0, 0, 1, 0, 9, 9}, StandardOpenOption.APPEND);
+
+		packStore = open(dir);
+		assertEquals(complete, Files.size(last));
+		for (int i = 0; i < 5; i++) {
+			ByteBuffer payload = packStore.read(hash(i), locations.get(i));
+			assertEquals(ByteBuffer.wrap(payloads.get(i)), payload);
+		}
+		PackStore.Location appended = packStore.append(hash(5), "after recovery".getBytes());
+		assertEquals(complete, appended.offset());
+		assertArrayEquals("after recovery".getBytes(), packStore.readBytes(hash(5), appended));
+		packStore.shutdown();
+	}
+
+	// A corrupt record with complete records behind it is not a torn append: the segment is left
+	// untouched and the store refuses to open
+	@Test
+	void refusesCorruptRecordBeforeTail(@TempDir Path dir) throws Exception {
+		PackStore packStore = open(dir);
+		PackStore.Location first = packStore.append(hash(0), "first record".getBytes());
+		packStore.append(hash(1), "second record".getBytes());
+		packStore.shutdown();
+
+		Path segment = dir.resolve(String.format("segment-%06d.pack", first.segment()));
+		byte[] bytes = Files.readAllBytes(segment);
+		bytes[(int) first.offset() + PackStore.HEADER_BYTES] ^= 1;
+		Files.write(segment, bytes);
+
+		IllegalStateException refused = assertThrows(IllegalStateException.class, () -> open(dir));
+		assertTrue(refused.getMessage().contains("at bytes 0-" + (PackStore.HEADER_BYTES + first.length())), refused.getMessage());
+		assertArrayEquals(bytes, Files.readAllBytes(segment));
+	}
+
+	private static PackStore open(Path dir) throws Exception {
+		PackStore packStore = new PackStore();
+		ReflectionTestUtils.setField(packStore, "dir", dir.toString());
+		ReflectionTestUtils.setField(packStore, "segmentBytes", 400L);
+		ReflectionTestUtils.setField(packStore, "retiredTtlMillis", 0L);
+		packStore.init();
+		return packStore;
+	}
+
+	private static String hash(int i) {
+		byte[] raw = new byte[32];
+		raw[31] = (byte) i;
+		return HexFormat.of().formatHex(raw);
+	}
+}
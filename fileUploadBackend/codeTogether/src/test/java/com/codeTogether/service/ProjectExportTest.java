@@ -0,0 +1,115 @@
+package com.codeTogether.service;
+
+import com.codeTogether.entity.FileData;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+
+@SpringBootTest
+class ProjectExportTest {
+
+	private static final List<String> FILES = List.of("Exported.java", "Broken.java");
+	private static final byte[] END_OF_DIRECTORY = {0x50, 0x4b, 0x05, 0x06};
+	private static final byte[] DATA_DESCRIPTOR = {0x50, 0x4b, 0x07, 0x08};
+
+	@MockitoSpyBean
+	private StorageService storageService;
+
+	@Autowired
+	private StoredFiles storedFiles;
+
+	@Autowired
+	private ProjectExport projectExport;
+
+	@AfterEach
+	void cleanUp() {
+		storedFiles.remove(FILES, "export-test");
+	}
+
+	// A file whose content can't be read part way through fails the export, and the archive
+	// written so far has neither a data descriptor for that entry nor a central directory
+	@Test
+	void failedReadLeavesArchiveUnfinished() throws Exception {
+		storedFiles.upload("Exported.java", "export-test", "class Exported {}\n");
+		storedFiles.upload("Broken.java", "export-test", "class Broken {}\n".repeat(100));
+		// Every entry is written through writeContent, and Broken.java fails after some of its bytes
+		doReturn(Optional.empty()).when(storageService).findCompressedContent(any());
+		doAnswer(invocation -> {
+			OutputStream out = invocation.getArgument(3);
+			out.write("class Broken".getBytes(StandardCharsets.UTF_8));
+			throw new IOException("Storage read failed");
+		}).when(storageService).writeContent(argThat((FileData file) -> file != null && "Broken.java".equals(file.getFileName())),
+				anyLong(), anyLong(), any());
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertThrows(IOException.class, () -> projectExport.write("export-test", null, out));
+
+		byte[] archive = out.toByteArray();
+		assertEquals(-1, indexOf(archive, END_OF_DIRECTORY));
+		int broken = indexOf(archive, "Broken.java".getBytes(StandardCharsets.UTF_8));
+		assertEquals(-1, indexOf(Arrays.copyOfRange(archive, broken, archive.length), DATA_DESCRIPTOR));
+		try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(archive))) {
+			ZipEntry first = in.getNextEntry();
+			assertEquals("Exported.java", first.getName());
+			assertEquals("class Exported {}\n", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+			assertEquals("Broken.java", in.getNextEntry().getName());
+			assertThrows(IOException.class, in::readAllBytes);
+		}
+	}
+
+	// Only the active version of each file is exported, once, with subfolders as paths
+	@Test
+	void exportsActiveVersionsOnce() throws Exception {
+		storedFiles.upload("Exported.java", "export-test", "class Exported { int v = 1; }\n");
+		storedFiles.upload("Exported.java", "export-test", "class Exported { int v = 2; }\n");
+		storedFiles.upload("Broken.java", "export-test/sub", "class Broken {}\n");
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		projectExport.write("export-test", null, out);
+
+		Map<String, String> entries = new HashMap<>();
+		try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+			for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+				assertNull(entries.put(entry.getName(), new String(in.readAllBytes(), StandardCharsets.UTF_8)));
+			}
+		}
+		assertEquals(Map.of("Exported.java", "class Exported { int v = 2; }\n", "sub/Broken.java", "class Broken {}\n"), entries);
+	}
+
+	private static int indexOf(byte[] data, byte[] pattern) {
+		outer:
+		for (int i = 0; i + pattern.length <= data.length; i++) {
+			for (int j = 0; j < pattern.length; j++) {
+				if (data[i + j] != pattern[j]) {
+					continue outer;
+				}
+			}
+			return i;
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,73 @@
+package com.codeTogether.service;
+
+import com.codeTogether.entity.FileData;
+import com.codeTogether.entity.ProjectSnapshot;
+import com.codeTogether.repository.StorageRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class ProjectSnapshotsTest {
+
+	private static final List<String> FILES = List.of("SnapA.java", "SnapB.java", "SnapC.java");
+
+	@Autowired
+	private StorageService storageService;
+
+	@Autowired
+	private StorageRepository repository;
+
+	@Autowired
+	private StoredFiles storedFiles;
+
+	@Autowired
+	private ProjectSnapshots projectSnapshots;
+
+	@AfterEach
+	void cleanUp() {
+		projectSnapshots.list("snap").forEach(snapshot -> projectSnapshots.delete(snapshot.getId()));
+		storedFiles.remove(FILES, "snap");
+	}
+
+	// The diff against the current state shows what changed since the snapshot, and restoring
+	// brings back the snapshot's content as new versions of the changed files only, while a file
+	// added since loses its active version
+	@Test
+	void restoresChangedFilesOnly() throws Exception {
+		storedFiles.upload("SnapA.java", "snap", "class SnapA { int v = 1; }");
+		storedFiles.upload("SnapB.java", "snap/sub", "class SnapB {}");
+		ProjectSnapshot snapshot = projectSnapshots.create("snap", "before refactoring", "ci");
+		assertEquals(2, snapshot.getFileCount());
+
+		storedFiles.upload("SnapA.java", "snap", "class SnapA { int v = 2; }");
+		storedFiles.upload("SnapC.java", "snap", "class SnapC {}");
+		List<ProjectSnapshots.Change> changes = projectSnapshots.diff(snapshot.getId(), null);
+		assertEquals(List.of("SnapA.java:MODIFIED:1:2", "SnapC.java:ADDED:null:1"), changes.stream()
+				.map(change -> change.fileName() + ":" + change.change() + ":" + change.fromVersion() + ":" + change.toVersion())
+				.toList());
+
+		ProjectSnapshots.RestoreResult result = projectSnapshots.restore(snapshot.getId());
+		assertEquals(new ProjectSnapshots.RestoreResult(snapshot.getId(), 1, 1, 1), result);
+
+		FileData restored = storageService.getActiveFile("SnapA.java");
+		assertEquals(3, restored.getVersion());
+		assertEquals("class SnapA { int v = 1; }", new String(storageService.getContent(restored), StandardCharsets.UTF_8));
+		assertEquals("class SnapA { int v = 1; }", Files.readString(Paths.get("uploads", "snap", "SnapA.java")));
+		assertEquals(1, storageService.getActiveFile("SnapB.java").getVersion());
+		assertTrue(repository.findByFileNameAndVersionGreaterThan("SnapC.java", 0).isEmpty());
+		assertTrue(repository.findByFileNameAndVersion("SnapC.java", -1).isPresent());
+		assertFalse(Files.exists(Paths.get("uploads", "snap", "SnapC.java")));
+		assertTrue(projectSnapshots.diff(snapshot.getId(), null).isEmpty());
+	}
+}
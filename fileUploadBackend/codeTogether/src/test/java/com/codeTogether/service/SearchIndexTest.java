@@ -0,0 +1,79 @@
+package com.codeTogether.service;
+
+import com.codeTogether.repository.SearchTrigramsRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class SearchIndexTest {
+
+	private static final List<String> FILES = List.of("Search1.java", "Search2.java", "search-notes.txt", "search.bin");
+
+	@Autowired
+	private StorageService storageService;
+
+	@Autowired
+	private StoredFiles storedFiles;
+
+	@Autowired
+	private SearchIndex searchIndex;
+
+	@Autowired
+	private SearchTrigramsRepository trigramsRepository;
+
+	@AfterEach
+	void cleanUp() {
+		storedFiles.remove(FILES, "search-a", "search-b");
+	}
+
+	// Uploads, updates and deletes are reflected in literal and regex queries, by folder and line,
+	// and the stored trigrams of content go away with its blob
+	@Test
+	void findsLinesInActiveVersions() throws Exception {
+		storedFiles.upload("Search1.java", "search-a", "class Search1 {\n    int retryCount = 3;\n}\n");
+		storedFiles.upload("Search2.java", "search-b", "class Search2 {\n    void retry() {}\n    int RETRYCOUNT;\n}\n");
+		storedFiles.upload("search-notes.txt", "search-a", "no match here\n");
+		storedFiles.upload("search.bin", "search-a", "retryCount\u0000binary");
+
+		SearchIndex.SearchResult literal = await("retryCount", false, true, null, result -> result.hits().size() == 1);
+		assertEquals("Search1.java", literal.hits().get(0).fileName());
+		assertEquals(2, literal.hits().get(0).line());
+		assertEquals("    int retryCount = 3;", literal.hits().get(0).text());
+
+		// The files may be indexed in separate batches
+		assertEquals(2, await("retrycount", false, false, null, result -> result.hits().size() == 2).hits().size());
+		assertEquals(1, searchIndex.search("retrycount", false, false, "search-b", 10).hits().size());
+		SearchIndex.SearchResult regex = searchIndex.search("void \\w+\\(\\)|int retry\\w+", true, true, null, 10);
+		assertEquals(2, regex.hits().size());
+		assertTrue(regex.candidateFiles() <= 2, "candidates: " + regex.candidateFiles());
+
+		storedFiles.upload("Search1.java", "search-a", "class Search1 {\n    int attempts = 3;\n}\n");
+		await("retryCount", false, true, null, result -> result.hits().isEmpty());
+		String deletedHash = storageService.getActiveFile("Search2.java").getContentHash();
+		assertTrue(trigramsRepository.existsById(deletedHash));
+		storageService.deleteFile("Search2.java");
+		await("RETRYCOUNT", false, true, null, result -> result.hits().isEmpty());
+		assertFalse(trigramsRepository.existsById(deletedHash));
+	}
+
+	// The index is updated in the background shortly after each commit
+	private SearchIndex.SearchResult await(String query, boolean regex, boolean caseSensitive, String folder,
+			Predicate<SearchIndex.SearchResult> condition) throws InterruptedException {
+		AtomicReference<SearchIndex.SearchResult> result = new AtomicReference<>();
+		StoredFiles.await(() -> {
+			result.set(searchIndex.search(query, regex, caseSensitive, folder, 10));
+			return condition.test(result.get());
+		}, 10_000);
+		return result.get();
+	}
+}
@@ -0,0 +1,57 @@
+package com.codeTogether.service;
+
+import com.codeTogether.entity.FileData;
+import com.codeTogether.repository.StorageRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Uploads and cleanup shared by the storage tests
+@Component
+public class StoredFiles {
+
+	@Autowired
+	private StorageService storageService;
+
+	@Autowired
+	private StorageRepository repository;
+
+	public FileData upload(String fileName, String projectFolder, String content) throws IOException {
+		return storageService.uploadFile(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), fileName,
+				"text/plain", "ci", "user", projectFolder);
+	}
+
+	public FileData upload(String fileName, String projectFolder, byte[] content) throws IOException {
+		return storageService.uploadFile(new ByteArrayInputStream(content), fileName, "application/octet-stream", "ci",
+				"user", projectFolder);
+	}
+
+	// Deletes every version of the files and the folders under uploads/
+	public void remove(Collection<String> fileNames, String... projectFolders) {
+		for (String fileName : fileNames) {
+			repository.findByFileNameAndVersionGreaterThan(fileName, 0).ifPresent(active -> storageService.deleteFile(fileName));
+			repository.deleteAll(repository.findByFileNameAndVersionLessThan(fileName, 0));
+		}
+		for (String projectFolder : projectFolders) {
+			FileSystemUtils.deleteRecursively(Paths.get("uploads", projectFolder).toFile());
+		}
+	}
+
+	// Polls until the condition holds, for work the application finishes in the background
+	public static void await(BooleanSupplier condition, long timeoutMillis) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		assertTrue(condition.getAsBoolean(), "condition not met within " + timeoutMillis + " ms");
+	}
+}
@@ -0,0 +1,110 @@
+package com.codeTogether.service;
+
+import com.codeTogether.controller.UploadAdmissionInterceptor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.LinkedMultiValueMap;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"storage.admission.max-user-uploads=1",
+		"storage.admission.queue-timeout-ms=1000",
+		"spring.servlet.multipart.resolve-lazily=true"})
+class UploadAdmissionTest {
+
+	private static final String FILE = "admission.txt";
+
+	@Autowired
+	private TestRestTemplate rest;
+
+	@Autowired
+	private UploadAdmission uploadAdmission;
+
+	@Autowired
+	private StoredFiles storedFiles;
+
+	@AfterEach
+	void cleanUp() {
+		storedFiles.remove(List.of(FILE), "admission");
+	}
+
+	// A user at their limit waits and gets 429 with Retry-After on timeout, while other users
+	// go ahead; a waiting upload is admitted as soon as the user's running upload finishes
+	@Test
+	void limitsUploadsPerUser() throws Exception {
+		UploadAdmission.Ticket running = uploadAdmission.acquire("ci", 1);
+		try {
+			ResponseEntity<String> rejected = upload("ci");
+			assertEquals(HttpStatus.TOO_MANY_REQUESTS, rejected.getStatusCode());
+			assertFalse(rejected.getHeaders().getFirst(HttpHeaders.RETRY_AFTER).isEmpty());
+			assertEquals(HttpStatus.OK, upload("someone-else").getStatusCode());
+
+			CompletableFuture<ResponseEntity<String>> queued = CompletableFuture.supplyAsync(() -> upload("ci"));
+			StoredFiles.await(() -> uploadAdmission.summary().queued() == 1, 5000);
+			uploadAdmission.release(running);
+			running = null;
+			assertEquals(HttpStatus.OK, queued.get(10, TimeUnit.SECONDS).getStatusCode());
+		} finally {
+			if (running != null) {
+				uploadAdmission.release(running);
+			}
+		}
+		assertEquals(0, uploadAdmission.summary().bytesInFlight());
+		assertEquals(1.0, uploadAdmission.summary().rejectedTimeout());
+	}
+
+	// A CORS preflight for an upload is answered at once, even while the user is at their limit
+	@Test
+	void preflightsBypassAdmission() throws Exception {
+		UploadAdmission.Ticket running = uploadAdmission.acquire("ci", 1);
+		try {
+			HttpHeaders headers = new HttpHeaders();
+			headers.setOrigin("http://localhost:5173");
+			headers.setAccessControlRequestMethod(HttpMethod.PUT);
+			headers.setAccessControlRequestHeaders(List.of(UploadAdmissionInterceptor.UPLOADED_BY_HEADER));
+			headers.set(UploadAdmissionInterceptor.UPLOADED_BY_HEADER, "ci");
+			ResponseEntity<String> preflight = rest.exchange("/api/files/update/" + FILE, HttpMethod.OPTIONS,
+					new HttpEntity<>(headers), String.class);
+			assertEquals(HttpStatus.OK, preflight.getStatusCode());
+			assertEquals("http://localhost:5173", preflight.getHeaders().getAccessControlAllowOrigin());
+			assertEquals(0, uploadAdmission.summary().queued());
+			assertEquals(1, uploadAdmission.summary().bytesInFlight());
+		} finally {
+			uploadAdmission.release(running);
+		}
+	}
+
+	private ResponseEntity<String> upload(String user) {
+		LinkedMultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
+		body.add("file", new ByteArrayResource("admitted\n".getBytes(StandardCharsets.UTF_8)) {
+			@Override
+			public String getFilename() {
+				return FILE;
+			}
+		});
+		body.add("uploadedBy", user);
+		body.add("role", "dev");
+		body.add("projectFolder", "admission");
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.MULTIPART_FORM_DATA);
+		headers.set(UploadAdmissionInterceptor.UPLOADED_BY_HEADER, user);
+		return rest.postForEntity("/api/files/fileUpload", new HttpEntity<>(body, headers), String.class);
+	}
+}
@@ -0,0 +1,100 @@
+package com.codeTogether.service;
+
+import com.codeTogether.entity.FileData;
+import com.codeTogether.repository.StorageRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class VersionCommitterStressTest {
+
+	private static final String FOLDER = "commit-stress-test";
+	private static final int FILES = 4;
+	private static final int WRITERS_PER_FILE = 8;
+	private static final int SAVES_PER_WRITER = 10;
+
+	@Autowired
+	private StorageService storageService;
+
+	@Autowired
+	private StorageRepository repository;
+
+	@Autowired
+	private StoredFiles storedFiles;
+
+	@AfterEach
+	void cleanUp() {
+		storedFiles.remove(IntStream.range(0, FILES).mapToObj(VersionCommitterStressTest::fileName).toList(), FOLDER);
+	}
+
+	// Many writers save and roll back the same files at once: every save must produce exactly
+	// one version, versions are numbered without gaps or duplicates and one version stays active
+	@Test
+	void concurrentSavesNeitherLoseNorDuplicateVersions() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(FILES * WRITERS_PER_FILE);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<Integer>> writers = new ArrayList<>();
+		for (int f = 0; f < FILES; f++) {
+			String fileName = fileName(f);
+			for (int w = 0; w < WRITERS_PER_FILE; w++) {
+				int writer = w;
+				writers.add(executor.submit(() -> {
+					start.await();
+					int commits = 0;
+					for (int i = 0; i < SAVES_PER_WRITER; i++) {
+						if (writer == 0 && i % 3 == 2) {
+							storageService.rollbackFile(fileName, -1);
+						} else {
+							byte[] content = ("writer " + writer + " save " + i + "\n").repeat(50).getBytes(StandardCharsets.UTF_8);
+							storageService.uploadFile(new MockMultipartFile("file", fileName, "text/plain", content),
+									"writer" + writer, "dev", FOLDER);
+						}
+						commits++;
+					}
+					return commits;
+				}));
+			}
+		}
+		start.countDown();
+		int commits = 0;
+		for (Future<Integer> writer : writers) {
+			commits += writer.get(2, TimeUnit.MINUTES);
+		}
+		executor.shutdown();
+		assertEquals(FILES * WRITERS_PER_FILE * SAVES_PER_WRITER, commits);
+
+		for (int f = 0; f < FILES; f++) {
+			String fileName = fileName(f);
+			List<FileData> rows = repository.findAll().stream()
+					.filter(row -> row.getFileName().equals(fileName))
+					.collect(Collectors.toList());
+			int expected = WRITERS_PER_FILE * SAVES_PER_WRITER;
+			assertEquals(expected, rows.size(), "versions of " + fileName);
+			assertEquals(1, rows.stream().filter(row -> row.getVersion() > 0).count(), "active versions of " + fileName);
+			List<Integer> versions = rows.stream().map(row -> Math.abs(row.getVersion())).sorted().collect(Collectors.toList());
+			assertEquals(IntStream.rangeClosed(1, expected).boxed().collect(Collectors.toList()), versions);
+			assertTrue(repository.findByFileNameAndVersionGreaterThan(fileName, 0).get().getVersion() == expected);
+		}
+	}
+
+	private static String fileName(int index) {
+		return "stress-" + index + ".txt";
+	}
+}
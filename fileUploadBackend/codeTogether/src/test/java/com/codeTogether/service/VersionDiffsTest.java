@@ -0,0 +1,71 @@
+package com.codeTogether.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@SpringBootTest
+class VersionDiffsTest {
+
+	private static final List<String> FILES = List.of("Diffed.java", "Diffed.bin");
+
+	@Autowired
+	private StoredFiles storedFiles;
+
+	@Autowired
+	private VersionDiffs versionDiffs;
+
+	@MockitoSpyBean
+	private StorageService storageService;
+
+	@AfterEach
+	void cleanUp() {
+		storedFiles.remove(FILES, "diff-test");
+	}
+
+	// Text versions get a line diff that is served from the cache the second time, binary
+	// versions only a differs answer, without being read in full
+	@Test
+	void diffsTextAndComparesBinary() throws Exception {
+		storedFiles.upload("Diffed.java", "diff-test", "class Diffed {\n    int v = 1;\n}\n");
+		storedFiles.upload("Diffed.java", "diff-test", "class Diffed {\n    int v = 2;\n}\n");
+
+		VersionDiffs.VersionDiff diff = versionDiffs.diff("Diffed.java", -1, null, 3);
+		assertEquals(VersionDiffs.Comparison.LINES, diff.comparison());
+		assertEquals(2, diff.toVersion());
+		assertFalse(diff.identical());
+		assertEquals("""
+				--- a
+				+++ b
+				@@ -1,3 +1,3 @@
+				 class Diffed {
+				-    int v = 1;
+				+    int v = 2;
+				 }
+				""", diff.diff().unified("a", "b"));
+		assertSame(diff.diff(), versionDiffs.diff("Diffed.java", -1, 2, 3).diff());
+
+		storedFiles.upload("Diffed.bin", "diff-test", new byte[] {0, (byte) 0xff, 1});
+		storedFiles.upload("Diffed.bin", "diff-test", new byte[] {0, (byte) 0xfe, 1});
+		clearInvocations(storageService);
+		VersionDiffs.VersionDiff binary = versionDiffs.diff("Diffed.bin", -1, null, 3);
+		assertEquals(VersionDiffs.Comparison.BINARY, binary.comparison());
+		assertFalse(binary.identical());
+		assertNull(binary.diff());
+		// The search index reads the active version in the background; the previous one is only read by the diff
+		verify(storageService, never()).getContent(argThat(version -> version.getVersion() == -1));
+	}
+}
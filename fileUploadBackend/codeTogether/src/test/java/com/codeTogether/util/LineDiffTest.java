@@ -0,0 +1,113 @@
+package com.codeTogether.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LineDiffTest {
+
+	@Test
+	void producesUnifiedDiff() {
+		LineDiff.Result result = LineDiff.diff("one\ntwo\nthree\nfour\nfive\n", "one\nTWO\nthree\nfour\nfive\nsix", 1, 1000);
+		String expected = """
+				--- a
+				+++ b
+				@@ -1,3 +1,3 @@
+				 one
+				-two
+				+TWO
+				 three
+				@@ -5 +5,2 @@
+				 five
+				+six
+				\\ No newline at end of file
+				""";
+		assertEquals(expected, result.unified("a", "b"));
+		assertEquals(2, result.linesAdded());
+		assertEquals(1, result.linesRemoved());
+		assertEquals("", LineDiff.diff("same\n", "same\n", 3, 1000).unified("a", "b"));
+	}
+
+	// Random edits of random texts: the diff applies back to the new text and has as few
+	// changed lines as a longest-common-subsequence table allows
+	@Test
+	void diffsAreMinimalAndApply() {
+		Random random = new Random(11);
+		for (int round = 0; round < 300; round++) {
+			List<String> oldLines = randomLines(random, random.nextInt(40));
+			List<String> newLines = new ArrayList<>(oldLines);
+			for (int edit = random.nextInt(8); edit > 0; edit--) {
+				int at = newLines.isEmpty() ? 0 : random.nextInt(newLines.size());
+				switch (random.nextInt(3)) {
+					case 0 -> newLines.add(at, "line " + random.nextInt(6));
+					case 1 -> {
+						if (!newLines.isEmpty()) {
+							newLines.remove(at);
+						}
+					}
+					default -> {
+						if (!newLines.isEmpty()) {
+							newLines.set(at, "line " + random.nextInt(6));
+						}
+					}
+				}
+			}
+			String oldText = String.join("\n", oldLines) + (random.nextBoolean() || oldLines.isEmpty() ? "" : "\n");
+			String newText = String.join("\n", newLines) + (random.nextBoolean() || newLines.isEmpty() ? "" : "\n");
+
+			LineDiff.Result result = LineDiff.diff(oldText, newText, random.nextInt(4), 1000);
+			assertTrue(result.minimal());
+			String patched = new String(TextPatch.apply(oldText.getBytes(StandardCharsets.UTF_8),
+					new TextPatch.Patch(result.unified("a", "b"), null)), StandardCharsets.UTF_8);
+			assertEquals(newText, patched);
+			int common = lcs(splitKeepingNewlines(oldText), splitKeepingNewlines(newText));
+			assertEquals(result.oldLineCount() - common, result.linesRemoved());
+			assertEquals(result.newLineCount() - common, result.linesAdded());
+		}
+	}
+
+	// A file of 200,000 lines with scattered edits is diffed without quadratic memory
+	@Test
+	void handlesLargeFiles() {
+		StringBuilder before = new StringBuilder();
+		StringBuilder after = new StringBuilder();
+		for (int i = 0; i < 200_000; i++) {
+			before.append("line ").append(i).append('\n');
+			after.append(i % 10_000 == 0 ? "changed " : "line ").append(i).append('\n');
+		}
+		LineDiff.Result result = LineDiff.diff(before.toString(), after.toString(), 3, 10_000);
+		assertEquals(20, result.linesAdded());
+		assertEquals(20, result.linesRemoved());
+		assertEquals(20, result.hunks().size());
+	}
+
+	private static List<String> randomLines(Random random, int count) {
+		List<String> lines = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			lines.add("line " + random.nextInt(6));
+		}
+		return lines;
+	}
+
+	private static List<String> splitKeepingNewlines(String text) {
+		List<String> lines = new ArrayList<>(List.of(text.split("(?<=\n)")));
+		lines.remove("");
+		return lines;
+	}
+
+	private static int lcs(List<String> a, List<String> b) {
+		int[][] table = new int[a.size() + 1][b.size() + 1];
+		for (int i = a.size() - 1; i >= 0; i--) {
+			for (int j = b.size() - 1; j >= 0; j--) {
+				table[i][j] = a.get(i).equals(b.get(j)) ? table[i + 1][j + 1] + 1 : Math.max(table[i + 1][j], table[i][j + 1]);
+			}
+		}
+		return table[0][0];
+	}
+}
@@ -0,0 +1,55 @@
+package com.codeTogether.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TextPatchTest {
+
+	private static final String BASE = "one\ntwo\nthree\nfour\nfive\n";
+
+	@Test
+	void appliesUnifiedDiff() {
+		String diff = """
+				--- a/numbers.txt
+				+++ b/numbers.txt
+				@@ -1,3 +1,3 @@
+				 one
+				-two
+				+TWO
+				 three
+				@@ -5,0 +6,2 @@
+				+six
+				+seven
+				""";
+		assertEquals("one\nTWO\nthree\nfour\nfive\nsix\nseven\n", apply(BASE, new TextPatch.Patch(diff, null)));
+	}
+
+	@Test
+	void honoursMissingNewlineAtEnd() {
+		String diff = "@@ -5 +5 @@\n-five\n+5\n\\ No newline at end of file\n";
+		assertEquals("one\ntwo\nthree\nfour\n5", apply(BASE, new TextPatch.Patch(diff, null)));
+	}
+
+	@Test
+	void appliesRangeEditsInAnyOrder() {
+		List<TextPatch.Edit> edits = List.of(new TextPatch.Edit(19, 23, "5"), new TextPatch.Edit(0, 3, "1"));
+		assertEquals("1\ntwo\nthree\nfour\n5\n", apply(BASE, new TextPatch.Patch(null, edits)));
+	}
+
+	@Test
+	void rejectsPatchesThatDontMatch() {
+		assertThrows(IllegalArgumentException.class,
+				() -> apply(BASE, new TextPatch.Patch("@@ -2 +2 @@\n-three\n+3\n", null)));
+		assertThrows(IllegalArgumentException.class,
+				() -> apply(BASE, new TextPatch.Patch(null, List.of(new TextPatch.Edit(0, 5, ""), new TextPatch.Edit(4, 6, "")))));
+	}
+
+	private static String apply(String base, TextPatch.Patch patch) {
+		return new String(TextPatch.apply(base.getBytes(StandardCharsets.UTF_8), patch), StandardCharsets.UTF_8);
+	}
+}
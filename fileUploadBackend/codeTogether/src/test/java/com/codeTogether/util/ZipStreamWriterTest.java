@@ -0,0 +1,80 @@
+package com.codeTogether.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ZipStreamWriterTest {
+
+	private static final LocalDate DAY = LocalDate.of(2024, 5, 17);
+
+	// Pass-through and on-the-fly entries read back through both the central directory and the local headers
+	@Test
+	void writesReadableArchive(@TempDir Path dir) throws Exception {
+		byte[] text = "class Main {}\n".repeat(200).getBytes(StandardCharsets.UTF_8);
+		byte[] other = "séparé\n".repeat(50).getBytes(StandardCharsets.UTF_8);
+		CRC32 crc = new CRC32();
+		crc.update(text);
+		Path archive = dir.resolve("export.zip");
+		try (OutputStream out = Files.newOutputStream(archive); ZipStreamWriter zip = new ZipStreamWriter(out)) {
+			byte[] zlib = FileUtils.compressFile(text);
+			zip.addZlib("Main.java", new ByteArrayInputStream(zlib), zlib.length, crc.getValue(), text.length, DAY);
+			try (OutputStream entry = zip.beginEntry("docs/notes-é.txt", DAY, 6)) {
+				entry.write(other);
+			}
+			zip.beginEntry("empty.txt", null, 6).close();
+		}
+
+		try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+			assertEquals(3, zipFile.size());
+			assertArrayEquals(text, zipFile.getInputStream(zipFile.getEntry("Main.java")).readAllBytes());
+			assertArrayEquals(other, zipFile.getInputStream(zipFile.getEntry("docs/notes-é.txt")).readAllBytes());
+			assertEquals(0, zipFile.getInputStream(zipFile.getEntry("empty.txt")).readAllBytes().length);
+			assertEquals(DAY, zipFile.getEntry("Main.java").getTimeLocal().toLocalDate());
+		}
+		try (ZipInputStream in = new ZipInputStream(Files.newInputStream(archive))) {
+			assertEquals("Main.java", in.getNextEntry().getName());
+			assertArrayEquals(text, in.readAllBytes());
+			assertEquals("docs/notes-é.txt", in.getNextEntry().getName());
+			assertArrayEquals(other, in.readAllBytes());
+			assertEquals("empty.txt", in.getNextEntry().getName());
+			in.readAllBytes();
+			assertNull(in.getNextEntry());
+		}
+	}
+
+	// More entries than the classic end record can count switch to the ZIP64 end records
+	@Test
+	void writesZip64EndRecordsForManyEntries(@TempDir Path dir) throws Exception {
+		int count = 70_000;
+		byte[] content = "x".getBytes(StandardCharsets.UTF_8);
+		CRC32 crc = new CRC32();
+		crc.update(content);
+		byte[] zlib = FileUtils.compressFile(content);
+		Path archive = dir.resolve("many.zip");
+		try (OutputStream out = Files.newOutputStream(archive); ZipStreamWriter zip = new ZipStreamWriter(out)) {
+			for (int i = 0; i < count; i++) {
+				zip.addZlib("f" + i, new ByteArrayInputStream(zlib), zlib.length, crc.getValue(), content.length, DAY);
+			}
+		}
+		try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+			assertEquals(count, zipFile.size());
+			ZipEntry last = zipFile.getEntry("f" + (count - 1));
+			assertArrayEquals(content, zipFile.getInputStream(last).readAllBytes());
+		}
+	}
+}